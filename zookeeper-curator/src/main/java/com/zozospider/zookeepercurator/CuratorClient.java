@@ -1,5 +1,14 @@
 package com.zozospider.zookeepercurator;
 
+import com.zozospider.zookeepercurator.cache.CoalescingNodeCacheListener;
+import com.zozospider.zookeepercurator.cache.CompactTreeCache;
+import com.zozospider.zookeepercurator.executor.CallbackExecutor;
+import com.zozospider.zookeepercurator.executor.LaneDispatcher;
+import com.zozospider.zookeepercurator.metrics.OpMetricsTracerDriver;
+import com.zozospider.zookeepercurator.registry.CuratorFrameworkRegistry;
+import com.zozospider.zookeepercurator.retry.AdaptiveRetryPolicy;
+import com.zozospider.zookeepercurator.transaction.ChunkedTransaction;
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
@@ -22,7 +31,6 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 public class CuratorClient {
 
@@ -40,8 +48,50 @@ public class CuratorClient {
 
     private static final String NAME_SPACE = "namespace";
 
+    /**
+     * 后台回调线程数
+     */
+    private static final int CALLBACK_THREADS = 2;
+
+    /**
+     * 同时未完成的后台回调数上限，超过时回调在 Curator 的 EventThread 上执行
+     */
+    private static final int CALLBACK_MAX_PENDING = 10000;
+
+    /**
+     * cache 监听器的分发通道数
+     */
+    private static final int LISTENER_LANES = 8;
+
+    /**
+     * nodeCache 合并变化通知的静默时间和最大延迟
+     */
+    private static final long NODE_CACHE_QUIET_PERIOD_MS = 100;
+    private static final long NODE_CACHE_MAX_DELAY_MS = 1000;
+
     public CuratorFramework client;
 
+    /**
+     * 各操作的延迟直方图和错误码计数，连接后注册到 JMX
+     */
+    private final OpMetrics metrics = new OpMetrics();
+
+    /**
+     * 通过 connectShared 连接时持有的共享客户端引用
+     */
+    private CuratorFrameworkRegistry.Lease lease;
+
+    /**
+     * 后台回调执行器（由本客户端的所有 inBackground 调用共用，closeClient 时关闭）
+     * 设置系统属性 curator.callback.virtualThreads=true 时在支持的 JDK 上使用虚拟线程
+     */
+    private CallbackExecutor callbackExecutor;
+
+    /**
+     * cache 监听器事件分发器（同一路径的事件按顺序处理，不同路径并行处理，closeClient 时关闭）
+     */
+    private LaneDispatcher listenerDispatcher;
+
     private RetryPolicy getRetryPolicy() {
         /**
          * 策略：
@@ -76,7 +126,17 @@ public class CuratorClient {
          */
         RetryPolicy retryPolicy5 = new RetryUntilElapsed(2000, 3000);
 
-        return retryPolicy3;
+        /**
+         * 策略：去相关抖动 + 重试预算（每个客户端一个实例）
+         * baseSleepTimeMs: 最小重试间隔
+         * maxSleepMs: 最大重试间隔
+         * maxRetries: 单次操作最大重试次数
+         * retriesPerSecond: 每秒补充的重试令牌数
+         * burst: 令牌桶容量
+         */
+        RetryPolicy retryPolicy6 = new AdaptiveRetryPolicy(1000, 10000, 3, 2, 10);
+
+        return retryPolicy6;
     }
 
     /**
@@ -95,6 +155,7 @@ public class CuratorClient {
                 .connectionTimeoutMs(CONNECTION_TIMEOUT)
                 .namespace(NAME_SPACE)
                 .build();
+        trace(connectString);
         // 启动客户端
         client.start();
     }
@@ -117,16 +178,100 @@ public class CuratorClient {
                 .namespace(NAME_SPACE)
                 .authorization("digest", digestAuth.getBytes())
                 .build();
+        trace(connectString);
+
+    }
+
+    /**
+     * 连接客户端（匿名，共享）
+     *
+     * @param connectString list of servers to connect to
+     */
+    public void connectShared(String connectString) {
+        connectShared(connectString, null);
+    }
+
+    /**
+     * 连接客户端（共享）
+     * <p>
+     * 从 CuratorFrameworkRegistry 获取已启动的共享客户端，相同 connectString、命名空间和认证信息的 CuratorClient 共用一个会话；
+     * closeClient() 只释放引用，最后一个使用方释放时才真正关闭。
+     * 共享客户端上不安装操作指标（getMetrics() 不会有记录）。
+     *
+     * @param connectString list of servers to connect to
+     * @param digestAuth    digest 登录模式下的用户名密码，格式: user:password，为 null 时匿名
+     */
+    public void connectShared(String connectString, String digestAuth) {
+        lease = CuratorFrameworkRegistry.getDefault().acquire(connectString, NAME_SPACE, digestAuth);
+        client = lease.getClient();
+    }
+
+    /**
+     * 记录客户端各操作的延迟及错误码，并注册到 JMX（name 为连接串和命名空间）
+     */
+    private void trace(String connectString) {
+        client.getZookeeperClient().setTracerDriver(new OpMetricsTracerDriver(metrics));
+        metrics.unregister();
+        metrics.register(OpMetricsTracerDriver.JMX_DOMAIN, connectString + "/" + NAME_SPACE + "@" + Integer.toHexString(System.identityHashCode(this)));
+    }
+
+    /**
+     * 获取操作指标
+     */
+    public OpMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 获取后台回调执行器（第一次调用时创建）
+     */
+    public synchronized CallbackExecutor getCallbackExecutor() {
+        if (callbackExecutor == null) {
+            callbackExecutor = new CallbackExecutor("CuratorClient-callback", CALLBACK_THREADS, CALLBACK_MAX_PENDING,
+                    Boolean.getBoolean("curator.callback.virtualThreads"));
+        }
+        return callbackExecutor;
+    }
 
+    /**
+     * 获取 cache 监听器事件分发器（第一次调用时创建并注册到 JMX）
+     */
+    public synchronized LaneDispatcher getListenerDispatcher() {
+        if (listenerDispatcher == null) {
+            listenerDispatcher = new LaneDispatcher("CuratorClient-listener", LISTENER_LANES);
+            listenerDispatcher.register("CuratorClient@" + Integer.toHexString(System.identityHashCode(this)));
+        }
+        return listenerDispatcher;
     }
 
     /**
      * 关闭客户端
      */
     public void closeClient() {
+        synchronized (this) {
+            if (callbackExecutor != null) {
+                // 已排队的回调继续执行
+                callbackExecutor.close();
+                log.info("callback executor: {}", callbackExecutor);
+                callbackExecutor = null;
+            }
+            if (listenerDispatcher != null) {
+                listenerDispatcher.close();
+                log.info("listener dispatcher: {}", listenerDispatcher);
+                listenerDispatcher = null;
+            }
+        }
+        if (lease != null) {
+            // 共享客户端: 只释放引用
+            lease.close();
+            lease = null;
+            client = null;
+            return;
+        }
         if (client != null) {
             this.client.close();
         }
+        metrics.unregister();
         if (client != null) {
             log.info("当前状态: {}", client.isStarted() ? "连接中" : "已关闭");
         }
@@ -305,6 +450,30 @@ public class CuratorClient {
                 .commit();
     }
 
+    /**
+     * 分批事务
+     * <p>
+     * 大量操作放在一个 multi 请求中会超过服务端 jute.maxbuffer 的限制，ChunkedTransaction 按字节数将操作拆分为多个 multi 请求，
+     * 在后台流水线提交，每一批完成时回调
+     *
+     * @throws Exception
+     */
+    public void inChunkedTransaction() throws Exception {
+
+        ChunkedTransaction transaction = new ChunkedTransaction(client);
+        transaction.create("/path", "data".getBytes());
+        for (int i = 0; i < 10000; i++) {
+            transaction.create("/path/node" + i, "data".getBytes());
+        }
+        List<ChunkedTransaction.ChunkResult> results = transaction.commit(new ChunkedTransaction.ChunkListener() {
+            @Override
+            public void chunkCompleted(ChunkedTransaction.ChunkResult result) {
+                log.info("chunk: {}", result);
+            }
+        }).get();
+        log.info("chunks: {}", results.size());
+    }
+
     /**
      * 异步处理
      *
@@ -313,7 +482,8 @@ public class CuratorClient {
     public void inBackground() throws Exception {
 
         // 如果不指定 executor，那么会默认使用 Curator 的 EventThread 去进行异步处理
-        Executor executor = Executors.newFixedThreadPool(2);
+        // 使用客户端共用的有界执行器（不要每次调用新建线程池，否则每次调用泄漏线程）
+        Executor executor = getCallbackExecutor();
 
         client.create()
                 .creatingParentsIfNeeded()
@@ -379,6 +549,7 @@ public class CuratorClient {
      * 缓存 cache: 子节点监听 path children cache
      * Path Children Cache 用来监控一个 ZNode 的子节点。当一个子节点增加，更新，删除时，Path Children Cache 会改变它的状态，会包含最新的子节点，子节点的数据和状态。状态的更变将通过 PathChildrenCacheListener 通知。
      * 注: 无法对二级子节点进行监听。
+     * 注: BUILD_INITIAL_CACHE 逐个同步获取子节点数据，子节点很多时可使用 ParallelPathChildrenCache（初次加载并行获取）。
      */
     public void pathChildrenCache() throws Exception {
 
@@ -391,8 +562,8 @@ public class CuratorClient {
          */
         cache.start(PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
 
-        // 添加监听
-        cache.getListenable().addListener(new PathChildrenCacheListener() {
+        // 添加监听（按子节点路径分通道调用，一个子节点的耗时处理不影响其他子节点）
+        cache.getListenable().addListener(getListenerDispatcher().wrapChildren(new PathChildrenCacheListener() {
             @Override
             public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
 
@@ -420,7 +591,7 @@ public class CuratorClient {
 
                 }
             }
-        });
+        }));
 
         Thread.sleep(100000);
     }
@@ -436,7 +607,8 @@ public class CuratorClient {
         // buildInitial: 初始化的时候获取 node 的值并且缓存，默认为 false。
         cache.start(true);
 
-        cache.getListenable().addListener(new NodeCacheListener() {
+        // 合并频繁的变化: 连续 NODE_CACHE_QUIET_PERIOD_MS 没有新的变化（或从第一次变化起已过 NODE_CACHE_MAX_DELAY_MS）时才处理最新的值
+        CoalescingNodeCacheListener listener = new CoalescingNodeCacheListener(cache, getListenerDispatcher().wrapNode("/example/nodeCache", new NodeCacheListener() {
 
             @Override
             public void nodeChanged() throws Exception {
@@ -448,8 +620,11 @@ public class CuratorClient {
                 }
             }
 
-        });
+        }), NODE_CACHE_QUIET_PERIOD_MS, NODE_CACHE_MAX_DELAY_MS);
+        cache.getListenable().addListener(listener);
         Thread.sleep(100000);
+        log.info("{}", listener);
+        listener.close();
     }
 
     /**
@@ -462,7 +637,7 @@ public class CuratorClient {
 
         cache.start();
 
-        cache.getListenable().addListener(new TreeCacheListener() {
+        cache.getListenable().addListener(getListenerDispatcher().wrapTree(new TreeCacheListener() {
 
             @Override
             public void childEvent(CuratorFramework client, TreeCacheEvent event) throws Exception {
@@ -470,7 +645,28 @@ public class CuratorClient {
                 log.info("client: {}, event: {}", client, event);
                 log.info("事件类型: {}, 路径: {}", event.getType(), event.getData() == null ? null : event.getData().getPath());
             }
-        });
+        }));
+    }
+
+    /**
+     * 缓存 cache: compact tree cache
+     * 与 treeCache() 相同的事件，但节点路径、Stat 和数据以紧凑的方式保存，适合节点数很多的树。
+     */
+    public void compactTreeCache() throws Exception {
+
+        CompactTreeCache cache = new CompactTreeCache(client, "/example/treeCache");
+
+        cache.getListenable().addListener(getListenerDispatcher().wrapTree(new TreeCacheListener() {
+
+            @Override
+            public void childEvent(CuratorFramework client, TreeCacheEvent event) throws Exception {
+
+                log.info("client: {}, event: {}", client, event);
+                log.info("事件类型: {}, 路径: {}", event.getType(), event.getData() == null ? null : event.getData().getPath());
+            }
+        }));
+
+        cache.start();
     }
 
 }
@@ -0,0 +1,156 @@
+package com.zozospider.zookeepercurator.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * cache 的本地磁盘快照
+ * <p>
+ * 每个节点只保存 (path, mzxid, data)。启动时先加载快照，对快照中的节点只用 exists 读取 Stat（同时设置 Watcher），
+ * mzxid 未变化时直接使用快照中的数据，变化时才 getData，避免所有实例重启后一起重新读取全部数据。
+ * <p>
+ * 文件格式: MAGIC, FORMAT_VERSION, 节点数, 之后每个节点依次为 path (UTF), mzxid (long), 数据长度 (int, -1 表示 null), 数据。
+ * 写入时先写临时文件再改名（已映射的旧文件不受影响），读取时映射整个文件，读取失败（文件不存在、格式错误）时返回空快照。
+ */
+public class CacheSnapshot {
+
+    private final static Logger log = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x5a4b4353;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * 一个节点
+     */
+    public static class Entry {
+
+        private final String path;
+        private final long mzxid;
+        private final byte[] data;
+
+        public Entry(String path, long mzxid, byte[] data) {
+            this.path = path;
+            this.mzxid = mzxid;
+            this.data = data;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getMzxid() {
+            return mzxid;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * 读取映射文件的 InputStream
+     */
+    private static class MappedInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+
+    /**
+     * 写入快照
+     */
+    public static void write(File file, List<Entry> entries) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can not create directory " + dir);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.path);
+                out.writeLong(entry.mzxid);
+                if (entry.data == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.data.length);
+                    out.write(entry.data);
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照
+     *
+     * @return key 为节点路径，文件不存在或无法读取时为空
+     */
+    public static Map<String, Entry> read(File file) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (file == null || !file.isFile()) {
+            return entries;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // 映射文件直接解析，不经过流的读取和缓冲区复制
+            DataInputStream in = new DataInputStream(new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.warn("ignore snapshot {}: unknown format", file);
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long mzxid = in.readLong();
+                int length = in.readInt();
+                byte[] data = null;
+                if (length > channel.size()) {
+                    throw new IOException("corrupted entry length " + length);
+                }
+                if (length >= 0) {
+                    data = new byte[length];
+                    in.readFully(data);
+                }
+                entries.put(path, new Entry(path, mzxid, data));
+            }
+        } catch (IOException e) {
+            log.warn("ignore snapshot " + file + ": " + e.getMessage(), e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.zozospider.zookeepercurator.cache;
+
+import com.zozospider.zookeepercurator.transaction.ChunkedTransaction;
+import com.zozospider.zookeepercurator.utils.LatencyProxy;
+import org.apache.curator.drivers.AdvancedTracerDriver;
+import org.apache.curator.drivers.EventTrace;
+import org.apache.curator.drivers.OperationTrace;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在本地 TestingServer 上对比 CompactTreeCache / ParallelPathChildrenCache 不使用快照与使用本地快照启动时的时间和读请求数
+ * <p>
+ * 缓存的客户端通过 LatencyProxy 连接服务端以模拟网络延迟。每种缓存先冷启动（没有快照文件），close() 时保存快照；
+ * 之后修改一部分节点，再用快照启动，检查修改后的数据已被读到。每次启动使用一个新的客户端，
+ * 通过 AdvancedTracerDriver 统计 getData / exists / getChildren 的请求数和读到的数据字节数（Curator 的追踪只记录 getData 的数据长度）。
+ * <p>
+ * 参数: [节点数] [节点数据字节数] [启动前修改的节点数] [单向延迟毫秒数]
+ */
+public class CacheSnapshotMain {
+
+    private final static Logger log = LoggerFactory.getLogger(CacheSnapshotMain.class);
+
+    private static final String TREE_PATH = "/snapshot/tree";
+    private static final String CHILDREN_PATH = "/snapshot/children";
+    private static final int TREE_FANOUT = 100;
+
+    public static void main(String[] args) throws Exception {
+
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int dataSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int changes = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int delayMs = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        File dir = new File(System.getProperty("java.io.tmpdir"), "cache-snapshot-" + System.nanoTime());
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer();
+             LatencyProxy proxy = new LatencyProxy(server.getPort(), delayMs)) {
+
+            CuratorFramework client = newClient(server.getConnectString(), null);
+            try {
+                ChunkedTransaction transaction = new ChunkedTransaction(client);
+                transaction.create("/snapshot", new byte[0]);
+                transaction.create(TREE_PATH, new byte[0]);
+                for (int i = 0; i < nodes / TREE_FANOUT; i++) {
+                    transaction.create(TREE_PATH + "/d" + i, new byte[0]);
+                }
+                transaction.create(CHILDREN_PATH, new byte[0]);
+                for (int i = 0; i < nodes; i++) {
+                    transaction.create(treePath(i), new byte[dataSize]);
+                    transaction.create(CHILDREN_PATH + "/c" + i, new byte[dataSize]);
+                }
+                transaction.commit().get();
+                log.info("created {} tree nodes and {} children of {} bytes, one-way delay {} ms", nodes, nodes, dataSize, delayMs);
+
+                File treeSnapshot = new File(dir, "tree.snapshot");
+                tree(proxy.getConnectString(), treeSnapshot, "cold", null);
+                byte[] changed = change(client, changes, dataSize, true);
+                tree(proxy.getConnectString(), treeSnapshot, "warm", changed);
+
+                File childrenSnapshot = new File(dir, "children.snapshot");
+                children(proxy.getConnectString(), childrenSnapshot, "cold", null);
+                changed = change(client, changes, dataSize, false);
+                children(proxy.getConnectString(), childrenSnapshot, "warm", changed);
+                log.info("snapshot files: tree {} bytes, children {} bytes", treeSnapshot.length(), childrenSnapshot.length());
+            } finally {
+                CloseableUtils.closeQuietly(client);
+                for (File file : dir.listFiles() == null ? new File[0] : dir.listFiles()) {
+                    file.delete();
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    private static void tree(String connectString, File snapshot, String name, byte[] expected) throws Exception {
+
+        RpcCounter counter = new RpcCounter();
+        CuratorFramework client = newClient(connectString, counter);
+        CompactTreeCache cache = new CompactTreeCache(client, TREE_PATH).setSnapshotFile(snapshot);
+        try {
+            final CountDownLatch initialized = new CountDownLatch(1);
+            cache.getListenable().addListener(new TreeCacheListener() {
+                @Override
+                public void childEvent(CuratorFramework client, TreeCacheEvent event) {
+                    if (event.getType() == TreeCacheEvent.Type.INITIALIZED) {
+                        initialized.countDown();
+                    }
+                }
+            });
+            long begin = System.nanoTime();
+            cache.start();
+            initialized.await();
+            long elapsedMs = (System.nanoTime() - begin) / 1000000;
+            ChildData data = cache.getCurrentData(treePath(0));
+            log.info("CompactTreeCache {} start: {} nodes in {} ms, {}, changed data read: {}", name, cache.size(), elapsedMs,
+                    counter, expected == null ? "-" : data != null && Arrays.equals(expected, data.getData()));
+        } finally {
+            CloseableUtils.closeQuietly(cache);
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    private static void children(String connectString, File snapshot, String name, byte[] expected) throws Exception {
+
+        RpcCounter counter = new RpcCounter();
+        CuratorFramework client = newClient(connectString, counter);
+        ParallelPathChildrenCache cache = new ParallelPathChildrenCache(client, CHILDREN_PATH, true).setSnapshotFile(snapshot);
+        try {
+            long begin = System.nanoTime();
+            cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            long elapsedMs = (System.nanoTime() - begin) / 1000000;
+            ChildData data = cache.getCurrentData(CHILDREN_PATH + "/c0");
+            log.info("ParallelPathChildrenCache {} start: {} children in {} ms, {}, changed data read: {}", name,
+                    cache.getCurrentData().size(), elapsedMs, counter,
+                    expected == null ? "-" : data != null && Arrays.equals(expected, data.getData()));
+        } finally {
+            CloseableUtils.closeQuietly(cache);
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    /**
+     * 修改前 changes 个节点的数据，返回第一个节点的新数据
+     */
+    private static byte[] change(CuratorFramework client, int changes, int dataSize, boolean tree) throws Exception {
+        byte[] data = new byte[dataSize];
+        Arrays.fill(data, (byte) 1);
+        ChunkedTransaction transaction = new ChunkedTransaction(client);
+        for (int i = 0; i < changes; i++) {
+            transaction.setData(tree ? treePath(i) : CHILDREN_PATH + "/c" + i, data, -1);
+        }
+        transaction.commit().get();
+        return data;
+    }
+
+    private static String treePath(int i) {
+        return TREE_PATH + "/d" + (i % TREE_FANOUT) + "/n" + i;
+    }
+
+    private static CuratorFramework newClient(String connectString, RpcCounter counter) throws InterruptedException {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(connectString, new RetryNTimes(3, 1000));
+        if (counter != null) {
+            client.getZookeeperClient().setTracerDriver(counter);
+        }
+        client.start();
+        client.blockUntilConnected();
+        return client;
+    }
+
+    /**
+     * 按操作统计读请求数和读到的数据字节数
+     */
+    private static class RpcCounter extends AdvancedTracerDriver {
+
+        private final AtomicLong getData = new AtomicLong();
+        private final AtomicLong exists = new AtomicLong();
+        private final AtomicLong getChildren = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+
+        @Override
+        public void addTrace(OperationTrace trace) {
+            String name = trace.getName();
+            if (name == null) {
+                return;
+            }
+            if (name.startsWith("GetDataBuilderImpl")) {
+                getData.incrementAndGet();
+            } else if (name.startsWith("ExistsBuilderImpl")) {
+                exists.incrementAndGet();
+            } else if (name.startsWith("GetChildrenBuilderImpl")) {
+                getChildren.incrementAndGet();
+            } else {
+                return;
+            }
+            responseBytes.addAndGet(trace.getResponseBytesLength());
+        }
+
+        @Override
+        public void addEvent(EventTrace trace) {
+        }
+
+        @Override
+        public String toString() {
+            return "read RPCs " + (getData.get() + exists.get() + getChildren.get()) + " (getData " + getData.get()
+                    + ", exists " + exists.get() + ", getChildren " + getChildren.get() + "), data "
+                    + responseBytes.get() / 1024 + " KB";
+        }
+    }
+
+}
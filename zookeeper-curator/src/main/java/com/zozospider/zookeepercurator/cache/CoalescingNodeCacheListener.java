@@ -0,0 +1,212 @@
+package com.zozospider.zookeepercurator.cache;
+
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并（防抖）NodeCache 变化通知的监听器
+ * <p>
+ * 节点被频繁修改时，NodeCache 每次变化都会调用监听器，而通常只关心最新的值。
+ * 这里收到变化后不立即调用 delegate，而是等到连续 quietPeriodMs 没有新的变化时才调用一次；
+ * 为了不在持续修改时一直推迟，从第一次未处理的变化起最多等待 maxDelayMs。
+ * delegate 被调用时通过 NodeCache.getCurrentData() 读到的是最新的状态。
+ * <p>
+ * 统计合并掉的通知数，以及被跳过的中间版本数（两次调用 delegate 之间节点版本号的差值减一，
+ * 包括 NodeCache 自身就没有看到的版本；节点被删除后重新创建时按新节点的版本号计算）。
+ * <p>
+ * delegate 在调度线程上调用（默认每个实例一个守护线程，也可以传入共用的 ScheduledExecutorService）。
+ */
+public class CoalescingNodeCacheListener implements NodeCacheListener, Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(CoalescingNodeCacheListener.class);
+
+    private final NodeCache cache;
+    private final NodeCacheListener delegate;
+    private final long quietPeriodNanos;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+
+    // 以下字段由 this 保护
+    private long firstChange;
+    private long lastChange;
+    private int pendingChanges;
+    private boolean scheduled;
+    private long coalesced;
+    private long delivered;
+    private long skippedVersions;
+    private long lastCzxid;
+    private int lastVersion = -1;
+
+    /**
+     * @param cache         被监听的 NodeCache（通过其 getCurrentData() 读取最新状态）
+     * @param delegate      实际的监听器
+     * @param quietPeriodMs 连续多长时间没有新的变化后调用 delegate
+     * @param maxDelayMs    从第一次未处理的变化起最多等待多长时间
+     */
+    public CoalescingNodeCacheListener(NodeCache cache, NodeCacheListener delegate, long quietPeriodMs, long maxDelayMs) {
+        this(cache, delegate, quietPeriodMs, maxDelayMs, Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CoalescingNodeCacheListener");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true);
+    }
+
+    /**
+     * @param scheduler 共用的调度器（close() 时不关闭）
+     */
+    public CoalescingNodeCacheListener(NodeCache cache, NodeCacheListener delegate, long quietPeriodMs, long maxDelayMs,
+                                       ScheduledExecutorService scheduler) {
+        this(cache, delegate, quietPeriodMs, maxDelayMs, scheduler, false);
+    }
+
+    private CoalescingNodeCacheListener(NodeCache cache, NodeCacheListener delegate, long quietPeriodMs, long maxDelayMs,
+                                        ScheduledExecutorService scheduler, boolean ownScheduler) {
+        if (quietPeriodMs < 0 || maxDelayMs < quietPeriodMs) {
+            throw new IllegalArgumentException("quietPeriodMs: " + quietPeriodMs + ", maxDelayMs: " + maxDelayMs);
+        }
+        this.cache = cache;
+        this.delegate = delegate;
+        this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriodMs);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+        // 以当前已缓存的状态（start(true) 时的初始数据）作为计算跳过版本数的起点
+        ChildData current = cache.getCurrentData();
+        if (current != null) {
+            this.lastCzxid = current.getStat().getCzxid();
+            this.lastVersion = current.getStat().getVersion();
+        }
+    }
+
+    @Override
+    public void nodeChanged() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (pendingChanges == 0) {
+                firstChange = now;
+            } else {
+                coalesced++;
+            }
+            lastChange = now;
+            pendingChanges++;
+            if (scheduled) {
+                // 已安排检查，到时根据最新的 lastChange 重新计算
+                return;
+            }
+            scheduled = true;
+        }
+        schedule(quietPeriodNanos);
+    }
+
+    private void schedule(long delayNanos) {
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    check();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+        }
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        long wait;
+        synchronized (this) {
+            long deadline = Math.min(lastChange + quietPeriodNanos, firstChange + maxDelayNanos);
+            wait = deadline - now;
+            if (wait <= 0) {
+                pendingChanges = 0;
+                scheduled = false;
+            }
+        }
+        if (wait > 0) {
+            schedule(wait);
+            return;
+        }
+        deliver();
+    }
+
+    private void deliver() {
+        ChildData current = cache.getCurrentData();
+        synchronized (this) {
+            if (current != null) {
+                long czxid = current.getStat().getCzxid();
+                int version = current.getStat().getVersion();
+                if (czxid != lastCzxid) {
+                    // 新创建的节点（或第一次调用）
+                    skippedVersions += lastVersion < 0 ? 0 : version;
+                } else if (version > lastVersion + 1) {
+                    skippedVersions += version - lastVersion - 1;
+                }
+                lastCzxid = czxid;
+                lastVersion = version;
+            }
+            delivered++;
+        }
+        try {
+            delegate.nodeChanged();
+        } catch (Exception e) {
+            log.error("listener failure: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 被合并（没有单独调用 delegate）的变化通知数
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * 调用 delegate 的次数
+     */
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * delegate 没有看到的中间版本数
+     */
+    public synchronized long getSkippedVersions() {
+        return skippedVersions;
+    }
+
+    /**
+     * 关闭（由本实例创建调度器时关闭调度器，尚未调用的通知被丢弃）
+     */
+    @Override
+    public void close() {
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CoalescingNodeCacheListener{" +
+                "path=" + (cache.getCurrentData() == null ? null : cache.getCurrentData().getPath()) +
+                ", delivered=" + delivered +
+                ", coalesced=" + coalesced +
+                ", skippedVersions=" + skippedVersions +
+                ", lastVersion=" + lastVersion +
+                '}';
+    }
+
+}
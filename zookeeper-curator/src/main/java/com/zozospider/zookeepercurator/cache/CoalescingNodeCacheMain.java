@@ -0,0 +1,111 @@
+package com.zozospider.zookeepercurator.cache;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在本地 TestingServer 上高频修改一个节点，对比 NodeCache 直接调用监听器与通过 CoalescingNodeCacheListener 合并后的调用次数
+ * <p>
+ * 同一个 NodeCache 上注册两个监听器（直接调用 / 合并调用），修改结束后等待合并的监听器读到最后写入的值，
+ * 统计调用次数、合并的通知数、跳过的版本数、持续修改期间两次调用之间的最大间隔，以及最后一次修改到被处理的延迟。
+ * <p>
+ * 参数: [每秒修改次数] [持续秒数] [静默时间毫秒数] [最大延迟毫秒数]
+ */
+public class CoalescingNodeCacheMain {
+
+    private final static Logger log = LoggerFactory.getLogger(CoalescingNodeCacheMain.class);
+
+    private static final String PATH = "/hot";
+
+    public static void main(String[] args) throws Exception {
+
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long quietPeriodMs = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        long maxDelayMs = args.length > 3 ? Long.parseLong(args[3]) : 500;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryNTimes(3, 1000));
+            client.start();
+            final NodeCache cache = new NodeCache(client, PATH);
+            CoalescingNodeCacheListener coalescing = null;
+            try {
+                client.create().forPath(PATH, "0".getBytes());
+                cache.start(true);
+
+                final AtomicInteger rawCalls = new AtomicInteger();
+                cache.getListenable().addListener(new NodeCacheListener() {
+                    @Override
+                    public void nodeChanged() {
+                        rawCalls.incrementAndGet();
+                    }
+                });
+
+                final AtomicInteger deliveries = new AtomicInteger();
+                final AtomicLong lastValue = new AtomicLong();
+                final AtomicLong lastDelivery = new AtomicLong();
+                final AtomicLong maxGapNanos = new AtomicLong();
+                coalescing = new CoalescingNodeCacheListener(cache, new NodeCacheListener() {
+                    @Override
+                    public void nodeChanged() {
+                        ChildData data = cache.getCurrentData();
+                        long now = System.nanoTime();
+                        long previous = lastDelivery.getAndSet(now);
+                        if (previous > 0) {
+                            maxGapNanos.set(Math.max(maxGapNanos.get(), now - previous));
+                        }
+                        deliveries.incrementAndGet();
+                        lastValue.set(Long.parseLong(new String(data.getData())));
+                    }
+                }, quietPeriodMs, maxDelayMs);
+                cache.getListenable().addListener(coalescing);
+
+                int writes = rate * seconds;
+                long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+                long begin = System.nanoTime();
+                for (int i = 1; i <= writes; i++) {
+                    long due = begin + i * intervalNanos;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    client.setData().forPath(PATH, String.valueOf(i).getBytes());
+                }
+                long lastWrite = System.nanoTime();
+                long gapDuringWrites = maxGapNanos.get();
+                while (lastValue.get() != writes && System.nanoTime() - lastWrite < TimeUnit.SECONDS.toNanos(10)) {
+                    Thread.sleep(1);
+                }
+                long finalLagMs = (lastDelivery.get() - lastWrite) / 1000000;
+
+                log.info("{} writes in {} ms (quiet period {} ms, max delay {} ms)", writes, (lastWrite - begin) / 1000000,
+                        quietPeriodMs, maxDelayMs);
+                log.info("direct listener: {} calls", rawCalls.get());
+                log.info("coalescing listener: {} calls, last value {} (expected {}), coalesced {}, skipped versions {}, max gap between calls while writing {} ms, last write to call {} ms",
+                        deliveries.get(), lastValue.get(), writes, coalescing.getCoalesced(), coalescing.getSkippedVersions(),
+                        gapDuringWrites / 1000000, finalLagMs);
+            } finally {
+                if (coalescing != null) {
+                    coalescing.close();
+                }
+                CloseableUtils.closeQuietly(cache);
+                CloseableUtils.closeQuietly(client);
+            }
+        }
+    }
+
+}
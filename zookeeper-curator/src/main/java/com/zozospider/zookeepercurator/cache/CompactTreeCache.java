@@ -0,0 +1,930 @@
+package com.zozospider.zookeepercurator.cache;
+
+import com.google.common.base.Function;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.listen.ListenerContainer;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 内存紧凑的 TreeCache
+ * <p>
+ * 与 Curator 的 TreeCache 一样监听 root 下整棵树（getData / getChildren + Watcher），
+ * 并通过 TreeCacheListener 发出相同的 NODE_ADDED / NODE_UPDATED / NODE_REMOVED / INITIALIZED 及连接状态事件。
+ * 不同的是不为每个节点保存完整的 ChildData（路径字符串、Stat 对象、byte[]）：
+ * <ul>
+ * <li>节点按路径段组成前缀树，公共前缀只保存一次，每个节点只保存本段名称的 UTF-8 字节，完整路径在需要时拼出；</li>
+ * <li>子节点表为开放寻址的数组，而不是 Map；</li>
+ * <li>Stat 的各字段保存在按槽位索引的基本类型数组中，节点只保存槽位号；</li>
+ * <li>内容相同的节点数据只保存一份（按内容去重并引用计数）。</li>
+ * </ul>
+ * 事件和 getCurrentData() 返回的 ChildData 在调用时生成，其中的 byte[] 可能被多个节点共享，不要修改。
+ * <p>
+ * 设置 setSnapshotFile() 后，启动时加载本地快照（见 CacheSnapshot），快照中的节点先用 exists 确认 mzxid 未变化，未变化时不再 getData；
+ * close() 时保存快照。重新连接时如果会话未变（ZooKeeper 客户端会自动恢复 Watcher，服务端补发断开期间的变化），只重试断开期间失败的请求；
+ * 会话已变（旧会话过期）时对所有节点重新 exists + getChildren，同样只对 mzxid 变化的节点 getData。
+ * <p>
+ * 所有 ZooKeeper 回调在 EventThread 上执行，树的读写由 this 保护；监听器在单独的事件线程上按顺序调用。
+ */
+public class CompactTreeCache implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(CompactTreeCache.class);
+
+    private static final byte PENDING = 0;
+    private static final byte LIVE = 1;
+    private static final byte DEAD = 2;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final CuratorFramework client;
+    private final String rootPath;
+    private final ListenerContainer<TreeCacheListener> listeners = new ListenerContainer<>();
+    private final ExecutorService executor;
+
+    // 以下字段由 this 保护
+    private final Node root;
+    private final StatSlab stats = new StatSlab();
+    private final Map<Payload, Payload> payloads = new HashMap<>();
+    private int size;
+    private long logicalBytes;
+    private boolean initialized;
+    private boolean closed;
+    private File snapshotFile;
+    /**
+     * 启动时加载的快照中尚未使用的节点
+     */
+    private Map<String, CacheSnapshot.Entry> snapshot = Collections.emptyMap();
+    /**
+     * 请求失败（如连接断开）的节点，重新连接后重试
+     */
+    private final Set<Node> failedData = new HashSet<>();
+    private final Set<Node> failedChildren = new HashSet<>();
+    private long sessionId;
+
+    /**
+     * 未完成的后台请求数，初次加载时降为 0 即发出 INITIALIZED
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * 节点（前缀树）
+     */
+    private static final class Node {
+
+        private final Node parent;
+        private final byte[] segment;
+        /**
+         * 子节点表（开放寻址，线性探测），没有子节点时为 null
+         */
+        private Node[] children;
+        private int childCount;
+        private int slot = -1;
+        private Payload data;
+        private byte state = PENDING;
+
+        private Node(Node parent, byte[] segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        private Node child(byte[] segment) {
+            if (children == null) {
+                return null;
+            }
+            int mask = children.length - 1;
+            for (int i = Arrays.hashCode(segment) & mask; children[i] != null; i = (i + 1) & mask) {
+                if (Arrays.equals(children[i].segment, segment)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private void addChild(Node node) {
+            if (children == null) {
+                children = new Node[2];
+            } else if ((childCount + 1) * 4 > children.length * 3) {
+                Node[] old = children;
+                children = new Node[old.length * 2];
+                for (Node n : old) {
+                    if (n != null) {
+                        insert(children, n);
+                    }
+                }
+            }
+            insert(children, node);
+            childCount++;
+        }
+
+        private static void insert(Node[] table, Node node) {
+            int mask = table.length - 1;
+            int i = Arrays.hashCode(node.segment) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = node;
+        }
+
+        private void removeChild(Node node) {
+            if (children == null) {
+                return;
+            }
+            int mask = children.length - 1;
+            int i = Arrays.hashCode(node.segment) & mask;
+            while (children[i] != null && children[i] != node) {
+                i = (i + 1) & mask;
+            }
+            if (children[i] == null) {
+                return;
+            }
+            children[i] = null;
+            childCount--;
+            // 后移删除：将后续同一探测链上的节点前移
+            for (int j = (i + 1) & mask; children[j] != null; j = (j + 1) & mask) {
+                Node moved = children[j];
+                children[j] = null;
+                insert(children, moved);
+            }
+            if (childCount == 0) {
+                children = null;
+            }
+        }
+
+        private List<Node> childList() {
+            List<Node> list = new ArrayList<>(childCount);
+            if (children != null) {
+                for (Node n : children) {
+                    if (n != null) {
+                        list.add(n);
+                    }
+                }
+            }
+            return list;
+        }
+    }
+
+    /**
+     * 去重后的节点数据
+     */
+    private static final class Payload {
+
+        private final byte[] data;
+        private final int hash;
+        private int refs;
+
+        private Payload(byte[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Payload && hash == ((Payload) o).hash && Arrays.equals(data, ((Payload) o).data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 按槽位保存 Stat 各字段
+     */
+    private static final class StatSlab {
+
+        private long[] czxid = new long[16];
+        private long[] mzxid = new long[16];
+        private long[] ctime = new long[16];
+        private long[] mtime = new long[16];
+        private long[] pzxid = new long[16];
+        private long[] ephemeralOwner = new long[16];
+        private int[] version = new int[16];
+        private int[] cversion = new int[16];
+        private int[] aversion = new int[16];
+        private int[] dataLength = new int[16];
+        private int[] numChildren = new int[16];
+
+        private int next;
+        private int[] free = new int[16];
+        private int freeCount;
+
+        private int allocate() {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (next == czxid.length) {
+                int capacity = czxid.length + (czxid.length >> 1);
+                czxid = Arrays.copyOf(czxid, capacity);
+                mzxid = Arrays.copyOf(mzxid, capacity);
+                ctime = Arrays.copyOf(ctime, capacity);
+                mtime = Arrays.copyOf(mtime, capacity);
+                pzxid = Arrays.copyOf(pzxid, capacity);
+                ephemeralOwner = Arrays.copyOf(ephemeralOwner, capacity);
+                version = Arrays.copyOf(version, capacity);
+                cversion = Arrays.copyOf(cversion, capacity);
+                aversion = Arrays.copyOf(aversion, capacity);
+                dataLength = Arrays.copyOf(dataLength, capacity);
+                numChildren = Arrays.copyOf(numChildren, capacity);
+            }
+            return next++;
+        }
+
+        private void release(int slot) {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, free.length * 2);
+            }
+            free[freeCount++] = slot;
+        }
+
+        private void set(int slot, Stat stat) {
+            czxid[slot] = stat.getCzxid();
+            mzxid[slot] = stat.getMzxid();
+            ctime[slot] = stat.getCtime();
+            mtime[slot] = stat.getMtime();
+            pzxid[slot] = stat.getPzxid();
+            ephemeralOwner[slot] = stat.getEphemeralOwner();
+            version[slot] = stat.getVersion();
+            cversion[slot] = stat.getCversion();
+            aversion[slot] = stat.getAversion();
+            dataLength[slot] = stat.getDataLength();
+            numChildren[slot] = stat.getNumChildren();
+        }
+
+        private Stat get(int slot) {
+            return new Stat(czxid[slot], mzxid[slot], ctime[slot], mtime[slot], version[slot], cversion[slot],
+                    aversion[slot], ephemeralOwner[slot], dataLength[slot], numChildren[slot], pzxid[slot]);
+        }
+    }
+
+    /**
+     * @param client 已启动的客户端
+     * @param root   监听的根节点路径
+     */
+    public CompactTreeCache(CuratorFramework client, String root) {
+        if (root == null || !root.startsWith("/") || (root.length() > 1 && root.endsWith("/"))) {
+            throw new IllegalArgumentException("invalid root path: " + root);
+        }
+        this.client = client;
+        this.rootPath = root;
+        this.root = new Node(null, root.getBytes(StandardCharsets.UTF_8));
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CompactTreeCache");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public ListenerContainer<TreeCacheListener> getListenable() {
+        return listeners;
+    }
+
+    /**
+     * 设置本地快照文件（在 start() 之前调用）
+     */
+    public synchronized CompactTreeCache setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        return this;
+    }
+
+    /**
+     * 开始监听，初次加载完成后发出 INITIALIZED 事件
+     */
+    public CompactTreeCache start() {
+        synchronized (this) {
+            if (snapshotFile != null) {
+                snapshot = CacheSnapshot.read(snapshotFile);
+                log.info("load {} nodes from snapshot {}", snapshot.size(), snapshotFile);
+            }
+        }
+        client.getConnectionStateListenable().addListener(connectionStateListener);
+        if (client.getZookeeperClient().isConnected()) {
+            sessionId = currentSessionId();
+            refreshRoot();
+        }
+        return this;
+    }
+
+    /**
+     * 将当前所有节点保存到快照文件
+     */
+    public void saveSnapshot() throws IOException {
+        List<CacheSnapshot.Entry> entries = new ArrayList<>();
+        File file;
+        synchronized (this) {
+            file = snapshotFile;
+            if (file == null) {
+                throw new IllegalStateException("snapshot file not set");
+            }
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                if (node.state == LIVE) {
+                    entries.add(new CacheSnapshot.Entry(pathOf(node), stats.mzxid[node.slot],
+                            node.data == null ? EMPTY : node.data.data));
+                }
+                for (Node child : node.childList()) {
+                    stack.push(child);
+                }
+            }
+        }
+        CacheSnapshot.write(file, entries);
+        log.info("save {} nodes to snapshot {}", entries.size(), file);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        client.getConnectionStateListenable().removeListener(connectionStateListener);
+        listeners.clear();
+        executor.shutdown();
+        if (snapshotFile != null) {
+            try {
+                saveSnapshot();
+            } catch (IOException e) {
+                log.warn("save snapshot " + snapshotFile + " failure: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 获取节点当前数据
+     *
+     * @param path 完整路径
+     * @return 节点不存在或尚未加载时为 null
+     */
+    public synchronized ChildData getCurrentData(String path) {
+        Node node = find(path);
+        return node == null || node.state != LIVE ? null : toChildData(node, path);
+    }
+
+    /**
+     * 获取节点当前的子节点
+     *
+     * @param path 完整路径
+     * @return key 为子节点名，按名称排序；节点不存在时为 null
+     */
+    public synchronized Map<String, ChildData> getCurrentChildren(String path) {
+        Node node = find(path);
+        if (node == null || node.state != LIVE) {
+            return null;
+        }
+        Map<String, ChildData> result = new TreeMap<>();
+        for (Node child : node.childList()) {
+            if (child.state == LIVE) {
+                result.put(new String(child.segment, StandardCharsets.UTF_8), toChildData(child, pathOf(child)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 已加载的节点数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 去重后实际保存的不同节点数据的个数
+     */
+    public synchronized int getDistinctPayloads() {
+        return payloads.size();
+    }
+
+    /**
+     * 去重后实际保存的节点数据字节数
+     */
+    public synchronized long getStoredPayloadBytes() {
+        long bytes = 0;
+        for (Payload payload : payloads.keySet()) {
+            bytes += payload.data.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * 所有节点数据的字节数之和（去重前）
+     */
+    public synchronized long getLogicalPayloadBytes() {
+        return logicalBytes;
+    }
+
+    // ------------------------------------------------------------------
+    // ZooKeeper 请求及回调
+
+    private final Watcher watcher = new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() == Event.EventType.None || event.getPath() == null) {
+                return;
+            }
+            Node node;
+            synchronized (CompactTreeCache.this) {
+                if (closed) {
+                    return;
+                }
+                node = find(event.getPath());
+            }
+            if (node == null) {
+                return;
+            }
+            switch (event.getType()) {
+                case NodeCreated:
+                    refreshData(node);
+                    break;
+                case NodeDataChanged:
+                    refreshData(node);
+                    break;
+                case NodeChildrenChanged:
+                    refreshChildren(node);
+                    break;
+                case NodeDeleted:
+                    removed(node);
+                    if (node == root) {
+                        existsRoot();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    private final BackgroundCallback dataCallback = new BackgroundCallback() {
+        @Override
+        public void processResult(CuratorFramework client, CuratorEvent event) {
+            try {
+                Node node = (Node) event.getContext();
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    loaded(node, event.getStat(), event.getData());
+                } else if (event.getResultCode() == KeeperException.Code.NONODE.intValue()) {
+                    removed(node);
+                    if (node == root) {
+                        // 根节点不存在时监听其创建
+                        existsRoot();
+                    }
+                } else {
+                    log.warn("getData {} failure, resultCode: {}", event.getPath(), event.getResultCode());
+                    failed(failedData, node);
+                }
+            } finally {
+                completed();
+            }
+        }
+    };
+
+    private final BackgroundCallback childrenCallback = new BackgroundCallback() {
+        @Override
+        public void processResult(CuratorFramework client, CuratorEvent event) {
+            try {
+                Node node = (Node) event.getContext();
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    List<Node> added = new ArrayList<>();
+                    synchronized (CompactTreeCache.this) {
+                        if (closed || node.state == DEAD) {
+                            return;
+                        }
+                        for (String name : event.getChildren()) {
+                            byte[] segment = name.getBytes(StandardCharsets.UTF_8);
+                            if (node.child(segment) == null) {
+                                Node child = new Node(node, segment);
+                                node.addChild(child);
+                                added.add(child);
+                            }
+                        }
+                    }
+                    for (Node child : added) {
+                        refresh(child);
+                    }
+                } else if (event.getResultCode() != KeeperException.Code.NONODE.intValue()) {
+                    log.warn("getChildren {} failure, resultCode: {}", event.getPath(), event.getResultCode());
+                    failed(failedChildren, (Node) event.getContext());
+                }
+            } finally {
+                completed();
+            }
+        }
+    };
+
+    private final BackgroundCallback existsCallback = new BackgroundCallback() {
+        @Override
+        public void processResult(CuratorFramework client, CuratorEvent event) {
+            try {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    // 设置 exists 监听前根节点已被创建
+                    refreshData(root);
+                }
+            } finally {
+                completed();
+            }
+        }
+    };
+
+    private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            switch (newState) {
+                case SUSPENDED:
+                    publish(TreeCacheEvent.Type.CONNECTION_SUSPENDED, null);
+                    break;
+                case LOST:
+                    publish(TreeCacheEvent.Type.CONNECTION_LOST, null);
+                    break;
+                case CONNECTED:
+                    sessionId = currentSessionId();
+                    refreshRoot();
+                    break;
+                case RECONNECTED:
+                    publish(TreeCacheEvent.Type.CONNECTION_RECONNECTED, null);
+                    long previous = sessionId;
+                    sessionId = currentSessionId();
+                    if (sessionId != previous) {
+                        revalidateAll();
+                    } else {
+                        retryFailed();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    private void refreshRoot() {
+        refresh(root);
+    }
+
+    /**
+     * 读取节点数据：快照中有该节点时先用 exists 确认 mzxid，否则直接 getData
+     */
+    private void refresh(Node node) {
+        CacheSnapshot.Entry entry = null;
+        synchronized (this) {
+            if (!snapshot.isEmpty()) {
+                entry = snapshot.remove(pathOf(node));
+            }
+        }
+        if (entry == null) {
+            refreshData(node);
+        } else {
+            verifyData(node, entry.getMzxid(), entry.getData());
+        }
+    }
+
+    /**
+     * 新会话: 原有的 Watcher 都已失效，对所有节点重新 exists + getChildren（只对 mzxid 变化的节点 getData）
+     */
+    private void revalidateAll() {
+        List<Node> live = new ArrayList<>();
+        List<Node> pending = new ArrayList<>();
+        List<Long> mzxids = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        synchronized (this) {
+            failedData.clear();
+            failedChildren.clear();
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                if (node.state == LIVE) {
+                    live.add(node);
+                    mzxids.add(stats.mzxid[node.slot]);
+                    data.add(node.data == null ? EMPTY : node.data.data);
+                } else if (node.state == PENDING) {
+                    pending.add(node);
+                }
+                for (Node child : node.childList()) {
+                    stack.push(child);
+                }
+            }
+        }
+        log.info("new session, revalidate {} nodes", live.size());
+        for (int i = 0; i < live.size(); i++) {
+            verifyData(live.get(i), mzxids.get(i), data.get(i));
+            refreshChildren(live.get(i));
+        }
+        for (Node node : pending) {
+            refresh(node);
+        }
+    }
+
+    /**
+     * 同一会话: Watcher 仍然有效，只重试失败的请求
+     */
+    private void retryFailed() {
+        List<Node> data;
+        List<Node> children;
+        synchronized (this) {
+            data = new ArrayList<>(failedData);
+            children = new ArrayList<>(failedChildren);
+            failedData.clear();
+            failedChildren.clear();
+        }
+        for (Node node : data) {
+            refresh(node);
+        }
+        for (Node node : children) {
+            refreshChildren(node);
+        }
+    }
+
+    private synchronized void failed(Set<Node> failed, Node node) {
+        if (!closed) {
+            failed.add(node);
+        }
+    }
+
+    private long currentSessionId() {
+        try {
+            return client.getZookeeperClient().getZooKeeper().getSessionId();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * exists 确认节点的 mzxid，未变化时使用已知的数据，否则 getData
+     */
+    private void verifyData(Node node, final long knownMzxid, final byte[] knownData) {
+        String path;
+        synchronized (this) {
+            if (closed || node.state == DEAD) {
+                return;
+            }
+            path = pathOf(node);
+        }
+        outstanding.incrementAndGet();
+        final Node target = node;
+        try {
+            client.checkExists().usingWatcher(watcher).inBackground(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) {
+                    try {
+                        if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                            if (event.getStat().getMzxid() == knownMzxid) {
+                                loaded(target, event.getStat(), knownData);
+                            } else {
+                                refreshData(target);
+                            }
+                        } else if (event.getResultCode() == KeeperException.Code.NONODE.intValue()) {
+                            // exists 已设置 Watcher，重新创建时收到 NodeCreated（根节点）或父节点的 NodeChildrenChanged
+                            removed(target);
+                        } else {
+                            log.warn("checkExists {} failure, resultCode: {}", event.getPath(), event.getResultCode());
+                            failed(failedData, target);
+                        }
+                    } finally {
+                        completed();
+                    }
+                }
+            }).forPath(path);
+        } catch (Exception e) {
+            log.error("checkExists " + path + " failure: " + e.getMessage(), e);
+            completed();
+        }
+    }
+
+    private void refreshData(Node node) {
+        String path;
+        synchronized (this) {
+            if (closed || node.state == DEAD) {
+                return;
+            }
+            path = pathOf(node);
+        }
+        outstanding.incrementAndGet();
+        try {
+            client.getData().usingWatcher(watcher).inBackground(dataCallback, node).forPath(path);
+        } catch (Exception e) {
+            log.error("getData " + path + " failure: " + e.getMessage(), e);
+            completed();
+        }
+    }
+
+    private void refreshChildren(Node node) {
+        String path;
+        synchronized (this) {
+            if (closed || node.state == DEAD) {
+                return;
+            }
+            path = pathOf(node);
+        }
+        outstanding.incrementAndGet();
+        try {
+            client.getChildren().usingWatcher(watcher).inBackground(childrenCallback, node).forPath(path);
+        } catch (Exception e) {
+            log.error("getChildren " + path + " failure: " + e.getMessage(), e);
+            completed();
+        }
+    }
+
+    private void existsRoot() {
+        outstanding.incrementAndGet();
+        try {
+            client.checkExists().usingWatcher(watcher).inBackground(existsCallback).forPath(rootPath);
+        } catch (Exception e) {
+            log.error("checkExists " + rootPath + " failure: " + e.getMessage(), e);
+            completed();
+        }
+    }
+
+    private void completed() {
+        if (outstanding.decrementAndGet() == 0) {
+            synchronized (this) {
+                if (initialized || closed) {
+                    return;
+                }
+                initialized = true;
+            }
+            publish(TreeCacheEvent.Type.INITIALIZED, null);
+        }
+    }
+
+    /**
+     * 读取到节点数据
+     */
+    private void loaded(Node node, Stat stat, byte[] data) {
+        boolean created;
+        synchronized (this) {
+            if (closed || node.state == DEAD) {
+                return;
+            }
+            created = node.state == PENDING;
+            if (created) {
+                node.slot = stats.allocate();
+                node.state = LIVE;
+                size++;
+            } else if (stats.mzxid[node.slot] == stat.getMzxid()) {
+                // 数据未变化（如重新连接后的刷新），只更新 Stat
+                stats.set(node.slot, stat);
+                return;
+            }
+            stats.set(node.slot, stat);
+            release(node.data);
+            node.data = acquire(data);
+            publish(created ? TreeCacheEvent.Type.NODE_ADDED : TreeCacheEvent.Type.NODE_UPDATED, toChildData(node, pathOf(node)));
+        }
+        if (created) {
+            refreshChildren(node);
+        }
+    }
+
+    /**
+     * 节点被删除：删除整棵子树（先子节点后父节点，依次发出 NODE_REMOVED）
+     */
+    private void removed(Node node) {
+        synchronized (this) {
+            if (closed || node.state == DEAD) {
+                return;
+            }
+            removeSubtree(node);
+            if (node == root) {
+                // 根节点保留，等待重新创建
+                root.state = PENDING;
+            } else {
+                node.parent.removeChild(node);
+            }
+        }
+    }
+
+    private void removeSubtree(Node node) {
+        for (Node child : node.childList()) {
+            removeSubtree(child);
+            node.removeChild(child);
+        }
+        if (node.state == LIVE) {
+            publish(TreeCacheEvent.Type.NODE_REMOVED, toChildData(node, pathOf(node)));
+            stats.release(node.slot);
+            node.slot = -1;
+            release(node.data);
+            node.data = null;
+            size--;
+        }
+        node.state = DEAD;
+    }
+
+    // ------------------------------------------------------------------
+    // 前缀树及数据
+
+    private Payload acquire(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        Payload probe = new Payload(data);
+        Payload payload = payloads.get(probe);
+        if (payload == null) {
+            payload = probe;
+            payloads.put(payload, payload);
+        }
+        payload.refs++;
+        logicalBytes += data.length;
+        return payload;
+    }
+
+    private void release(Payload payload) {
+        if (payload == null) {
+            return;
+        }
+        logicalBytes -= payload.data.length;
+        if (--payload.refs == 0) {
+            payloads.remove(payload);
+        }
+    }
+
+    private Node find(String path) {
+        if (path.equals(rootPath)) {
+            return root;
+        }
+        String prefix = "/".equals(rootPath) ? rootPath : rootPath + "/";
+        if (!path.startsWith(prefix)) {
+            return null;
+        }
+        Node node = root;
+        int begin = prefix.length();
+        while (node != null && begin <= path.length()) {
+            int end = path.indexOf('/', begin);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.child(path.substring(begin, end).getBytes(StandardCharsets.UTF_8));
+            begin = end + 1;
+        }
+        return node;
+    }
+
+    private String pathOf(Node node) {
+        if (node == root) {
+            return rootPath;
+        }
+        Deque<byte[]> segments = new ArrayDeque<>();
+        for (Node n = node; n != root; n = n.parent) {
+            segments.push(n.segment);
+        }
+        StringBuilder builder = new StringBuilder("/".equals(rootPath) ? "" : rootPath);
+        for (byte[] segment : segments) {
+            builder.append('/').append(new String(segment, StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+
+    private ChildData toChildData(Node node, String path) {
+        return new ChildData(path, stats.get(node.slot), node.data == null ? EMPTY : node.data.data);
+    }
+
+    private void publish(TreeCacheEvent.Type type, ChildData data) {
+        final TreeCacheEvent event = new TreeCacheEvent(type, data);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listeners.forEach(new Function<TreeCacheListener, Void>() {
+                        @Override
+                        public Void apply(TreeCacheListener listener) {
+                            try {
+                                listener.childEvent(client, event);
+                            } catch (Exception e) {
+                                log.error("listener failure, event: " + event, e);
+                            }
+                            return null;
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.zozospider.zookeepercurator.cache;
+
+import com.zozospider.zookeepercurator.transaction.ChunkedTransaction;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对比 Curator TreeCache 与 CompactTreeCache 缓存同一棵树时每个节点占用的堆内存和初始化时间
+ * <p>
+ * ZooKeeper 服务端（TestingServer）运行在子进程中，不计入当前进程的堆。每种方式使用一个新的客户端，
+ * 记录缓存初始化完成（INITIALIZED）前后的堆使用量之差。两种缓存都会在客户端为每个节点注册 data 和 children 监听，
+ * 这部分开销由只注册监听、不缓存数据的 "watches only" 方式单独测出，扣除后即为缓存本身的开销。
+ * <p>
+ * 参数: [节点数] [不同节点数据的个数] [节点数据字节数]
+ */
+public class CompactTreeCacheMain {
+
+    private final static Logger log = LoggerFactory.getLogger(CompactTreeCacheMain.class);
+
+    private static final String ROOT = "/tree";
+    private static final int GROUP_SIZE = 1000;
+
+    /**
+     * 子进程输出连接串时的前缀（子进程的日志也输出到标准输出）
+     */
+    private static final String CONNECT_STRING_PREFIX = "connectString=";
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length == 1 && "server".equals(args[0])) {
+            server();
+            return;
+        }
+
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int distinct = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int dataSize = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-Xmx2g", "-cp", System.getProperty("java.class.path"),
+                CompactTreeCacheMain.class.getName(), "server")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String connectString = null;
+            String line;
+            while (connectString == null && (line = reader.readLine()) != null) {
+                if (line.startsWith(CONNECT_STRING_PREFIX)) {
+                    connectString = line.substring(CONNECT_STRING_PREFIX.length());
+                }
+            }
+            if (connectString == null) {
+                throw new IllegalStateException("server process exited");
+            }
+            // 继续读取子进程的输出，避免管道写满后阻塞子进程
+            Thread drain = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (reader.readLine() != null) {
+                            // 丢弃
+                        }
+                    } catch (IOException e) {
+                        // 子进程已退出
+                    }
+                }
+            });
+            drain.setDaemon(true);
+            drain.start();
+            log.info("server: {}", connectString);
+
+            populate(connectString, nodes, distinct, dataSize);
+            long watches = measure("watches only", connectString, 0);
+            measure("TreeCache", connectString, watches);
+            measure("CompactTreeCache", connectString, watches);
+        } finally {
+            process.getOutputStream().close();
+            process.waitFor(30, TimeUnit.SECONDS);
+            process.destroy();
+        }
+    }
+
+    /**
+     * 子进程：启动 TestingServer，输出连接串，标准输入关闭后退出
+     */
+    private static void server() throws Exception {
+        try (TestingServer server = new TestingServer()) {
+            System.out.println(CONNECT_STRING_PREFIX + server.getConnectString());
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                // 等待父进程关闭标准输入
+            }
+        }
+    }
+
+    private static void populate(String connectString, int nodes, int distinct, int dataSize) throws Exception {
+
+        byte[][] payloads = new byte[distinct][];
+        for (int i = 0; i < distinct; i++) {
+            payloads[i] = new byte[dataSize];
+            payloads[i][0] = (byte) i;
+        }
+        CuratorFramework client = newClient(connectString);
+        try {
+            ChunkedTransaction transaction = new ChunkedTransaction(client);
+            transaction.create(ROOT, new byte[0]);
+            for (int i = 0; i < nodes; i++) {
+                if (i % GROUP_SIZE == 0) {
+                    transaction.create(ROOT + "/g" + (i / GROUP_SIZE), payloads[0]);
+                }
+                transaction.create(ROOT + "/g" + (i / GROUP_SIZE) + "/n" + i, payloads[i % distinct]);
+            }
+            long begin = System.nanoTime();
+            transaction.commit().get();
+            log.info("populate {} nodes ({} distinct payloads of {} bytes) in {} ms", transaction.size(), distinct,
+                    dataSize, (System.nanoTime() - begin) / 1000000);
+        } finally {
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    /**
+     * @return 堆内存增量
+     */
+    private static long measure(String name, String connectString, long watchesHeap) throws Exception {
+
+        CuratorFramework client = newClient(connectString);
+        try {
+            client.blockUntilConnected();
+            long heapBefore = usedHeap();
+            long begin = System.nanoTime();
+            final CountDownLatch initialized = new CountDownLatch(1);
+            final CountDownLatch updated = new CountDownLatch(1);
+            final CountDownLatch removed = new CountDownLatch(1);
+            final AtomicInteger added = new AtomicInteger();
+            TreeCacheListener listener = new TreeCacheListener() {
+                @Override
+                public void childEvent(CuratorFramework client, TreeCacheEvent event) {
+                    switch (event.getType()) {
+                        case NODE_ADDED:
+                            added.incrementAndGet();
+                            break;
+                        case NODE_UPDATED:
+                            updated.countDown();
+                            break;
+                        case NODE_REMOVED:
+                            removed.countDown();
+                            break;
+                        case INITIALIZED:
+                            initialized.countDown();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            };
+
+            Closeable cache = null;
+            int size;
+            if ("TreeCache".equals(name)) {
+                TreeCache treeCache = new TreeCache(client, ROOT);
+                treeCache.getListenable().addListener(listener);
+                treeCache.start();
+                initialized.await();
+                cache = treeCache;
+                size = countTreeCache(treeCache, ROOT);
+            } else if ("CompactTreeCache".equals(name)) {
+                CompactTreeCache compactTreeCache = new CompactTreeCache(client, ROOT);
+                compactTreeCache.getListenable().addListener(listener);
+                compactTreeCache.start();
+                initialized.await();
+                cache = compactTreeCache;
+                size = compactTreeCache.size();
+                log.info("CompactTreeCache: {} distinct payloads, {} stored / {} logical payload bytes",
+                        compactTreeCache.getDistinctPayloads(), compactTreeCache.getStoredPayloadBytes(),
+                        compactTreeCache.getLogicalPayloadBytes());
+            } else {
+                size = registerWatches(client);
+            }
+            long elapsedMs = (System.nanoTime() - begin) / 1000000;
+            long heap = usedHeap() - heapBefore;
+            if (cache == null) {
+                log.info("{}: {} nodes in {} ms, heap {} MB, {} bytes/node", name, size, elapsedMs,
+                        heap / 1024 / 1024, heap / size);
+                return heap;
+            }
+            log.info("{}: {} nodes in {} ms, {} ADDED events, heap {} MB, {} bytes/node ({} bytes/node excluding client watches)",
+                    name, size, elapsedMs, added.get(), heap / 1024 / 1024, heap / size, (heap - watchesHeap) / size);
+
+            // 修改和删除一个节点，检查事件
+            String path = ROOT + "/g0/n0";
+            client.setData().forPath(path, "changed".getBytes());
+            boolean updatedOk = updated.await(10, TimeUnit.SECONDS);
+            client.delete().forPath(path);
+            boolean removedOk = removed.await(10, TimeUnit.SECONDS);
+            log.info("{}: NODE_UPDATED received: {}, NODE_REMOVED received: {}", name, updatedOk, removedOk);
+            client.create().forPath(path, new byte[0]);
+            CloseableUtils.closeQuietly(cache);
+            return heap;
+        } finally {
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    private static int countTreeCache(TreeCache cache, String path) {
+        int count = 1;
+        Map<String, ChildData> children = cache.getCurrentChildren(path);
+        if (children != null) {
+            for (String child : children.keySet()) {
+                count += countTreeCache(cache, path + "/" + child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 与缓存相同地为每个节点注册 data 和 children 监听，但不保存数据
+     */
+    private static int registerWatches(final CuratorFramework client) throws Exception {
+
+        final Watcher watcher = new Watcher() {
+            @Override
+            public void process(WatchedEvent event) {
+            }
+        };
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        BackgroundCallback callback = new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                if (event.getChildren() != null) {
+                    for (String child : event.getChildren()) {
+                        String path = event.getPath() + "/" + child;
+                        outstanding.addAndGet(2);
+                        client.getData().usingWatcher(watcher).inBackground(this).forPath(path);
+                        client.getChildren().usingWatcher(watcher).inBackground(this).forPath(path);
+                    }
+                } else {
+                    count.incrementAndGet();
+                }
+                if (outstanding.decrementAndGet() == 0) {
+                    done.countDown();
+                }
+            }
+        };
+        outstanding.addAndGet(2);
+        client.getData().usingWatcher(watcher).inBackground(callback).forPath(ROOT);
+        client.getChildren().usingWatcher(watcher).inBackground(callback).forPath(ROOT);
+        if (outstanding.decrementAndGet() == 0) {
+            done.countDown();
+        }
+        done.await();
+        return count.get();
+    }
+
+    private static CuratorFramework newClient(String connectString) {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(connectString, new RetryNTimes(3, 1000));
+        client.start();
+        return client;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+}
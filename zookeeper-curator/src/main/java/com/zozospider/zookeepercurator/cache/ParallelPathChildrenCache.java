@@ -0,0 +1,673 @@
+package com.zozospider.zookeepercurator.cache;
+
+import com.google.common.base.Function;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.listen.ListenerContainer;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 初次加载并行化的子节点缓存
+ * <p>
+ * 与 Curator 的 PathChildrenCache 一样缓存 path 的直接子节点，并通过 PathChildrenCacheListener 发出相同的
+ * CHILD_ADDED / CHILD_UPDATED / CHILD_REMOVED / INITIALIZED 及连接状态事件。
+ * PathChildrenCache 以 BUILD_INITIAL_CACHE 启动时逐个同步 getData，子节点很多时启动很慢；
+ * 这里初次加载时所有子节点的 getData 都以后台方式发出，同时未完成的请求数不超过 maxConcurrency，
+ * 之后由子节点和数据的 Watcher 驱动增量同步。
+ * <p>
+ * 所有请求都不阻塞 EventThread：超出并发上限的请求进入队列，前一个请求完成时再发出。监听器在单独的事件线程上按顺序调用。
+ * <p>
+ * 设置 setSnapshotFile() 后，启动时加载本地快照（见 CacheSnapshot），快照中的子节点先用 exists 确认 mzxid 未变化，未变化时不再 getData；
+ * close() 时保存快照。重新连接时如果会话未变，只重试断开期间失败的请求；会话已变时重新 getChildren 并对所有子节点 exists，
+ * 同样只对 mzxid 变化的子节点 getData。
+ */
+public class ParallelPathChildrenCache implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(ParallelPathChildrenCache.class);
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+    private final CuratorFramework client;
+    private final String path;
+    private final boolean cacheData;
+    private final int maxConcurrency;
+    private final ListenerContainer<PathChildrenCacheListener> listeners = new ListenerContainer<>();
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, ChildData> currentData = new ConcurrentHashMap<>();
+
+    // 以下字段由 this 保护
+    /**
+     * 最近一次 getChildren 返回的子节点（完整路径），不在其中的节点的 getData 结果被丢弃
+     */
+    private final Set<String> children = new HashSet<>();
+    private final Deque<String> pending = new ArrayDeque<>();
+    private final Set<String> queued = new HashSet<>();
+    private int inFlight;
+    private int maxInFlight;
+    /**
+     * 初次加载尚未完成的子节点，为 null 表示初次加载已完成
+     */
+    private Set<String> initialRemaining;
+    private PathChildrenCache.StartMode mode;
+    private boolean closed;
+    private File snapshotFile;
+    /**
+     * 已知 mzxid 和数据的子节点（启动时来自快照，新会话时来自当前缓存），发出请求时先 exists 确认
+     */
+    private final Map<String, CacheSnapshot.Entry> known = new HashMap<>();
+    /**
+     * 请求失败（如连接断开）的子节点，重新连接后重试
+     */
+    private final Set<String> failed = new HashSet<>();
+    private boolean childrenFailed;
+    private long sessionId;
+    /**
+     * BUILD_INITIAL_CACHE 启动时初次加载中第一个失败的请求，由 start() 抛出
+     */
+    private Exception initialFailure;
+
+    private final CountDownLatch initialized = new CountDownLatch(1);
+    /**
+     * 初次加载完成、失败或 close() 时释放，BUILD_INITIAL_CACHE 的 start() 等待它
+     */
+    private final CountDownLatch initialAttempted = new CountDownLatch(1);
+
+    /**
+     * @param client    已启动的客户端
+     * @param path      监听的父节点路径
+     * @param cacheData 是否缓存节点数据（为 false 时 ChildData 中的数据为 null）
+     */
+    public ParallelPathChildrenCache(CuratorFramework client, String path, boolean cacheData) {
+        this(client, path, cacheData, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * @param maxConcurrency 同时未完成的 getData 请求数上限
+     */
+    public ParallelPathChildrenCache(CuratorFramework client, String path, boolean cacheData, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency: " + maxConcurrency);
+        }
+        this.client = client;
+        this.path = path;
+        this.cacheData = cacheData;
+        this.maxConcurrency = maxConcurrency;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ParallelPathChildrenCache");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public ListenerContainer<PathChildrenCacheListener> getListenable() {
+        return listeners;
+    }
+
+    /**
+     * 设置本地快照文件（在 start() 之前调用）
+     */
+    public synchronized ParallelPathChildrenCache setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        return this;
+    }
+
+    /**
+     * 将当前所有子节点保存到快照文件
+     */
+    public void saveSnapshot() throws IOException {
+        File file;
+        synchronized (this) {
+            file = snapshotFile;
+        }
+        if (file == null) {
+            throw new IllegalStateException("snapshot file not set");
+        }
+        List<CacheSnapshot.Entry> entries = new ArrayList<>();
+        for (ChildData data : currentData.values()) {
+            entries.add(new CacheSnapshot.Entry(data.getPath(), data.getStat().getMzxid(), data.getData()));
+        }
+        CacheSnapshot.write(file, entries);
+        log.info("save {} children to snapshot {}", entries.size(), file);
+    }
+
+    /**
+     * 与 PathChildrenCache.start(StartMode) 相同:
+     * NORMAL: 初次加载的子节点发出 CHILD_ADDED;
+     * BUILD_INITIAL_CACHE: 阻塞直到初次加载完成，初次加载的子节点不发出事件;
+     * POST_INITIALIZED_EVENT: 初次加载的子节点发出 CHILD_ADDED，完成后发出 INITIALIZED。
+     * <p>
+     * BUILD_INITIAL_CACHE 时初次加载的请求失败（按客户端的重试策略重试后仍失败，如连接断开）会抛出该请求的异常，而不是一直阻塞;
+     * 此时缓存仍在运行（重新连接后继续加载，与其他模式相同），不再使用时需要 close()。
+     */
+    public void start(PathChildrenCache.StartMode mode) throws Exception {
+        synchronized (this) {
+            if (this.mode != null) {
+                throw new IllegalStateException("already started");
+            }
+            this.mode = mode;
+            if (snapshotFile != null) {
+                known.putAll(CacheSnapshot.read(snapshotFile));
+                log.info("load {} children from snapshot {}", known.size(), snapshotFile);
+            }
+        }
+        client.getConnectionStateListenable().addListener(connectionStateListener);
+        sessionId = currentSessionId();
+        if (mode == PathChildrenCache.StartMode.BUILD_INITIAL_CACHE) {
+            refreshChildren();
+            initialAttempted.await();
+            Exception failure;
+            synchronized (this) {
+                failure = initialFailure;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } else {
+            // 与 PathChildrenCache 相同在事件线程上发起初次加载: 带 namespace 时 forPath 会先同步创建 namespace 节点，
+            // 服务端不可用时会按重试策略阻塞，不能阻塞调用方
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refreshChildren();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            queued.clear();
+        }
+        client.getConnectionStateListenable().removeListener(connectionStateListener);
+        listeners.clear();
+        executor.shutdown();
+        initialized.countDown();
+        initialAttempted.countDown();
+        if (snapshotFile != null) {
+            try {
+                saveSnapshot();
+            } catch (IOException e) {
+                log.warn("save snapshot " + snapshotFile + " failure: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 当前所有子节点，按路径排序
+     */
+    public List<ChildData> getCurrentData() {
+        List<ChildData> list = new ArrayList<>(currentData.values());
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * @param fullPath 子节点完整路径
+     * @return 不存在时为 null
+     */
+    public ChildData getCurrentData(String fullPath) {
+        return currentData.get(fullPath);
+    }
+
+    /**
+     * 等待发出的 getData 请求数
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 同时未完成的 getData 请求数的最大值
+     */
+    public synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    // ------------------------------------------------------------------
+    // ZooKeeper 请求及回调
+
+    private final Watcher watcher = new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getPath() == null) {
+                return;
+            }
+            switch (event.getType()) {
+                case NodeChildrenChanged:
+                    if (path.equals(event.getPath())) {
+                        refreshChildren();
+                    }
+                    break;
+                case NodeDataChanged:
+                    fetch(event.getPath());
+                    break;
+                case NodeDeleted:
+                    if (path.equals(event.getPath())) {
+                        // 父节点被删除，重新监听其创建
+                        refreshChildren();
+                    } else {
+                        removed(event.getPath());
+                    }
+                    break;
+                case NodeCreated:
+                    if (path.equals(event.getPath())) {
+                        refreshChildren();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    private final BackgroundCallback childrenCallback = new BackgroundCallback() {
+        @Override
+        public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+            if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                childrenLoaded(event.getChildren());
+            } else if (event.getResultCode() == KeeperException.Code.NONODE.intValue()) {
+                // 父节点不存在：清空并监听其创建
+                childrenLoaded(Collections.<String>emptyList());
+                client.checkExists().usingWatcher(watcher).inBackground().forPath(path);
+            } else {
+                log.warn("getChildren {} failure, resultCode: {}", path, event.getResultCode());
+                synchronized (ParallelPathChildrenCache.this) {
+                    childrenFailed = true;
+                }
+                initialFailed(KeeperException.create(KeeperException.Code.get(event.getResultCode()), path));
+            }
+        }
+    };
+
+    private final BackgroundCallback dataCallback = new BackgroundCallback() {
+        @Override
+        public void processResult(CuratorFramework client, CuratorEvent event) {
+            String fullPath = event.getPath();
+            try {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    dataLoaded(fullPath, event.getStat(), event.getData());
+                } else if (event.getResultCode() == KeeperException.Code.NONODE.intValue()) {
+                    removed(fullPath);
+                } else {
+                    log.warn("getData {} failure, resultCode: {}", fullPath, event.getResultCode());
+                    failed(fullPath);
+                    initialFailed(KeeperException.create(KeeperException.Code.get(event.getResultCode()), fullPath));
+                }
+            } finally {
+                completed(fullPath);
+            }
+        }
+    };
+
+    private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            switch (newState) {
+                case SUSPENDED:
+                    publish(PathChildrenCacheEvent.Type.CONNECTION_SUSPENDED, null);
+                    break;
+                case LOST:
+                    publish(PathChildrenCacheEvent.Type.CONNECTION_LOST, null);
+                    break;
+                case CONNECTED:
+                case RECONNECTED:
+                    // CONNECTED: 在第一次连接成功之前 start()（如服务端不可用时以快照启动），之前失败的请求需要重新发出
+                    publish(PathChildrenCacheEvent.Type.CONNECTION_RECONNECTED, null);
+                    long previous = sessionId;
+                    sessionId = currentSessionId();
+                    if (sessionId != previous) {
+                        revalidateAll();
+                    } else {
+                        retryFailed();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    /**
+     * 新会话: 原有的 Watcher 都已失效，重新 getChildren，并对所有子节点 exists（只对 mzxid 变化的子节点 getData）
+     */
+    private void revalidateAll() {
+        List<String> paths = new ArrayList<>();
+        synchronized (this) {
+            failed.clear();
+            childrenFailed = false;
+            for (ChildData data : currentData.values()) {
+                known.put(data.getPath(), new CacheSnapshot.Entry(data.getPath(), data.getStat().getMzxid(), data.getData()));
+                paths.add(data.getPath());
+            }
+        }
+        log.info("new session, revalidate {} children of {}", paths.size(), path);
+        refreshChildren();
+        for (String child : paths) {
+            fetch(child);
+        }
+    }
+
+    /**
+     * 同一会话: Watcher 仍然有效，只重试失败的请求
+     */
+    private void retryFailed() {
+        List<String> paths;
+        boolean children;
+        synchronized (this) {
+            paths = new ArrayList<>(failed);
+            failed.clear();
+            children = childrenFailed;
+            childrenFailed = false;
+        }
+        if (children) {
+            refreshChildren();
+        }
+        for (String child : paths) {
+            fetch(child);
+        }
+    }
+
+    private synchronized void failed(String fullPath) {
+        if (!closed) {
+            failed.add(fullPath);
+        }
+    }
+
+    private long currentSessionId() {
+        try {
+            return client.getZookeeperClient().getZooKeeper().getSessionId();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private void refreshChildren() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        try {
+            client.getChildren().usingWatcher(watcher).inBackground(childrenCallback).forPath(path);
+        } catch (Exception e) {
+            log.error("getChildren " + path + " failure: " + e.getMessage(), e);
+            initialFailed(e);
+        }
+    }
+
+    /**
+     * 子节点列表变化：删除已不存在的子节点，获取新增子节点的数据
+     */
+    private void childrenLoaded(List<String> names) {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        boolean initialDone = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            Set<String> latest = new HashSet<>();
+            for (String name : names) {
+                latest.add(ZKPaths.makePath(path, name));
+            }
+            for (String child : children) {
+                if (!latest.contains(child)) {
+                    removed.add(child);
+                }
+            }
+            for (String child : latest) {
+                if (children.add(child)) {
+                    added.add(child);
+                }
+            }
+            children.removeAll(removed);
+            if (initialized.getCount() > 0 && initialRemaining == null) {
+                initialRemaining = new HashSet<>(added);
+                initialDone = initialRemaining.isEmpty();
+            } else if (initialRemaining != null) {
+                initialRemaining.removeAll(removed);
+                initialDone = initialRemaining.isEmpty();
+            }
+        }
+        for (String child : removed) {
+            removed(child);
+        }
+        for (String child : added) {
+            fetch(child);
+        }
+        if (initialDone) {
+            initialLoadCompleted();
+        }
+    }
+
+    /**
+     * 获取子节点数据并设置 Watcher，超出并发上限时进入队列
+     */
+    private void fetch(String fullPath) {
+        synchronized (this) {
+            if (closed || !queued.add(fullPath)) {
+                // 已在队列中等待发出，发出时会读到最新数据
+                return;
+            }
+            if (inFlight >= maxConcurrency) {
+                pending.add(fullPath);
+                return;
+            }
+            queued.remove(fullPath);
+            inFlight++;
+            maxInFlight = Math.max(maxInFlight, inFlight);
+        }
+        send(fullPath);
+    }
+
+    /**
+     * 发出请求（占用一个并发名额，完成时调用 completed）：已知 mzxid 时先 exists 确认，否则 getData
+     */
+    private void send(String fullPath) {
+        CacheSnapshot.Entry entry;
+        synchronized (this) {
+            entry = known.remove(fullPath);
+        }
+        if (entry != null) {
+            verify(entry);
+        } else {
+            getData(fullPath);
+        }
+    }
+
+    private void getData(String fullPath) {
+        try {
+            client.getData().usingWatcher(watcher).inBackground(dataCallback).forPath(fullPath);
+        } catch (Exception e) {
+            log.error("getData " + fullPath + " failure: " + e.getMessage(), e);
+            initialFailed(e);
+            completed(fullPath);
+        }
+    }
+
+    private void verify(final CacheSnapshot.Entry entry) {
+        final String fullPath = entry.getPath();
+        try {
+            client.checkExists().usingWatcher(watcher).inBackground(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) {
+                    if (event.getResultCode() == KeeperException.Code.OK.intValue()
+                            && event.getStat().getMzxid() != entry.getMzxid()) {
+                        // 已变化，继续占用并发名额读取数据
+                        getData(fullPath);
+                        return;
+                    }
+                    try {
+                        if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                            dataLoaded(fullPath, event.getStat(), entry.getData());
+                        } else if (event.getResultCode() == KeeperException.Code.NONODE.intValue()) {
+                            removed(fullPath);
+                        } else {
+                            log.warn("checkExists {} failure, resultCode: {}", fullPath, event.getResultCode());
+                            failed(fullPath);
+                            initialFailed(KeeperException.create(KeeperException.Code.get(event.getResultCode()), fullPath));
+                        }
+                    } finally {
+                        completed(fullPath);
+                    }
+                }
+            }).forPath(fullPath);
+        } catch (Exception e) {
+            log.error("checkExists " + fullPath + " failure: " + e.getMessage(), e);
+            initialFailed(e);
+            completed(fullPath);
+        }
+    }
+
+    /**
+     * 一个 getData 请求完成：发出队列中的下一个请求，检查初次加载是否完成
+     */
+    private void completed(String fullPath) {
+        String next = null;
+        boolean initialDone = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (initialRemaining != null && initialRemaining.remove(fullPath)) {
+                initialDone = initialRemaining.isEmpty();
+            }
+            next = pending.poll();
+            if (next == null) {
+                inFlight--;
+            } else {
+                queued.remove(next);
+            }
+        }
+        if (initialDone) {
+            initialLoadCompleted();
+        }
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    private void dataLoaded(String fullPath, Stat stat, byte[] data) {
+        ChildData childData = new ChildData(fullPath, stat, cacheData ? data : null);
+        ChildData previous;
+        boolean silent;
+        synchronized (this) {
+            if (closed || !children.contains(fullPath)) {
+                // 已被删除
+                return;
+            }
+            previous = currentData.get(fullPath);
+            if (previous != null && previous.getStat().getMzxid() >= stat.getMzxid()) {
+                // 数据未变化（或是较早的请求的结果）
+                return;
+            }
+            currentData.put(fullPath, childData);
+            silent = previous == null && initialRemaining != null
+                    && mode == PathChildrenCache.StartMode.BUILD_INITIAL_CACHE;
+        }
+        if (!silent) {
+            publish(previous == null ? PathChildrenCacheEvent.Type.CHILD_ADDED : PathChildrenCacheEvent.Type.CHILD_UPDATED,
+                    childData);
+        }
+    }
+
+    private void removed(String fullPath) {
+        ChildData previous;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            children.remove(fullPath);
+            previous = currentData.remove(fullPath);
+        }
+        if (previous != null) {
+            publish(PathChildrenCacheEvent.Type.CHILD_REMOVED, previous);
+        }
+    }
+
+    private void initialLoadCompleted() {
+        synchronized (this) {
+            if (initialRemaining == null) {
+                return;
+            }
+            initialRemaining = null;
+        }
+        log.info("initial load of {} completed, {} children, max in flight: {}", path, currentData.size(), getMaxInFlight());
+        if (mode == PathChildrenCache.StartMode.POST_INITIALIZED_EVENT) {
+            publish(PathChildrenCacheEvent.Type.INITIALIZED, null);
+        }
+        initialized.countDown();
+        initialAttempted.countDown();
+    }
+
+    /**
+     * BUILD_INITIAL_CACHE 启动时初次加载的请求失败：记录第一个失败并唤醒 start()
+     */
+    private void initialFailed(Exception e) {
+        synchronized (this) {
+            if (mode != PathChildrenCache.StartMode.BUILD_INITIAL_CACHE || initialized.getCount() == 0 || initialFailure != null) {
+                return;
+            }
+            initialFailure = e;
+        }
+        initialAttempted.countDown();
+    }
+
+    private void publish(PathChildrenCacheEvent.Type type, ChildData data) {
+        final PathChildrenCacheEvent event = new PathChildrenCacheEvent(type, data);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listeners.forEach(new Function<PathChildrenCacheListener, Void>() {
+                        @Override
+                        public Void apply(PathChildrenCacheListener listener) {
+                            try {
+                                listener.childEvent(client, event);
+                            } catch (Exception e) {
+                                log.error("listener failure, event: " + event, e);
+                            }
+                            return null;
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+        }
+    }
+
+}
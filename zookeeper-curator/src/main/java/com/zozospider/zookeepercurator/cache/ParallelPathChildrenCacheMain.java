@@ -0,0 +1,138 @@
+package com.zozospider.zookeepercurator.cache;
+
+import com.zozospider.zookeepercurator.transaction.ChunkedTransaction;
+import com.zozospider.zookeepercurator.utils.LatencyProxy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在本地 TestingServer 上对比 PathChildrenCache 与 ParallelPathChildrenCache 初次加载大量子节点的时间
+ * <p>
+ * 缓存的客户端通过 LatencyProxy 连接服务端以模拟网络延迟。每种方式使用一个新的客户端，记录从 start() 到初次加载完成
+ * （BUILD_INITIAL_CACHE 时 start() 返回，POST_INITIALIZED_EVENT 时收到 INITIALIZED）的时间，
+ * 之后修改一个子节点检查增量同步（CHILD_UPDATED）。
+ * <p>
+ * 参数: [子节点数] [节点数据字节数] [单向延迟毫秒数]
+ */
+public class ParallelPathChildrenCacheMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ParallelPathChildrenCacheMain.class);
+
+    private static final String PATH = "/children";
+
+    public static void main(String[] args) throws Exception {
+
+        int children = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int dataSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int delayMs = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer();
+             LatencyProxy proxy = new LatencyProxy(server.getPort(), delayMs)) {
+
+            CuratorFramework client = newClient(server.getConnectString());
+            try {
+                ChunkedTransaction transaction = new ChunkedTransaction(client);
+                transaction.create(PATH, new byte[0]);
+                for (int i = 0; i < children; i++) {
+                    transaction.create(PATH + "/c" + i, new byte[dataSize]);
+                }
+                transaction.commit().get();
+            } finally {
+                CloseableUtils.closeQuietly(client);
+            }
+            log.info("created {} children of {} bytes, one-way delay {} ms", children, dataSize, delayMs);
+
+            // 预热
+            stock(proxy.getConnectString(), PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
+            parallel(proxy.getConnectString(), 64);
+
+            stock(proxy.getConnectString(), PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            stock(proxy.getConnectString(), PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
+            for (int maxConcurrency : new int[]{1, 16, 64, 256}) {
+                parallel(proxy.getConnectString(), maxConcurrency);
+            }
+        }
+    }
+
+    private static void stock(String connectString, PathChildrenCache.StartMode mode) throws Exception {
+
+        CuratorFramework client = newClient(connectString);
+        PathChildrenCache cache = new PathChildrenCache(client, PATH, true);
+        try {
+            Listener listener = new Listener();
+            cache.getListenable().addListener(listener);
+            long begin = System.nanoTime();
+            cache.start(mode);
+            if (mode == PathChildrenCache.StartMode.POST_INITIALIZED_EVENT) {
+                listener.initialized.await();
+            }
+            long elapsedMs = (System.nanoTime() - begin) / 1000000;
+            int size = cache.getCurrentData().size();
+            boolean updated = update(client, listener);
+            log.info("PathChildrenCache {}: {} children in {} ms, CHILD_UPDATED received: {}", mode, size, elapsedMs, updated);
+        } finally {
+            CloseableUtils.closeQuietly(cache);
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    private static void parallel(String connectString, int maxConcurrency) throws Exception {
+
+        CuratorFramework client = newClient(connectString);
+        ParallelPathChildrenCache cache = new ParallelPathChildrenCache(client, PATH, true, maxConcurrency);
+        try {
+            Listener listener = new Listener();
+            cache.getListenable().addListener(listener);
+            long begin = System.nanoTime();
+            cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            long elapsedMs = (System.nanoTime() - begin) / 1000000;
+            int size = cache.getCurrentData().size();
+            boolean updated = update(client, listener);
+            log.info("ParallelPathChildrenCache BUILD_INITIAL_CACHE maxConcurrency {}: {} children in {} ms, max in flight: {}, CHILD_UPDATED received: {}",
+                    maxConcurrency, size, elapsedMs, cache.getMaxInFlight(), updated);
+        } finally {
+            CloseableUtils.closeQuietly(cache);
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    private static boolean update(CuratorFramework client, Listener listener) throws Exception {
+        client.setData().forPath(PATH + "/c0", String.valueOf(System.nanoTime()).getBytes());
+        return listener.updated.await(10, TimeUnit.SECONDS);
+    }
+
+    private static CuratorFramework newClient(String connectString) throws InterruptedException {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(connectString, new RetryNTimes(3, 1000));
+        client.start();
+        client.blockUntilConnected();
+        return client;
+    }
+
+    private static class Listener implements PathChildrenCacheListener {
+
+        private final CountDownLatch initialized = new CountDownLatch(1);
+        private final CountDownLatch updated = new CountDownLatch(1);
+
+        @Override
+        public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+            if (event.getType() == PathChildrenCacheEvent.Type.INITIALIZED) {
+                initialized.countDown();
+            } else if (event.getType() == PathChildrenCacheEvent.Type.CHILD_UPDATED) {
+                updated.countDown();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 配置文件的本地内容寻址缓存
+ * <p>
+ * 配置（RedisConfig）带有 hash（内容的 SHA-256）时，下载的文件以 hash 命名保存在 dir 下，之后同一内容的配置
+ * （即使 url 不同、或是同一主机上其他进程下载的）直接从本地读取，不再下载。同一主机上的客户端可以共用一个目录:
+ * 文件先写入临时文件再原子改名，读到的文件总是完整的；每个文件第一次读取（或修改时间、长度变化后）校验哈希，不一致时删除重新下载。
+ * <p>
+ * 同一 hash 同时只有一个下载（single-flight），其他线程等待并共用结果；不同 hash 的下载最多同时进行 maxConcurrentDownloads 个。
+ * 下载的内容与 hash 不一致时抛出 IOException，不写入缓存。写入缓存失败（磁盘满、没有权限、只读目录等）时只记录警告，仍返回下载的内容。
+ * 没有 hash 的配置无法按内容寻址，每次都下载。
+ * 缓存的文件不会自动删除。
+ */
+public class ArtifactCache {
+
+    private final static Logger log = LoggerFactory.getLogger(ArtifactCache.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
+    /**
+     * 下载方式（实现应当线程安全）
+     */
+    public interface Fetcher {
+
+        byte[] fetch(String url) throws Exception;
+    }
+
+    /**
+     * 通过 java.net.URL 下载（支持 ftp:// / http:// / file://）
+     */
+    public static final Fetcher URL_FETCHER = new Fetcher() {
+        @Override
+        public byte[] fetch(String url) throws IOException {
+            URLConnection connection = new URL(url).openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(30000);
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(connection.getContentLength(), 8192));
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            }
+        }
+    };
+
+    private final File dir;
+    private final Fetcher fetcher;
+    private final Semaphore downloads;
+    private final ConcurrentMap<String, FutureTask<byte[]>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * 已校验的文件: hash -> {修改时间, 长度}
+     */
+    private final ConcurrentMap<String, long[]> verified = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public ArtifactCache(File dir) {
+        this(dir, URL_FETCHER);
+    }
+
+    public ArtifactCache(File dir, Fetcher fetcher) {
+        this(dir, fetcher, DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    /**
+     * @param maxConcurrentDownloads 同时进行的下载数上限
+     */
+    public ArtifactCache(File dir, Fetcher fetcher, int maxConcurrentDownloads) {
+        if (maxConcurrentDownloads <= 0) {
+            throw new IllegalArgumentException("maxConcurrentDownloads must be positive: " + maxConcurrentDownloads);
+        }
+        this.dir = dir;
+        this.fetcher = fetcher;
+        this.downloads = new Semaphore(maxConcurrentDownloads);
+    }
+
+    /**
+     * 获取配置文件: 本地已有 hash 对应的文件时直接读取，否则下载（同一 hash 并发请求时只下载一次）
+     *
+     * @param hash 内容的 SHA-256（十六进制），为 null 时每次都下载
+     * @throws IOException 下载的内容与 hash 不一致
+     */
+    public byte[] get(final String url, String hash) throws Exception {
+        requests.incrementAndGet();
+        if (hash == null) {
+            return download(url, null);
+        }
+        final String key = hash.toLowerCase();
+        if (!key.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("not a SHA-256 hash: " + hash);
+        }
+
+        byte[] cached = read(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            savedBytes.addAndGet(cached.length);
+            return cached;
+        }
+
+        FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                // 等待期间可能已由同一主机上的其他进程下载
+                byte[] content = read(key);
+                if (content != null) {
+                    hits.incrementAndGet();
+                    savedBytes.addAndGet(content.length);
+                    return content;
+                }
+                content = download(url, key);
+                try {
+                    write(key, content);
+                } catch (IOException e) {
+                    // 内容已下载并校验，缓存失败不影响本次获取
+                    log.warn("cache artifact " + file(key) + " failure: " + e.getMessage());
+                }
+                return content;
+            }
+        });
+        FutureTask<byte[]> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            // 已有线程在下载同一内容
+            byte[] content = await(existing);
+            joined.incrementAndGet();
+            savedBytes.addAndGet(content.length);
+            return content;
+        }
+        try {
+            task.run();
+            return await(task);
+        } finally {
+            inFlight.remove(key, task);
+        }
+    }
+
+    /**
+     * 本地缓存的文件
+     */
+    public File file(String hash) {
+        return new File(dir, hash.toLowerCase());
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * 从本地缓存读取的次数
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * 等待同一内容的下载、共用结果的次数
+     */
+    public long getJoined() {
+        return joined.get();
+    }
+
+    public long getDownloaded() {
+        return downloaded.get();
+    }
+
+    public long getDownloadedBytes() {
+        return downloadedBytes.get();
+    }
+
+    /**
+     * 因本地缓存和共用下载而不需要下载的字节数
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private byte[] download(String url, String hash) throws Exception {
+        byte[] content;
+        downloads.acquire();
+        try {
+            content = fetcher.fetch(url);
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            downloads.release();
+        }
+        downloaded.incrementAndGet();
+        downloadedBytes.addAndGet(content.length);
+        if (hash != null) {
+            String actual = ChunkedConfigStore.sha256(content, 0, content.length);
+            if (!hash.equals(actual)) {
+                failures.incrementAndGet();
+                throw new IOException("content of " + url + " does not match hash " + hash + ", actual " + actual);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * 读取并校验本地缓存的文件
+     *
+     * @return 不存在或内容与 hash 不一致（删除）时为 null
+     */
+    private byte[] read(String hash) throws IOException {
+        File file = new File(dir, hash);
+        if (!file.isFile()) {
+            return null;
+        }
+        long lastModified = file.lastModified();
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            log.warn("read cached artifact " + file + " failure: " + e.getMessage());
+            return null;
+        }
+        long[] stamp = verified.get(hash);
+        if (stamp != null && stamp[0] == lastModified && stamp[1] == content.length) {
+            return content;
+        }
+        if (!hash.equals(ChunkedConfigStore.sha256(content, 0, content.length))) {
+            log.warn("cached artifact {} is corrupted, delete it", file);
+            verified.remove(hash);
+            Files.deleteIfExists(file.toPath());
+            return null;
+        }
+        verified.put(hash, new long[]{lastModified, content.length});
+        return content;
+    }
+
+    private void write(String hash, byte[] content) throws IOException {
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("can not create directory " + dir);
+        }
+        // 临时文件名唯一，同一主机上的多个进程可以同时写入同一内容
+        Path tmp = Files.createTempFile(dir.toPath(), hash, ".tmp");
+        try {
+            Files.write(tmp, content);
+            Files.move(tmp, new File(dir, hash).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static byte[] await(FutureTask<byte[]> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ArtifactCache{" +
+                "requests=" + requests +
+                ", hits=" + hits +
+                ", joined=" + joined +
+                ", downloaded=" + downloaded +
+                ", downloadedBytes=" + downloadedBytes +
+                ", savedBytes=" + savedBytes +
+                ", failures=" + failures +
+                '}';
+    }
+
+}
@@ -0,0 +1,243 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用本地 HTTP 文件服务（代替 ftp 服务器，所有响应共用 bandwidthMb MB/s 的带宽）对比每次下载配置文件与通过 ArtifactCache 下载时的下载量和耗时
+ * <p>
+ * 服务端有 artifacts 个内容不同的配置文件，每个内容发布在 3 个不同的 url 下（如不同版本号的目录）。
+ * 模拟 hosts 台主机，每台主机上 processes 个客户端进程（各自一个 ArtifactCache，共用该主机的缓存目录），
+ * 每个进程 threads 个线程并发处理 requests 次 add / update 事件，每次随机选择一个 url 及其 hash。
+ * 最后检查内容与 hash 不一致的文件会被拒绝。
+ * <p>
+ * 参数: [文件数] [每个文件 KB 数] [主机数] [每台主机进程数] [每个进程线程数] [每个线程事件数] [服务端带宽 MB/s]
+ */
+public class ArtifactCacheMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ArtifactCacheMain.class);
+
+    private static final int URLS_PER_ARTIFACT = 3;
+
+    public static void main(String[] args) throws Exception {
+
+        int artifacts = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int sizeKb = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        int hosts = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int processes = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        int requests = args.length > 5 ? Integer.parseInt(args[5]) : 20;
+        int bandwidthMb = args.length > 6 ? Integer.parseInt(args[6]) : 50;
+
+        try (FileServer server = new FileServer(bandwidthMb * 1024L * 1024L)) {
+            Random random = new Random(1);
+            List<String> urls = new ArrayList<>();
+            List<String> hashes = new ArrayList<>();
+            for (int i = 0; i < artifacts; i++) {
+                byte[] content = new byte[sizeKb * 1024];
+                random.nextBytes(content);
+                String hash = ChunkedConfigStore.sha256(content, 0, content.length);
+                for (int v = 1; v <= URLS_PER_ARTIFACT; v++) {
+                    String path = "/config/v" + v + "/redis-" + i + ".xml";
+                    server.put(path, content);
+                    urls.add(server.url(path));
+                    hashes.add(hash);
+                }
+            }
+            log.info("{} artifacts of {} KB at {} urls, {} hosts x {} processes x {} threads x {} events, server {} MB/s",
+                    artifacts, sizeKb, urls.size(), hosts, processes, threads, requests, bandwidthMb);
+
+            // 每次都下载（配置中没有 hash）
+            run("no cache", server, urls, hashes, hosts, processes, threads, requests, false);
+            // 按 hash 缓存
+            run("artifact cache", server, urls, hashes, hosts, processes, threads, requests, true);
+
+            // 内容与 hash 不一致
+            server.put("/config/tampered.xml", new byte[]{1, 2, 3});
+            File dir = Files.createTempDirectory("artifact-cache").toFile();
+            try {
+                new ArtifactCache(dir, ArtifactCache.URL_FETCHER).get(server.url("/config/tampered.xml"), hashes.get(0));
+                log.info("tampered artifact: accepted");
+            } catch (IOException e) {
+                log.info("tampered artifact: rejected ({}), cached: {}", e.getMessage(), new ArtifactCache(dir).file(hashes.get(0)).exists());
+            } finally {
+                delete(dir);
+            }
+        }
+    }
+
+    private static void run(String name, FileServer server, final List<String> urls, final List<String> hashes, int hosts,
+                            int processes, int threads, final int requests, final boolean useHash) throws Exception {
+
+        server.reset();
+        List<File> dirs = new ArrayList<>();
+        final List<ArtifactCache> caches = new ArrayList<>();
+        for (int h = 0; h < hosts; h++) {
+            File dir = Files.createTempDirectory("artifact-cache").toFile();
+            dirs.add(dir);
+            for (int p = 0; p < processes; p++) {
+                caches.add(new ArtifactCache(dir, ArtifactCache.URL_FETCHER));
+            }
+        }
+
+        final CountDownLatch done = new CountDownLatch(caches.size() * threads);
+        final AtomicLong failures = new AtomicLong();
+        long begin = System.nanoTime();
+        int seed = 0;
+        for (final ArtifactCache cache : caches) {
+            for (int t = 0; t < threads; t++) {
+                final Random random = new Random(++seed);
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < requests; i++) {
+                                int index = random.nextInt(urls.size());
+                                cache.get(urls.get(index), useHash ? hashes.get(index) : null);
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                            log.error("fetch failure: " + e.getMessage(), e);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+        }
+        done.await();
+        long elapsedMs = (System.nanoTime() - begin) / 1000000;
+
+        long total = 0;
+        long hits = 0;
+        long joined = 0;
+        long downloaded = 0;
+        long saved = 0;
+        for (ArtifactCache cache : caches) {
+            total += cache.getRequests();
+            hits += cache.getHits();
+            joined += cache.getJoined();
+            downloaded += cache.getDownloaded();
+            saved += cache.getSavedBytes();
+        }
+        log.info("{}: {} requests in {} ms, {} downloads, {} local hits, {} joined in-flight downloads, server sent {} MB in {} requests, "
+                        + "{} MB saved, failures {}", name, total, elapsedMs, downloaded, hits, joined,
+                server.servedBytes.get() / 1024 / 1024, server.requests.get(), saved / 1024 / 1024, failures.get());
+
+        for (File dir : dirs) {
+            delete(dir);
+        }
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("can not delete {}", file);
+                }
+            }
+        }
+        if (!dir.delete()) {
+            log.warn("can not delete {}", dir);
+        }
+    }
+
+    /**
+     * 内存中的 HTTP 文件服务，按带宽延迟响应（所有响应依次占用同一条链路），统计发送的字节数
+     */
+    private static class FileServer implements Closeable {
+
+        private final long bytesPerSecond;
+        private long linkFreeNanos;
+
+        private final HttpServer server;
+        private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+        private final AtomicLong servedBytes = new AtomicLong();
+        private final AtomicLong requests = new AtomicLong();
+
+        FileServer(long bytesPerSecond) throws IOException {
+            this.bytesPerSecond = bytesPerSecond;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    try {
+                        byte[] content = files.get(exchange.getRequestURI().getPath());
+                        if (content == null) {
+                            exchange.sendResponseHeaders(404, -1);
+                            return;
+                        }
+                        requests.incrementAndGet();
+                        transfer(content.length);
+                        exchange.sendResponseHeaders(200, content.length);
+                        try (OutputStream out = exchange.getResponseBody()) {
+                            out.write(content);
+                        }
+                        servedBytes.addAndGet(content.length);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        exchange.close();
+                    }
+                }
+            });
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+        }
+
+        /**
+         * 在链路上排队，等待 length 字节发送完成的时间
+         */
+        private void transfer(int length) throws InterruptedException {
+            long end;
+            synchronized (this) {
+                linkFreeNanos = Math.max(linkFreeNanos, System.nanoTime()) + length * 1000000000L / bytesPerSecond;
+                end = linkFreeNanos;
+            }
+            long remaining = end - System.nanoTime();
+            if (remaining > 0) {
+                Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            }
+        }
+
+        void put(String path, byte[] content) {
+            files.put(path, Arrays.copyOf(content, content.length));
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        }
+
+        void reset() {
+            servedBytes.set(0);
+            requests.set(0);
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            ((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,427 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.alibaba.fastjson.JSON;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 大配置的分块存储
+ * <p>
+ * 接近或超过 ZooKeeper 单节点 1MB 限制的配置不再放到 FTP 上，而是按 chunkSize 切分，每块以内容的 SHA-256 命名存放在
+ * basePath/chunks 下（内容寻址，写入后不再修改），basePath/manifests/{name} 保存清单（总长度、整体 SHA-256、各块的哈希，JSON）。
+ * 配置中的 url 写为 zk://basePath/manifests/{name}，客户端读取清单后并行获取本地没有的块，未变化的块在版本之间复用。
+ * <p>
+ * 发布时已存在的块不再写入，只修改部分内容的新版本只写入变化的块。块和清单都会校验哈希。
+ * 旧版本的块不会自动删除，可以在确认没有客户端读取旧版本、也没有正在进行的发布后调用 gc()（发布时已存在而跳过的块可能正好被删除）。
+ * <p>
+ * 本地块缓存只保留每个清单最近一次读取所引用的块。
+ */
+public class ChunkedConfigStore {
+
+    private final static Logger log = LoggerFactory.getLogger(ChunkedConfigStore.class);
+
+    public static final String URL_SCHEME = "zk:";
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    public static final int DEFAULT_MAX_CONCURRENCY = 8;
+
+    /**
+     * 清单（以 JSON 保存在 manifests/{name} 节点中）
+     */
+    public static class Manifest {
+
+        private long size;
+        private int chunkSize;
+        private String sha256;
+        private List<String> chunks = new ArrayList<>();
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        public List<String> getChunks() {
+            return chunks;
+        }
+
+        public void setChunks(List<String> chunks) {
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * 一次发布或读取的统计
+     */
+    public static class Result {
+
+        private final String url;
+        private final byte[] content;
+        private final int chunks;
+        private final int transferredChunks;
+        private final long transferredBytes;
+
+        Result(String url, byte[] content, int chunks, int transferredChunks, long transferredBytes) {
+            this.url = url;
+            this.content = content;
+            this.chunks = chunks;
+            this.transferredChunks = transferredChunks;
+            this.transferredBytes = transferredBytes;
+        }
+
+        /**
+         * 配置的 url（zk://...）
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * 配置内容（发布时为 null）
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        /**
+         * 实际写入（发布）或获取（读取）的块数，其余块已存在或在本地复用
+         */
+        public int getTransferredChunks() {
+            return transferredChunks;
+        }
+
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "url='" + url + '\'' +
+                    ", chunks=" + chunks +
+                    ", transferredChunks=" + transferredChunks +
+                    ", transferredBytes=" + transferredBytes +
+                    '}';
+        }
+    }
+
+    private final CuratorFramework client;
+    private final String basePath;
+    private final String chunksPath;
+    private final String manifestsPath;
+    private final int chunkSize;
+    private final int maxConcurrency;
+
+    // 以下字段由 this 保护
+    /**
+     * 本地块缓存: 哈希 -> 内容
+     */
+    private final Map<String, byte[]> localChunks = new HashMap<>();
+    /**
+     * 清单路径 -> 最近一次读取所引用的块
+     */
+    private final Map<String, List<String>> references = new HashMap<>();
+
+    public ChunkedConfigStore(CuratorFramework client, String basePath) {
+        this(client, basePath, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * @param client         已启动的客户端
+     * @param basePath       存放块和清单的路径（不要放在被 PathChildrenCache 监听的目录下，否则块会被当作配置加载）
+     * @param chunkSize      每块的字节数（小于 jute.maxbuffer）
+     * @param maxConcurrency 同时进行的块读写数上限
+     */
+    public ChunkedConfigStore(CuratorFramework client, String basePath, int chunkSize, int maxConcurrency) {
+        if (chunkSize <= 0 || maxConcurrency <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize + ", maxConcurrency: " + maxConcurrency);
+        }
+        this.client = client;
+        this.basePath = basePath;
+        this.chunksPath = ZKPaths.makePath(basePath, "chunks");
+        this.manifestsPath = ZKPaths.makePath(basePath, "manifests");
+        this.chunkSize = chunkSize;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * name 对应的 url
+     */
+    public String url(String name) {
+        return URL_SCHEME + "//" + ZKPaths.makePath(manifestsPath, name);
+    }
+
+    public static boolean isChunkedUrl(String url) {
+        return url != null && url.startsWith(URL_SCHEME + "//");
+    }
+
+    /**
+     * 发布配置: 写入不存在的块，再写入清单
+     *
+     * @return url 和写入的块数、字节数
+     */
+    public Result publish(String name, byte[] content) throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.setSize(content.length);
+        manifest.setChunkSize(chunkSize);
+        manifest.setSha256(sha256(content, 0, content.length));
+        final Map<String, byte[]> chunks = new LinkedHashMap<>();
+        int count = Math.max(1, (content.length + chunkSize - 1) / chunkSize);
+        for (int i = 0; i < count; i++) {
+            int offset = i * chunkSize;
+            int length = Math.min(chunkSize, content.length - offset);
+            String hash = sha256(content, offset, length);
+            manifest.getChunks().add(hash);
+            if (!chunks.containsKey(hash)) {
+                chunks.put(hash, Arrays.copyOfRange(content, offset, offset + length));
+            }
+        }
+
+        client.createContainers(chunksPath);
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final CountDownLatch done = new CountDownLatch(chunks.size());
+        final AtomicReference<String> error = new AtomicReference<>();
+        final int[] written = new int[1];
+        final long[] writtenBytes = new long[1];
+        for (Map.Entry<String, byte[]> chunk : chunks.entrySet()) {
+            final byte[] data = chunk.getValue();
+            final String path = ZKPaths.makePath(chunksPath, chunk.getKey());
+            // 先 exists，已存在的块不再传输内容
+            permits.acquire();
+            try {
+                client.checkExists().inBackground(new BackgroundCallback() {
+                    @Override
+                    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                        if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                            permits.release();
+                            done.countDown();
+                            return;
+                        }
+                        try {
+                            client.create().inBackground(new BackgroundCallback() {
+                                @Override
+                                public void processResult(CuratorFramework client, CuratorEvent event) {
+                                    int rc = event.getResultCode();
+                                    if (rc == KeeperException.Code.OK.intValue()) {
+                                        synchronized (written) {
+                                            written[0]++;
+                                            writtenBytes[0] += data.length;
+                                        }
+                                    } else if (rc != KeeperException.Code.NODEEXISTS.intValue()) {
+                                        error.compareAndSet(null, "create " + path + " failure: " + KeeperException.Code.get(rc));
+                                    }
+                                    permits.release();
+                                    done.countDown();
+                                }
+                            }).forPath(path, data);
+                        } catch (Exception e) {
+                            error.compareAndSet(null, "create " + path + " failure: " + e.getMessage());
+                            permits.release();
+                            done.countDown();
+                        }
+                    }
+                }).forPath(path);
+            } catch (Exception e) {
+                // forPath 同步失败（如客户端已关闭、路径不合法）时不会调用回调
+                error.compareAndSet(null, "checkExists " + path + " failure: " + e.getMessage());
+                permits.release();
+                done.countDown();
+            }
+        }
+        done.await();
+        if (error.get() != null) {
+            throw new IOException(error.get());
+        }
+
+        String manifestPath = ZKPaths.makePath(manifestsPath, name);
+        byte[] manifestData = JSON.toJSONString(manifest).getBytes("UTF-8");
+        if (client.checkExists().forPath(manifestPath) == null) {
+            client.create().creatingParentContainersIfNeeded().forPath(manifestPath, manifestData);
+        } else {
+            client.setData().forPath(manifestPath, manifestData);
+        }
+        log.info("publish {}: {} bytes in {} chunks, {} new chunks ({} bytes) written", manifestPath, content.length,
+                manifest.getChunks().size(), written[0], writtenBytes[0]);
+        return new Result(url(name), null, manifest.getChunks().size(), written[0], writtenBytes[0] + manifestData.length);
+    }
+
+    /**
+     * 读取配置: 读取清单，并行获取本地没有的块，校验后拼接
+     *
+     * @param url zk://{清单路径}
+     */
+    public Result fetch(String url) throws Exception {
+        if (!isChunkedUrl(url)) {
+            throw new IllegalArgumentException("not a chunked config url: " + url);
+        }
+        String manifestPath = url.substring(URL_SCHEME.length() + 2);
+        byte[] manifestData = client.getData().forPath(manifestPath);
+        Manifest manifest = JSON.parseObject(new String(manifestData, "UTF-8"), Manifest.class);
+
+        final Map<String, byte[]> chunks = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        synchronized (this) {
+            for (String hash : manifest.getChunks()) {
+                byte[] local = localChunks.get(hash);
+                if (local != null) {
+                    chunks.put(hash, local);
+                } else {
+                    missing.add(hash);
+                }
+            }
+        }
+
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final CountDownLatch done = new CountDownLatch(missing.size());
+        final AtomicReference<String> error = new AtomicReference<>();
+        for (final String hash : missing) {
+            final String path = ZKPaths.makePath(chunksPath, hash);
+            permits.acquire();
+            try {
+                client.getData().inBackground(new BackgroundCallback() {
+                    @Override
+                    public void processResult(CuratorFramework client, CuratorEvent event) {
+                        try {
+                            if (event.getResultCode() != KeeperException.Code.OK.intValue()) {
+                                error.compareAndSet(null, "getData " + path + " failure: " + KeeperException.Code.get(event.getResultCode()));
+                            } else if (!hash.equals(sha256(event.getData(), 0, event.getData().length))) {
+                                error.compareAndSet(null, "chunk " + path + " hash mismatch");
+                            } else {
+                                synchronized (chunks) {
+                                    chunks.put(hash, event.getData());
+                                }
+                            }
+                        } finally {
+                            permits.release();
+                            done.countDown();
+                        }
+                    }
+                }).forPath(path);
+            } catch (Exception e) {
+                // forPath 同步失败时不会调用回调
+                error.compareAndSet(null, "getData " + path + " failure: " + e.getMessage());
+                permits.release();
+                done.countDown();
+            }
+        }
+        done.await();
+        if (error.get() != null) {
+            throw new IOException(error.get());
+        }
+
+        if (manifest.getSize() > Integer.MAX_VALUE) {
+            throw new IOException("config too large: " + manifest.getSize());
+        }
+        byte[] content = new byte[(int) manifest.getSize()];
+        int offset = 0;
+        long fetchedBytes = manifestData.length;
+        for (String hash : manifest.getChunks()) {
+            byte[] chunk = chunks.get(hash);
+            if (offset + chunk.length > content.length) {
+                throw new IOException("chunks exceed manifest size: " + manifestPath);
+            }
+            System.arraycopy(chunk, 0, content, offset, chunk.length);
+            offset += chunk.length;
+        }
+        for (String hash : missing) {
+            fetchedBytes += chunks.get(hash).length;
+        }
+        if (offset != content.length || !sha256(content, 0, content.length).equals(manifest.getSha256())) {
+            throw new IOException("config hash mismatch: " + manifestPath);
+        }
+
+        synchronized (this) {
+            references.put(manifestPath, manifest.getChunks());
+            localChunks.putAll(chunks);
+            // 只保留仍被引用的块
+            Set<String> referenced = new HashSet<>();
+            for (List<String> hashes : references.values()) {
+                referenced.addAll(hashes);
+            }
+            localChunks.keySet().retainAll(referenced);
+        }
+        log.info("fetch {}: {} bytes in {} chunks, {} chunks fetched, {} reused", manifestPath, content.length,
+                manifest.getChunks().size(), missing.size(), manifest.getChunks().size() - missing.size());
+        return new Result(url, content, manifest.getChunks().size(), missing.size(), fetchedBytes);
+    }
+
+    /**
+     * 删除没有被任何清单引用的块（确认没有客户端还在读取旧版本后调用）
+     *
+     * @return 删除的块数
+     */
+    public int gc() throws Exception {
+        Set<String> referenced = new HashSet<>();
+        if (client.checkExists().forPath(manifestsPath) != null) {
+            for (String name : client.getChildren().forPath(manifestsPath)) {
+                byte[] data = client.getData().forPath(ZKPaths.makePath(manifestsPath, name));
+                referenced.addAll(JSON.parseObject(new String(data, "UTF-8"), Manifest.class).getChunks());
+            }
+        }
+        int deleted = 0;
+        if (client.checkExists().forPath(chunksPath) != null) {
+            for (String hash : client.getChildren().forPath(chunksPath)) {
+                if (!referenced.contains(hash)) {
+                    try {
+                        client.delete().forPath(ZKPaths.makePath(chunksPath, hash));
+                        deleted++;
+                    } catch (KeeperException.NoNodeException e) {
+                        // 已被其他实例删除
+                    }
+                }
+            }
+        }
+        log.info("gc {}: {} unreferenced chunks deleted", basePath, deleted);
+        return deleted;
+    }
+
+    static String sha256(byte[] data, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, offset, length);
+            byte[] hash = digest.digest();
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.zozospider.zookeepercurator.utils.LatencyProxy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 在本地 TestingServer 上发布和读取超过单节点 1MB 限制的配置
+ * <p>
+ * 发布 sizeKb KB 的配置（v1），读取的客户端通过 LatencyProxy 连接以模拟网络延迟，分别以并发 1 和 maxConcurrency 冷启动读取；
+ * 之后修改中间 1 KB 发布 v2，统计发布时写入的块、已有客户端再次读取时获取的块和字节数，最后 gc() 删除不再引用的块。
+ * <p>
+ * 参数: [配置 KB 数] [每块 KB 数] [并发数] [单向延迟毫秒数]
+ */
+public class ChunkedConfigStoreMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ChunkedConfigStoreMain.class);
+
+    private static final String NAME = "redis.xml";
+
+    public static void main(String[] args) throws Exception {
+
+        int sizeKb = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int chunkKb = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int maxConcurrency = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int delayMs = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        byte[] v1 = new byte[sizeKb * 1024];
+        Random random = new Random(1);
+        for (int i = 0; i < v1.length; i++) {
+            v1[i] = (byte) ('a' + random.nextInt(26));
+        }
+        byte[] v2 = Arrays.copyOf(v1, v1.length);
+        Arrays.fill(v2, v2.length / 2, v2.length / 2 + 1024, (byte) '#');
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer();
+             LatencyProxy proxy = new LatencyProxy(server.getPort(), delayMs)) {
+
+            CuratorFramework publisher = newClient(server.getConnectString());
+            CuratorFramework sequentialClient = newClient(proxy.getConnectString());
+            CuratorFramework parallelClient = newClient(proxy.getConnectString());
+            try {
+                ChunkedConfigStore store = new ChunkedConfigStore(publisher, Client1.CHUNK_PATH, chunkKb * 1024, maxConcurrency);
+                ChunkedConfigStore.Result published = store.publish(NAME, v1);
+                log.info("v1 published: {} KB in {} chunks, {} chunks written, {} KB", sizeKb, published.getChunks(),
+                        published.getTransferredChunks(), published.getTransferredBytes() / 1024);
+
+                ChunkedConfigStore sequential = new ChunkedConfigStore(sequentialClient, Client1.CHUNK_PATH, chunkKb * 1024, 1);
+                fetch("v1 cold fetch, concurrency 1", sequential, published.getUrl(), v1);
+                ChunkedConfigStore parallel = new ChunkedConfigStore(parallelClient, Client1.CHUNK_PATH, chunkKb * 1024, maxConcurrency);
+                fetch("v1 cold fetch, concurrency " + maxConcurrency, parallel, published.getUrl(), v1);
+
+                published = store.publish(NAME, v2);
+                log.info("v2 published (1 KB changed): {} chunks, {} chunks written, {} KB", published.getChunks(),
+                        published.getTransferredChunks(), published.getTransferredBytes() / 1024);
+                fetch("v2 fetch by a client holding v1", parallel, published.getUrl(), v2);
+
+                log.info("gc: {} chunks deleted", store.gc());
+            } finally {
+                CloseableUtils.closeQuietly(parallelClient);
+                CloseableUtils.closeQuietly(sequentialClient);
+                CloseableUtils.closeQuietly(publisher);
+            }
+        }
+    }
+
+    private static void fetch(String name, ChunkedConfigStore store, String url, byte[] expected) throws Exception {
+        long begin = System.nanoTime();
+        ChunkedConfigStore.Result result = store.fetch(url);
+        long elapsedMs = (System.nanoTime() - begin) / 1000000;
+        log.info("{}: {} ms, {} of {} chunks fetched, {} KB transferred, content matches: {}", name, elapsedMs,
+                result.getTransferredChunks(), result.getChunks(), result.getTransferredBytes() / 1024,
+                Arrays.equals(expected, result.getContent()));
+    }
+
+    private static CuratorFramework newClient(String connectString) throws InterruptedException {
+        CuratorFramework client = CuratorFrameworkFactory.builder()
+                .connectString(connectString)
+                .retryPolicy(new RetryNTimes(3, 1000))
+                .namespace("namespace")
+                .build();
+        client.start();
+        client.blockUntilConnected();
+        return client;
+    }
+
+}
@@ -1,17 +1,34 @@
 package com.zozospider.zookeepercurator.configcenter;
 
-import com.alibaba.fastjson.JSON;
+import com.zozospider.zookeepercurator.cache.CacheSnapshot;
+import com.zozospider.zookeepercurator.cache.ParallelPathChildrenCache;
+import com.zozospider.zookeepercurator.configcenter.codec.AutoConfigCodec;
+import com.zozospider.zookeepercurator.configcenter.codec.ConfigCodec;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 模拟配置中心客户端逻辑，监听 ZooKeeper 配置对象变更数据
@@ -25,97 +42,346 @@ public class Client1 {
 
     public static final String CONFIG_PATH = "/config-center";
     public static final String REDIS_PATH = "/redis-config";
+    /**
+     * 分块存储的大配置（url 为 zk:// 时从这里获取，见 ChunkedConfigStore）
+     */
+    public static final String CHUNK_PATH = "/config-center-chunks";
     public static CountDownLatch countDown = new CountDownLatch(1);
 
+    /**
+     * 模拟下载、应用配置时每一步的耗时
+     */
+    private static final long STEP_MS = 500;
+
     private CuratorFramework client;
+    private final long stepMs;
+    private final ConfigApplier applier;
+    private final ConfigRepository repository;
+    private final ChunkedConfigStore chunkStore;
+    private volatile ArtifactCache artifactCache;
+    private ParallelPathChildrenCache cache;
+    private File mirrorFile;
+    /**
+     * 在后台写镜像文件（单线程，不与其他写入并发），等待中的写入只有一个，连续的变化合并为一次
+     */
+    private final ExecutorService mirrorWriter;
+    private final AtomicBoolean mirrorPending = new AtomicBoolean();
+    /**
+     * 与 ZooKeeper 的初次同步完成
+     */
+    private final CountDownLatch reconciled = new CountDownLatch(1);
+    private volatile boolean initialized;
 
     public Client1() {
+        this(CONNECT_STRING);
+    }
+
+    public Client1(String connectString) {
+        this(connectString, STEP_MS);
+    }
+
+    /**
+     * @param stepMs 模拟下载、应用配置时每一步的耗时
+     */
+    public Client1(String connectString, long stepMs) {
+        this(connectString, stepMs, new AutoConfigCodec());
+    }
+
+    /**
+     * @param codec 配置节点数据的解码方式
+     */
+    public Client1(String connectString, long stepMs, ConfigCodec codec) {
         RetryPolicy retryPolicy = new RetryNTimes(3, 5000);
         client = CuratorFrameworkFactory.builder()
-                .connectString(CONNECT_STRING)
+                .connectString(connectString)
                 .sessionTimeoutMs(CONNECTION_TIMEOUT)
                 .retryPolicy(retryPolicy)
                 .namespace("namespace")
                 .build();
         client.start();
+        this.stepMs = stepMs;
+        this.repository = new ConfigRepository(codec);
+        this.chunkStore = new ChunkedConfigStore(client, CHUNK_PATH);
+        // 下载和应用在工作线程上执行，同一配置 id 只保留最新的配置
+        this.applier = new ConfigApplier(new ConfigApplier.Handler() {
+            @Override
+            public void apply(RedisConfig config, ConfigApplier.Task task) throws Exception {
+                Client1.this.apply(config, task);
+            }
+        });
+        this.mirrorWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Client1-mirror");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     public void start() throws Exception {
-        log.info("启动 Client1");
+        listen();
 
-        // 启动监听
-        final PathChildrenCache cache = new PathChildrenCache(client, CONFIG_PATH, true);
+        // 进程挂起
+        countDown.await();
+    }
 
-        cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+    /**
+     * 设置本地配置镜像文件（在 listen() 之前调用）
+     * <p>
+     * 设置后 listen() 先从镜像文件（映射读取）加载上次的配置立即返回，不等待 ZooKeeper；之后在后台与 ZooKeeper 同步:
+     * mzxid 未变化的配置只 exists 确认，变化的才重新读取，同步完成及之后每次变化时在后台更新镜像文件（连续的变化合并为一次写入）。
+     * 服务端不可用时也能启动，连接成功后再同步。
+     */
+    public Client1 setMirrorFile(File mirrorFile) {
+        this.mirrorFile = mirrorFile;
+        return this;
+    }
+
+    /**
+     * 启动监听（没有镜像文件时初次加载完成后返回，有镜像文件时加载镜像后立即返回）
+     */
+    public void listen() throws Exception {
+        log.info("启动 Client1");
+
+        // 启动监听（初次加载时并行获取所有子节点数据）
+        cache = new ParallelPathChildrenCache(client, CONFIG_PATH, true);
+        if (mirrorFile != null) {
+            cache.setSnapshotFile(mirrorFile);
+        }
 
         cache.getListenable().addListener(new PathChildrenCacheListener() {
 
             @Override
             public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
 
-                // 监听节点变化
-                if (PathChildrenCacheEvent.Type.CHILD_UPDATED.equals(event.getType())) {
+                if (PathChildrenCacheEvent.Type.INITIALIZED.equals(event.getType())) {
+                    // 以镜像启动时与 ZooKeeper 的初次同步完成，以缓存为准
+                    repository.reset(cache.getCurrentData());
+                    initialized = true;
+                    saveMirror();
+                    reconciled.countDown();
+                    log.info("Client1 完成与 ZooKeeper 的同步，共 {} 个配置", repository.current().size());
+                    return;
+                }
+
+                // 更新配置快照
+                ConfigSnapshot.Entry previous = event.getData() == null ? null
+                        : repository.current().get(ZKPaths.getNodeFromPath(event.getData().getPath()));
+                ConfigSnapshot.Entry entry = null;
+                if (PathChildrenCacheEvent.Type.CHILD_ADDED.equals(event.getType())
+                        || PathChildrenCacheEvent.Type.CHILD_UPDATED.equals(event.getType())) {
+                    entry = repository.put(event.getData());
+                } else if (PathChildrenCacheEvent.Type.CHILD_REMOVED.equals(event.getType())) {
+                    repository.remove(event.getData().getPath());
+                }
+
+                if (entry != null || PathChildrenCacheEvent.Type.CHILD_REMOVED.equals(event.getType())) {
+                    if (initialized && mirrorFile != null) {
+                        saveMirror();
+                    }
+                }
+
+                // reset() 在事件线程之外用缓存的当前数据替换快照，可能已包含这次修改（put 返回 null），
+                // 此时事件之前快照中的 mzxid 与事件相同，仍是一次修改；比快照中旧的数据才忽略
+                if (entry == null && PathChildrenCacheEvent.Type.CHILD_UPDATED.equals(event.getType())
+                        && previous != null && previous.getMzxid() == event.getData().getStat().getMzxid()) {
+                    entry = previous;
+                }
+
+                // 监听节点变化（以镜像启动时，离线期间被修改的配置在同步时以 CHILD_ADDED 到达，同样视为变化）
+                boolean changedWhileOffline = PathChildrenCacheEvent.Type.CHILD_ADDED.equals(event.getType())
+                        && previous != null && entry != null;
+                if (PathChildrenCacheEvent.Type.CHILD_UPDATED.equals(event.getType()) || changedWhileOffline) {
                     // 获取节点路径
                     String configNodePath = event.getData().getPath();
                     // 判断是否为 redis config 路径
                     if ((CONFIG_PATH + REDIS_PATH).equals(configNodePath)) {
                         log.info("Client1 监听到 redis config 路径数据变化");
                         log.info("路径: {}", configNodePath);
+                        log.info("数据: {}", new String(event.getData().getData()));
 
-                        // 读取节点 json 字符串
-                        String jsonConfig = new String(event.getData().getData());
-                        log.info("数据: {}", jsonConfig);
-
-                        // 从 json 字符串转为对象
-                        RedisConfig redisConfig = JSON.parseObject(jsonConfig, RedisConfig.class);
+                        // 快照中已解码的对象（数据不比快照中的新时为 null）
+                        RedisConfig redisConfig = entry == null ? null : entry.getRedisConfig();
 
                         if (redisConfig != null) {
-
-                            if ("add".equals(redisConfig.getType())) {
-
-                                // 客户端执行添加操作
-                                log.info("监听到新增配置，准备下载...");
-                                // 连接 ftp 服务器，根据 url 找到相应的配置
-                                Thread.sleep(500);
-                                log.info("开始下载新的配置文件，id: {}, url: {}", redisConfig.getId(), redisConfig.getUrl());
-                                // 执行下载逻辑
-                                Thread.sleep(500);
-                                log.info("完成下载");
-                                // 客户端执行添加逻辑
-                                Thread.sleep(500);
-                                log.info("Client1 完成新增");
-
-                            } else if ("update".equals(redisConfig.getType())) {
-
-                                // 客户端执行更新操作
-                                log.info("监听到更新配置，准备下载...");
-                                // 连接 ftp 服务器，根据 url 找到相应的配置
-                                Thread.sleep(500);
-                                log.info("开始下载新的配置文件，id: {}, url: {}", redisConfig.getId(), redisConfig.getUrl());
-                                // 执行下载逻辑
-                                Thread.sleep(500);
-                                log.info("完成下载");
-                                // 客户端执行更新逻辑
-                                Thread.sleep(500);
-                                log.info("Client1 完成更新");
-
-                            } else if ("delete".equals(redisConfig.getType())) {
-
-                                // 客户端执行删除操作
-                                log.info("监听到删除配置");
-                                log.info("删除配置文件，id: {}", redisConfig.getId());
-                                // 客户端执行删除逻辑
-                                Thread.sleep(500);
-                                log.info("Client1 完成删除");
-                            }
+                            // 交给工作线程处理，不阻塞其他配置事件
+                            applier.submit(redisConfig);
                         }
                     }
                 }
             }
         });
 
-        // 进程挂起
-        countDown.await();
+        if (mirrorFile != null) {
+            // 先以镜像中的配置提供服务，同步在后台进行，完成时发出 INITIALIZED
+            List<ChildData> mirrored = new ArrayList<>();
+            for (CacheSnapshot.Entry entry : CacheSnapshot.read(mirrorFile).values()) {
+                Stat stat = new Stat();
+                stat.setMzxid(entry.getMzxid());
+                mirrored.add(new ChildData(entry.getPath(), stat, entry.getData()));
+            }
+            repository.reset(mirrored);
+            log.info("Client1 从镜像 {} 加载 {} 个配置", mirrorFile, mirrored.size());
+            cache.start(PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
+            return;
+        }
+
+        cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+
+        // 初次加载不发出事件，用缓存的全部数据生成快照（之后乱序到达的旧数据按 mzxid 忽略；
+        // 其中可能已有事件尚在排队的修改，监听器按 mzxid 相同识别）
+        repository.reset(cache.getCurrentData());
+        initialized = true;
+        reconciled.countDown();
+    }
+
+    /**
+     * 等待与 ZooKeeper 的初次同步完成
+     */
+    public boolean awaitReconciled(long timeout, TimeUnit unit) throws InterruptedException {
+        return reconciled.await(timeout, unit);
+    }
+
+    /**
+     * 当前配置快照（不加锁、不分配对象，可在业务热点路径上调用）
+     */
+    public ConfigSnapshot getConfig() {
+        return repository.current();
+    }
+
+    public ConfigApplier getApplier() {
+        return applier;
+    }
+
+    public void close() {
+        applier.close();
+        mirrorWriter.shutdown();
+        try {
+            // 等待正在进行的写入，之后由 cache.close() 保存最终的镜像（两者写同一个临时文件，不能并发）
+            mirrorWriter.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        CloseableUtils.closeQuietly(cache);
+        CloseableUtils.closeQuietly(client);
+    }
+
+    /**
+     * 在后台保存镜像文件：已有等待执行的写入时不再提交，写入时读取缓存的最新数据
+     */
+    private void saveMirror() {
+        if (!mirrorPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            mirrorWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mirrorPending.set(false);
+                    try {
+                        cache.saveSnapshot();
+                    } catch (IOException e) {
+                        log.warn("save mirror " + mirrorFile + " failure: " + e.getMessage(), e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已关闭，由 cache.close() 保存
+        }
+    }
+
+    /**
+     * 设置配置文件的本地缓存（设置后非 zk:// 的 url 通过 ArtifactCache 下载，带 hash 的配置按内容复用本地文件）
+     */
+    public Client1 setArtifactCache(ArtifactCache artifactCache) {
+        this.artifactCache = artifactCache;
+        return this;
+    }
+
+    /**
+     * 下载配置文件: url 为 zk:// 时从 ZooKeeper 分块获取（只获取本地没有的块），
+     * 设置了 ArtifactCache 时通过它下载（本地已有相同内容时不下载），否则模拟从 ftp 下载
+     */
+    private byte[] download(RedisConfig redisConfig) throws Exception {
+        if (ChunkedConfigStore.isChunkedUrl(redisConfig.getUrl())) {
+            ChunkedConfigStore.Result result = chunkStore.fetch(redisConfig.getUrl());
+            log.info("获取分块配置，id: {}, {} 字节, 共 {} 块, 获取 {} 块", redisConfig.getId(), result.getContent().length,
+                    result.getChunks(), result.getTransferredChunks());
+            return result.getContent();
+        }
+        ArtifactCache cache = artifactCache;
+        if (cache != null) {
+            byte[] content = cache.get(redisConfig.getUrl(), redisConfig.getHash());
+            log.info("获取配置文件，id: {}, {} 字节, hash: {}", redisConfig.getId(), content.length, redisConfig.getHash());
+            return content;
+        }
+        Thread.sleep(stepMs);
+        return null;
+    }
+
+    public ChunkedConfigStore getChunkStore() {
+        return chunkStore;
+    }
+
+    /**
+     * 下载并应用配置（在 ConfigApplier 的工作线程上执行），每一步之前检查是否已有同一 id 的更新的配置
+     */
+    private void apply(RedisConfig redisConfig, ConfigApplier.Task task) throws Exception {
+
+        if ("add".equals(redisConfig.getType())) {
+
+            // 客户端执行添加操作
+            log.info("监听到新增配置，准备下载...");
+            // 连接 ftp 服务器，根据 url 找到相应的配置
+            Thread.sleep(stepMs);
+            if (task.isSuperseded()) {
+                log.info("配置已被更新，放弃本次新增，id: {}", redisConfig.getId());
+                return;
+            }
+            log.info("开始下载新的配置文件，id: {}, url: {}", redisConfig.getId(), redisConfig.getUrl());
+            // 执行下载逻辑
+            download(redisConfig);
+            log.info("完成下载");
+            if (task.isSuperseded()) {
+                log.info("配置已被更新，放弃本次新增，id: {}", redisConfig.getId());
+                return;
+            }
+            // 客户端执行添加逻辑
+            Thread.sleep(stepMs);
+            log.info("Client1 完成新增");
+
+        } else if ("update".equals(redisConfig.getType())) {
+
+            // 客户端执行更新操作
+            log.info("监听到更新配置，准备下载...");
+            // 连接 ftp 服务器，根据 url 找到相应的配置
+            Thread.sleep(stepMs);
+            if (task.isSuperseded()) {
+                log.info("配置已被更新，放弃本次更新，id: {}", redisConfig.getId());
+                return;
+            }
+            log.info("开始下载新的配置文件，id: {}, url: {}", redisConfig.getId(), redisConfig.getUrl());
+            // 执行下载逻辑
+            download(redisConfig);
+            log.info("完成下载");
+            if (task.isSuperseded()) {
+                log.info("配置已被更新，放弃本次更新，id: {}", redisConfig.getId());
+                return;
+            }
+            // 客户端执行更新逻辑
+            Thread.sleep(stepMs);
+            log.info("Client1 完成更新");
+
+        } else if ("delete".equals(redisConfig.getType())) {
+
+            // 客户端执行删除操作
+            log.info("监听到删除配置");
+            log.info("删除配置文件，id: {}", redisConfig.getId());
+            // 客户端执行删除逻辑
+            Thread.sleep(stepMs);
+            log.info("Client1 完成删除");
+        }
     }
 
 }
@@ -0,0 +1,285 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.zozospider.zookeeperjavaclient.zk.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 配置应用流水线
+ * <p>
+ * 监听器（Curator 的事件线程）只调用 submit() 提交解析后的配置，下载和应用由固定数量的工作线程执行，不阻塞其他配置事件。
+ * 同一个配置 id 同时最多只有一个任务在执行、一个任务在等待：等待中的任务被更新的配置替换（latest-wins）；
+ * 执行中的任务通过 Task.isSuperseded() 得知已有更新的配置，在下一步之前放弃，随后执行最新的配置。
+ * 同一个 id 的配置按提交顺序执行，不同 id 之间并行。排队的任务数不超过配置 id 的个数。
+ * <p>
+ * 统计提交、完成、被替换（未执行）、执行中放弃和失败的次数，以及从提交到应用完成的延迟（微秒）。
+ */
+public class ConfigApplier implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(ConfigApplier.class);
+
+    public static final int DEFAULT_WORKERS = 4;
+
+    /**
+     * 执行下载和应用
+     */
+    public interface Handler {
+
+        /**
+         * 应用配置，每一步之前可通过 task.isSuperseded() 检查是否已有更新的配置，是则直接返回
+         */
+        void apply(RedisConfig config, Task task) throws Exception;
+    }
+
+    /**
+     * 配置应用完成的通知（在工作线程上调用）
+     */
+    public interface Listener {
+
+        void applied(RedisConfig config, long latencyMicros);
+    }
+
+    /**
+     * 一次应用
+     */
+    public class Task {
+
+        private final Slot slot;
+        private final RedisConfig config;
+        private final long submitted;
+
+        private Task(Slot slot, RedisConfig config, long submitted) {
+            this.slot = slot;
+            this.config = config;
+            this.submitted = submitted;
+        }
+
+        public RedisConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * 是否已有同一 id 的更新的配置等待执行
+         */
+        public boolean isSuperseded() {
+            synchronized (ConfigApplier.this) {
+                return slot.next != null || closed;
+            }
+        }
+    }
+
+    /**
+     * 一个配置 id 的执行状态，由 ConfigApplier.this 保护
+     */
+    private static class Slot {
+        private Task running;
+        private Task next;
+    }
+
+    private final Handler handler;
+    private final ExecutorService executor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram latencyMicros = new LatencyHistogram();
+
+    // 以下字段由 this 保护
+    private final Map<Integer, Slot> slots = new HashMap<>();
+    private boolean closed;
+    private long submitted;
+    private long applied;
+    private long superseded;
+    private long abandoned;
+    private long failures;
+
+    public ConfigApplier(Handler handler) {
+        this(handler, DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param handler 执行下载和应用
+     * @param workers 工作线程数
+     */
+    public ConfigApplier(Handler handler, int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers: " + workers);
+        }
+        this.handler = handler;
+        this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ConfigApplier-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 提交配置（不阻塞）
+     */
+    public void submit(RedisConfig config) {
+        Task task;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            submitted++;
+            Slot slot = slots.get(config.getId());
+            if (slot == null) {
+                slot = new Slot();
+                slots.put(config.getId(), slot);
+            }
+            task = new Task(slot, config, System.nanoTime());
+            if (slot.running != null) {
+                if (slot.next != null) {
+                    superseded++;
+                    log.debug("config {} superseded by {}", slot.next.config, config);
+                }
+                slot.next = task;
+                return;
+            }
+            slot.running = task;
+        }
+        execute(task);
+    }
+
+    private void execute(final Task task) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runTask(task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+        }
+    }
+
+    private void runTask(Task task) {
+        while (task != null) {
+            task = runOnce(task);
+        }
+    }
+
+    /**
+     * 执行一次应用，返回同一 id 接着要执行的任务
+     */
+    private Task runOnce(Task task) {
+        boolean failed = false;
+        try {
+            handler.apply(task.config, task);
+        } catch (Exception e) {
+            failed = true;
+            log.error("apply " + task.config + " failure: " + e.getMessage(), e);
+        }
+        Task next;
+        boolean completed = false;
+        synchronized (this) {
+            Slot slot = task.slot;
+            next = closed ? null : slot.next;
+            slot.next = null;
+            slot.running = next;
+            if (next == null) {
+                slots.remove(task.config.getId());
+            }
+            if (failed) {
+                failures++;
+            } else if (next != null || closed) {
+                // 执行期间到达的更新的配置或 close() 可能使这次应用不完整（isSuperseded() 已返回 true），视为放弃
+                abandoned++;
+            } else {
+                applied++;
+                completed = true;
+            }
+        }
+        if (completed) {
+            long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - task.submitted);
+            latencyMicros.record(latency);
+            for (Listener listener : listeners) {
+                try {
+                    listener.applied(task.config, latency);
+                } catch (Exception e) {
+                    log.error("listener failure: " + e.getMessage(), e);
+                }
+            }
+        }
+        return next;
+    }
+
+    public synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    public synchronized long getApplied() {
+        return applied;
+    }
+
+    /**
+     * 等待期间被更新的配置替换、没有执行的次数
+     */
+    public synchronized long getSuperseded() {
+        return superseded;
+    }
+
+    /**
+     * 执行期间有更新的配置到达或已关闭、放弃的次数
+     */
+    public synchronized long getAbandoned() {
+        return abandoned;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * 从提交到应用完成的延迟（微秒）
+     */
+    public LatencyHistogram getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    /**
+     * 关闭（执行中的任务在下一步之前放弃，等待中的任务被丢弃）
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            slots.clear();
+        }
+        executor.shutdown();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConfigApplier{" +
+                "submitted=" + submitted +
+                ", applied=" + applied +
+                ", superseded=" + superseded +
+                ", abandoned=" + abandoned +
+                ", failures=" + failures +
+                ", p50Ms=" + latencyMicros.getQuantile(0.5) / 1000 +
+                ", p99Ms=" + latencyMicros.getQuantile(0.99) / 1000 +
+                '}';
+    }
+
+}
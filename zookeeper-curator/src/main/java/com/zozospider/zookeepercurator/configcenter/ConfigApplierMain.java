@@ -0,0 +1,196 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.alibaba.fastjson.JSON;
+import com.zozospider.zookeepercurator.cache.ParallelPathChildrenCache;
+import com.zozospider.zookeeperjavaclient.zk.metrics.LatencyHistogram;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在本地 TestingServer 上对比配置在监听器中直接应用（原 Client1 的方式）与通过 ConfigApplier 应用时，突发更新的端到端延迟
+ * <p>
+ * 以固定间隔连续修改 redis config 节点，依次轮换 ids 个配置 id，remark 中带有发布序号。
+ * 某个 id 的配置应用完成时，该 id 所有不晚于它发布的更新都视为已生效（latest-wins），统计从发布到生效的延迟。
+ * 由于 Watcher 只保证看到最新的数据，连续修改同一节点时中间的版本可能被跳过，
+ * 某个 id 最后一次发布的版本被跳过时该更新不会生效，计为未生效。
+ * <p>
+ * 参数: [更新次数] [配置 id 数] [发布间隔毫秒数] [下载、应用每一步耗时毫秒数]
+ */
+public class ConfigApplierMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ConfigApplierMain.class);
+
+    public static void main(String[] args) throws Exception {
+
+        int updates = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int ids = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int intervalMs = args.length > 2 ? Integer.parseInt(args[2]) : 25;
+        long stepMs = args.length > 3 ? Long.parseLong(args[3]) : 100;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            CuratorFramework client = CuratorFrameworkFactory.builder()
+                    .connectString(server.getConnectString())
+                    .retryPolicy(new RetryNTimes(3, 1000))
+                    .namespace("namespace")
+                    .build();
+            client.start();
+            try {
+                client.create().creatingParentsIfNeeded()
+                        .forPath(Client1.CONFIG_PATH + Client1.REDIS_PATH, config(0, 0).getBytes());
+
+                inline(server.getConnectString(), client, updates, ids, intervalMs, stepMs);
+                pipeline(server.getConnectString(), client, updates, ids, intervalMs, stepMs);
+            } finally {
+                CloseableUtils.closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * 原 Client1 的方式: 在监听器（事件线程）中依次执行每一步
+     */
+    private static void inline(String connectString, CuratorFramework publisher, int updates, int ids, int intervalMs,
+                               final long stepMs) throws Exception {
+
+        CuratorFramework client = CuratorFrameworkFactory.builder()
+                .connectString(connectString)
+                .retryPolicy(new RetryNTimes(3, 1000))
+                .namespace("namespace")
+                .build();
+        client.start();
+        ParallelPathChildrenCache cache = new ParallelPathChildrenCache(client, Client1.CONFIG_PATH, true);
+        final Tracker tracker = new Tracker();
+        try {
+            cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            cache.getListenable().addListener(new PathChildrenCacheListener() {
+                @Override
+                public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+                    if (PathChildrenCacheEvent.Type.CHILD_UPDATED.equals(event.getType())) {
+                        RedisConfig config = JSON.parseObject(new String(event.getData().getData()), RedisConfig.class);
+                        // 准备、下载、应用
+                        Thread.sleep(stepMs * 3);
+                        tracker.applied(config);
+                    }
+                }
+            });
+            run("inline listener", publisher, tracker, updates, ids, intervalMs, stepMs, null);
+        } finally {
+            CloseableUtils.closeQuietly(cache);
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    private static void pipeline(String connectString, CuratorFramework publisher, int updates, int ids, int intervalMs,
+                                 long stepMs) throws Exception {
+
+        Client1 client1 = new Client1(connectString, stepMs);
+        final Tracker tracker = new Tracker();
+        try {
+            client1.getApplier().addListener(new ConfigApplier.Listener() {
+                @Override
+                public void applied(RedisConfig config, long latencyMicros) {
+                    tracker.applied(config);
+                }
+            });
+            client1.listen();
+            run("ConfigApplier", publisher, tracker, updates, ids, intervalMs, stepMs, client1.getApplier());
+        } finally {
+            client1.close();
+        }
+    }
+
+    private static void run(String name, CuratorFramework publisher, Tracker tracker, int updates, int ids, int intervalMs,
+                            long stepMs, ConfigApplier applier) throws Exception {
+
+        long begin = System.nanoTime();
+        for (int seq = 1; seq <= updates; seq++) {
+            int id = seq % ids;
+            tracker.published(id, seq);
+            publisher.setData().forPath(Client1.CONFIG_PATH + Client1.REDIS_PATH, config(id, seq).getBytes());
+            Thread.sleep(intervalMs);
+        }
+        long publishMs = (System.nanoTime() - begin) / 1000000;
+        // 等待所有更新生效（被跳过的版本可能永远不会生效）
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(updates * stepMs * 3 + 5000);
+        while (tracker.pending() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        LatencyHistogram latency = tracker.latencyMicros;
+        log.info("{}: {} updates of {} ids published in {} ms, step {} ms, publish to apply p50 {} ms, p99 {} ms, max {} ms, not applied: {}",
+                name, updates, ids, publishMs, stepMs, latency.getQuantile(0.5) / 1000, latency.getQuantile(0.99) / 1000,
+                latency.getMax() / 1000, tracker.pending());
+        if (applier != null) {
+            log.info("{}", applier);
+        }
+    }
+
+    private static String config(int id, int seq) {
+        RedisConfig config = new RedisConfig();
+        config.setId(id);
+        config.setType("update");
+        config.setUrl("ftp://192.168.10.123/config/redis-" + id + ".xml");
+        config.setRemark(String.valueOf(seq));
+        return JSON.toJSONString(config);
+    }
+
+    /**
+     * 按 id 记录已发布、尚未生效的更新（序号 -> 发布时间）
+     */
+    private static class Tracker {
+
+        private final Map<Integer, Map<Integer, Long>> published = new HashMap<>();
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+
+        synchronized void published(int id, int seq) {
+            Map<Integer, Long> pending = published.get(id);
+            if (pending == null) {
+                pending = new LinkedHashMap<>();
+                published.put(id, pending);
+            }
+            pending.put(seq, System.nanoTime());
+        }
+
+        synchronized void applied(RedisConfig config) {
+            Map<Integer, Long> pending = published.get(config.getId());
+            if (pending == null) {
+                return;
+            }
+            int seq = Integer.parseInt(config.getRemark());
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Integer, Long>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, Long> entry = iterator.next();
+                if (entry.getKey() > seq) {
+                    break;
+                }
+                latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(now - entry.getValue()));
+                iterator.remove();
+            }
+        }
+
+        synchronized int pending() {
+            int count = 0;
+            for (Map<Integer, Long> pending : published.values()) {
+                count += pending.size();
+            }
+            return count;
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.alibaba.fastjson.JSON;
+import com.zozospider.zookeepercurator.configcenter.codec.ConfigCodec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ShardedConfigCenter 中的一个配置项: 名称和值的编解码方式
+ * <p>
+ * 名称即节点名，不能为空、不能包含 '/'。两个 ConfigKey 名称相同即相等，同一名称在一个配置中心中只应使用一种编解码方式。
+ */
+public final class ConfigKey<T> {
+
+    /**
+     * 值的编解码，实现应当无状态、线程安全
+     */
+    public interface Codec<T> {
+
+        byte[] encode(T value);
+
+        /**
+         * @throws IllegalArgumentException 数据格式错误
+         */
+        T decode(byte[] data);
+    }
+
+    private static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] data) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    };
+
+    private static final Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public byte[] encode(Long value) {
+            return STRING.encode(value.toString());
+        }
+
+        @Override
+        public Long decode(byte[] data) {
+            try {
+                return Long.valueOf(STRING.decode(data).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+    };
+
+    private static final Codec<Boolean> BOOLEAN = new Codec<Boolean>() {
+        @Override
+        public byte[] encode(Boolean value) {
+            return STRING.encode(value.toString());
+        }
+
+        @Override
+        public Boolean decode(byte[] data) {
+            String text = STRING.decode(data).trim();
+            if ("true".equalsIgnoreCase(text)) {
+                return Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(text)) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException("not a boolean: " + text);
+        }
+    };
+
+    private final String name;
+    private final Codec<T> codec;
+
+    private ConfigKey(String name, Codec<T> codec) {
+        if (name == null || name.isEmpty() || name.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("invalid config key name: " + name);
+        }
+        if (codec == null) {
+            throw new IllegalArgumentException("codec is null");
+        }
+        this.name = name;
+        this.codec = codec;
+    }
+
+    public static <T> ConfigKey<T> of(String name, Codec<T> codec) {
+        return new ConfigKey<>(name, codec);
+    }
+
+    /**
+     * UTF-8 字符串
+     */
+    public static ConfigKey<String> stringKey(String name) {
+        return new ConfigKey<>(name, STRING);
+    }
+
+    /**
+     * 十进制文本表示的 long
+     */
+    public static ConfigKey<Long> longKey(String name) {
+        return new ConfigKey<>(name, LONG);
+    }
+
+    /**
+     * true / false（不区分大小写）
+     */
+    public static ConfigKey<Boolean> booleanKey(String name) {
+        return new ConfigKey<>(name, BOOLEAN);
+    }
+
+    /**
+     * fastjson 序列化的对象（UTF-8）
+     */
+    public static <T> ConfigKey<T> jsonKey(String name, final Class<T> type) {
+        return new ConfigKey<>(name, new Codec<T>() {
+            @Override
+            public byte[] encode(T value) {
+                return JSON.toJSONString(value).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public T decode(byte[] data) {
+                try {
+                    return JSON.parseObject(new String(data, StandardCharsets.UTF_8), type);
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException(e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 用 ConfigCodec 编解码的 RedisConfig（与 Client1 的 redis config 节点格式相同）
+     */
+    public static ConfigKey<RedisConfig> redisKey(String name, final ConfigCodec codec) {
+        return new ConfigKey<>(name, new Codec<RedisConfig>() {
+            @Override
+            public byte[] encode(RedisConfig value) {
+                return codec.encode(value);
+            }
+
+            @Override
+            public RedisConfig decode(byte[] data) {
+                return codec.decode(data);
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Codec<T> getCodec() {
+        return codec;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof ConfigKey && name.equals(((ConfigKey<?>) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+
+}
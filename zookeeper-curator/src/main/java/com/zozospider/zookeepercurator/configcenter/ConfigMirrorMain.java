@@ -0,0 +1,169 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.alibaba.fastjson.JSON;
+import com.zozospider.zookeepercurator.utils.LatencyProxy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在本地 TestingServer 上对比 Client1 没有和有本地镜像文件时的启动耗时，以及服务端不可用时能否启动
+ * <p>
+ * 配置目录下有 configs 个节点（含 redis config），每个约 dataKb KB，Client1 通过 LatencyProxy 连接以模拟网络延迟。
+ * 依次测量:
+ * 服务端可用时没有镜像的启动（listen() 返回即可提供配置）；
+ * 第一次以镜像启动（镜像不存在，同步完成后写入镜像）；
+ * 以镜像启动（listen() 返回的耗时，以及与服务端同步完成的耗时，未变化的配置只 exists 确认）；
+ * 修改 redis config 后停止服务端，没有镜像的启动（等待 waitSeconds 秒）；
+ * 服务端停止时以镜像启动，之后重启服务端，统计同步完成的耗时以及离线期间的修改是否被应用。
+ * <p>
+ * 参数: [配置数] [每个配置 KB 数] [单向延迟毫秒数] [服务端停止时等待秒数]
+ */
+public class ConfigMirrorMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ConfigMirrorMain.class);
+
+    public static void main(String[] args) throws Exception {
+
+        int configs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int dataKb = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int delayMs = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int waitSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        File mirror = File.createTempFile("config-mirror", ".snapshot");
+        if (!mirror.delete()) {
+            throw new IllegalStateException("can not delete " + mirror);
+        }
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer();
+             LatencyProxy proxy = new LatencyProxy(server.getPort(), delayMs)) {
+
+            CuratorFramework publisher = CuratorFrameworkFactory.builder()
+                    .connectString(server.getConnectString())
+                    .retryPolicy(new RetryNTimes(3, 1000))
+                    .namespace("namespace")
+                    .build();
+            publisher.start();
+            try {
+                StringBuilder padding = new StringBuilder();
+                while (padding.length() < dataKb * 1024) {
+                    padding.append("maxmemory 2gb\n");
+                }
+                publisher.create().creatingParentsIfNeeded()
+                        .forPath(Client1.CONFIG_PATH + Client1.REDIS_PATH, config("v1").getBytes(StandardCharsets.UTF_8));
+                for (int i = 1; i < configs; i++) {
+                    publisher.create().forPath(Client1.CONFIG_PATH + "/config-" + i, padding.toString().getBytes(StandardCharsets.UTF_8));
+                }
+
+                String connectString = proxy.getConnectString();
+                start("ensemble up, no mirror", connectString, null, waitSeconds);
+                start("ensemble up, mirror missing", connectString, mirror, waitSeconds);
+                log.info("mirror file: {} KB", mirror.length() / 1024);
+                start("ensemble up, mirror", connectString, mirror, waitSeconds);
+
+                // 离线期间修改 redis config
+                publisher.setData().forPath(Client1.CONFIG_PATH + Client1.REDIS_PATH, config("v2").getBytes(StandardCharsets.UTF_8));
+                CloseableUtils.closeQuietly(publisher);
+                server.stop();
+
+                start("ensemble down, no mirror", connectString, null, waitSeconds);
+                offline(server, connectString, mirror, waitSeconds);
+            } finally {
+                CloseableUtils.closeQuietly(publisher);
+                if (!mirror.delete()) {
+                    log.warn("can not delete {}", mirror);
+                }
+            }
+        }
+    }
+
+    /**
+     * 启动 Client1，统计 listen() 返回（可以提供配置）和与服务端同步完成的耗时
+     */
+    private static void start(String name, String connectString, File mirror, int waitSeconds) throws Exception {
+        final Client1 client1 = new Client1(connectString, 1);
+        client1.setMirrorFile(mirror);
+        try {
+            long begin = System.nanoTime();
+            Thread listen = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        client1.listen();
+                    } catch (Exception e) {
+                        log.warn("listen failure: " + e.getMessage());
+                    }
+                }
+            });
+            listen.setDaemon(true);
+            listen.start();
+            listen.join(TimeUnit.SECONDS.toMillis(waitSeconds));
+            if (listen.isAlive()) {
+                log.info("{}: listen() not returned after {} s, {} configs served", name, waitSeconds, client1.getConfig().size());
+                return;
+            }
+            long serveMs = (System.nanoTime() - begin) / 1000000;
+            int served = client1.getConfig().size();
+            String remark = remark(client1);
+            boolean reconciled = client1.awaitReconciled(waitSeconds, TimeUnit.SECONDS);
+            long reconcileMs = (System.nanoTime() - begin) / 1000000;
+            log.info("{}: serving {} configs (redis {}) after {} ms, reconciled: {} after {} ms", name, served, remark,
+                    serveMs, reconciled, reconcileMs);
+        } finally {
+            client1.close();
+        }
+    }
+
+    /**
+     * 服务端停止时以镜像启动，之后重启服务端，检查离线期间的修改是否被同步和应用
+     */
+    private static void offline(TestingServer server, String connectString, File mirror, int waitSeconds) throws Exception {
+        Client1 client1 = new Client1(connectString, 1);
+        client1.setMirrorFile(mirror);
+        try {
+            long begin = System.nanoTime();
+            client1.listen();
+            long serveMs = (System.nanoTime() - begin) / 1000000;
+            log.info("ensemble down, mirror: serving {} configs (redis {}) after {} ms", client1.getConfig().size(),
+                    remark(client1), serveMs);
+
+            server.restart();
+            begin = System.nanoTime();
+            boolean reconciled = client1.awaitReconciled(waitSeconds * 4, TimeUnit.SECONDS);
+            long reconcileMs = (System.nanoTime() - begin) / 1000000;
+            // 等待离线期间的修改应用完成
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitSeconds);
+            while (client1.getApplier().getApplied() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            log.info("ensemble restarted: reconciled: {} {} ms after restart, redis {}, applied {}", reconciled, reconcileMs,
+                    remark(client1), client1.getApplier().getApplied());
+        } finally {
+            client1.close();
+        }
+    }
+
+    private static String remark(Client1 client1) {
+        RedisConfig config = client1.getConfig().getRedisConfig();
+        return config == null ? null : config.getRemark();
+    }
+
+    private static String config(String remark) {
+        RedisConfig config = new RedisConfig();
+        config.setId(1);
+        config.setType("update");
+        config.setUrl("ftp://192.168.10.123/config/redis.xml");
+        config.setRemark(remark);
+        return JSON.toJSONString(config);
+    }
+
+}
@@ -0,0 +1,250 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.alibaba.fastjson.JSON;
+import com.zozospider.zookeepercurator.cache.ParallelPathChildrenCache;
+import com.zozospider.zookeeperjavaclient.zk.metrics.LatencyHistogram;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.InstanceSpec;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.client.FourLetterWordMain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在本地 TestingServer 上测量 redis config 的修改传播到 N 个订阅方的延迟
+ * <p>
+ * 每个订阅方与 Client1 相同: ParallelPathChildrenCache 监听 CONFIG_PATH，收到变化后写入 ConfigRepository（解码、生成新快照），
+ * 新快照可读即视为生效。订阅方默认各自使用一个会话（客户端），也可以让多个订阅方共用 sessions 个会话。
+ * 对每个订阅方数量，依次以每个发布速率（次/秒）修改 updates 次 redis config（remark 中带有序号和发布时间），
+ * 统计从发布到每个订阅方生效的延迟 p50 / p99 / max、生效的次数（Watcher 只保证看到最新数据，中间版本可能被跳过）
+ * 以及所有订阅方都看到最后一次修改的耗时；启动订阅方后用四字命令 wchs 统计服务端的连接数和 Watcher 数
+ * （ZooKeeper 3.4 的 wchs 只统计数据 Watcher，不含子节点列表的 Watcher）。
+ * 服务端的 maxClientCnxns 设为不限制（默认每个 IP 60 个连接）。
+ * 注: 当前依赖的 curator-test 2.12.0 与 zookeeper 3.4.13 组合启动 TestingCluster 时 QuorumPeerMain.runFromConfig 抛出 NullPointerException，
+ * 因此只使用单个 TestingServer。
+ * <p>
+ * 参数: [订阅方数量列表，逗号分隔] [发布速率列表，逗号分隔] [每个速率的修改次数] [会话数，0 为每个订阅方一个]
+ */
+public class ConfigPropagationMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ConfigPropagationMain.class);
+
+    private static final Pattern WATCHES = Pattern.compile("(\\d+) connections watching (\\d+) paths\\s+Total watches:(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+
+        String subscriberList = args.length > 0 ? args[0] : "10,100,1000";
+        String rateList = args.length > 1 ? args[1] : "10,100";
+        int updates = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int sessions = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        // 模拟服务端（不限制每个 IP 的连接数）
+        InstanceSpec spec = new InstanceSpec(null, -1, -1, -1, true, -1, -1, 0);
+        try (TestingServer server = new TestingServer(spec, true)) {
+
+            String connectString = server.getConnectString();
+            CuratorFramework publisher = newClient(connectString);
+            try {
+                publisher.create().creatingParentsIfNeeded()
+                        .forPath(Client1.CONFIG_PATH + Client1.REDIS_PATH, config(0, System.nanoTime()));
+                int seq = 0;
+                for (String subscriberCount : subscriberList.split(",")) {
+                    int count = Integer.parseInt(subscriberCount.trim());
+                    Recorder recorder = new Recorder();
+                    List<Subscriber> subscribers = new ArrayList<>();
+                    List<CuratorFramework> clients = new ArrayList<>();
+                    try {
+                        long begin = System.nanoTime();
+                        int clientCount = sessions <= 0 ? count : Math.min(sessions, count);
+                        for (int i = 0; i < clientCount; i++) {
+                            clients.add(newClient(connectString));
+                        }
+                        for (int i = 0; i < count; i++) {
+                            Subscriber subscriber = new Subscriber(clients.get(i % clientCount), recorder);
+                            subscribers.add(subscriber);
+                            subscriber.start();
+                        }
+                        log.info("{} subscribers on {} sessions started in {} ms, server: {}", count, clientCount,
+                                (System.nanoTime() - begin) / 1000000, watches(spec));
+
+                        for (String rate : rateList.split(",")) {
+                            seq = run(publisher, subscribers, recorder, count, Integer.parseInt(rate.trim()), updates, seq);
+                        }
+                    } finally {
+                        for (Subscriber subscriber : subscribers) {
+                            CloseableUtils.closeQuietly(subscriber);
+                        }
+                        for (CuratorFramework client : clients) {
+                            CloseableUtils.closeQuietly(client);
+                        }
+                    }
+                }
+            } finally {
+                CloseableUtils.closeQuietly(publisher);
+            }
+        }
+    }
+
+    /**
+     * 以固定速率发布 updates 次修改，等待所有订阅方看到最后一次
+     *
+     * @return 最后一次修改的序号
+     */
+    private static int run(CuratorFramework publisher, List<Subscriber> subscribers, Recorder recorder, int count, int rate,
+                           int updates, int seq) throws Exception {
+
+        recorder.reset();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long begin = System.nanoTime();
+        long lastSent = begin;
+        for (int i = 0; i < updates; i++) {
+            // 按计划时间发布，落后时立即发布
+            long due = begin + i * intervalNanos;
+            long now = System.nanoTime();
+            if (due > now) {
+                TimeUnit.NANOSECONDS.sleep(due - now);
+            }
+            seq++;
+            lastSent = System.nanoTime();
+            publisher.setData().forPath(Client1.CONFIG_PATH + Client1.REDIS_PATH, config(seq, lastSent));
+        }
+        long publishMs = (System.nanoTime() - begin) / 1000000;
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        int reached = 0;
+        while (System.nanoTime() < deadline) {
+            reached = 0;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.lastSeq == seq) {
+                    reached++;
+                }
+            }
+            if (reached == count) {
+                break;
+            }
+            Thread.sleep(1);
+        }
+        long convergedMs = (System.nanoTime() - lastSent) / 1000000;
+
+        LatencyHistogram latency = recorder.latencyMicros;
+        log.info("{} subscribers, {} updates/s: {} updates published in {} ms, applied {} of {} ({} versions skipped), "
+                        + "publish to apply p50 {} ms, p99 {} ms, max {} ms, last update reached {} of {} subscribers after {} ms",
+                count, rate, updates, publishMs, recorder.applied.get(), (long) count * updates,
+                (long) count * updates - recorder.applied.get(), format(latency.getQuantile(0.5)),
+                format(latency.getQuantile(0.99)), format(latency.getMax()), reached, count, convergedMs);
+        return seq;
+    }
+
+    /**
+     * 与 Client1 相同的缓存和配置快照
+     */
+    private static class Subscriber implements Closeable {
+
+        private final ParallelPathChildrenCache cache;
+        private final ConfigRepository repository = new ConfigRepository();
+        private volatile int lastSeq;
+
+        Subscriber(CuratorFramework client, final Recorder recorder) {
+            cache = new ParallelPathChildrenCache(client, Client1.CONFIG_PATH, true);
+            cache.getListenable().addListener(new PathChildrenCacheListener() {
+                @Override
+                public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+                    if (!PathChildrenCacheEvent.Type.CHILD_UPDATED.equals(event.getType())) {
+                        return;
+                    }
+                    ConfigSnapshot.Entry entry = repository.put(event.getData());
+                    if (entry == null || entry.getRedisConfig() == null) {
+                        return;
+                    }
+                    // 新快照已可读
+                    long now = System.nanoTime();
+                    String[] remark = entry.getRedisConfig().getRemark().split(" ");
+                    lastSeq = Integer.parseInt(remark[0]);
+                    recorder.applied(now - Long.parseLong(remark[1]));
+                }
+            });
+        }
+
+        void start() throws Exception {
+            cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            repository.reset(cache.getCurrentData());
+        }
+
+        @Override
+        public void close() {
+            cache.close();
+        }
+    }
+
+    private static class Recorder {
+
+        private volatile LatencyHistogram latencyMicros = new LatencyHistogram();
+        private final AtomicLong applied = new AtomicLong();
+
+        void applied(long latencyNanos) {
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            applied.incrementAndGet();
+        }
+
+        void reset() {
+            latencyMicros = new LatencyHistogram();
+            applied.set(0);
+        }
+    }
+
+    /**
+     * 服务端的连接数和数据 Watcher 数（四字命令 wchs）
+     */
+    private static String watches(InstanceSpec spec) {
+        try {
+            String result = FourLetterWordMain.send4LetterWord(spec.getHostname(), spec.getPort(), "wchs");
+            Matcher matcher = WATCHES.matcher(result);
+            if (!matcher.find()) {
+                return result.trim();
+            }
+            return matcher.group(1) + " connections watching, " + matcher.group(3) + " data watches";
+        } catch (IOException e) {
+            return "wchs failure: " + e.getMessage();
+        }
+    }
+
+    private static byte[] config(int seq, long sentNanos) {
+        RedisConfig config = new RedisConfig();
+        config.setId(1);
+        config.setType("update");
+        config.setUrl("ftp://192.168.10.123/config/redis.xml");
+        config.setRemark(seq + " " + sentNanos);
+        return JSON.toJSONString(config).getBytes();
+    }
+
+    private static String format(long micros) {
+        return String.format("%.1f", micros / 1000.0);
+    }
+
+    private static CuratorFramework newClient(String connectString) throws InterruptedException {
+        CuratorFramework client = CuratorFrameworkFactory.builder()
+                .connectString(connectString)
+                .retryPolicy(new RetryNTimes(3, 1000))
+                .namespace("namespace")
+                .build();
+        client.start();
+        client.blockUntilConnected();
+        return client;
+    }
+
+}
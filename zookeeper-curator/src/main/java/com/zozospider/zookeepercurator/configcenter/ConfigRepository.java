@@ -0,0 +1,106 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.zozospider.zookeepercurator.configcenter.codec.AutoConfigCodec;
+import com.zozospider.zookeepercurator.configcenter.codec.ConfigCodec;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 持有当前的 ConfigSnapshot
+ * <p>
+ * 写入方（Client1 的缓存监听器）每次变化复制一份 Map 生成新的快照，通过 volatile 引用整体替换（写入方之间用 synchronized 串行），
+ * 读取方 current() 只读一次 volatile 引用，不加锁、不分配对象，不会被写入阻塞。
+ * 配置数量不多、变化远少于读取，复制的开销只发生在变化时。
+ * <p>
+ * 每个节点只保留 mzxid 最大的数据，乱序到达的旧数据被忽略。redis config 节点用 ConfigCodec 解码（默认 AutoConfigCodec）。
+ */
+public class ConfigRepository {
+
+    private final static Logger log = LoggerFactory.getLogger(ConfigRepository.class);
+
+    static final String REDIS_NAME = ZKPaths.getNodeFromPath(Client1.REDIS_PATH);
+
+    private final ConfigCodec codec;
+    private volatile ConfigSnapshot current = ConfigSnapshot.EMPTY;
+
+    public ConfigRepository() {
+        this(new AutoConfigCodec());
+    }
+
+    public ConfigRepository(ConfigCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * 当前快照
+     */
+    public ConfigSnapshot current() {
+        return current;
+    }
+
+    /**
+     * 用缓存的全部数据替换（初次加载后调用）
+     */
+    public synchronized void reset(Collection<ChildData> children) {
+        Map<String, ConfigSnapshot.Entry> entries = new HashMap<>();
+        for (ChildData child : children) {
+            ConfigSnapshot.Entry entry = toEntry(child);
+            entries.put(entry.getName(), entry);
+        }
+        current = new ConfigSnapshot(current.getVersion() + 1, entries);
+    }
+
+    /**
+     * 新增或修改一个节点
+     *
+     * @return 新的配置，数据不比当前的新时为 null
+     */
+    public synchronized ConfigSnapshot.Entry put(ChildData child) {
+        String name = ZKPaths.getNodeFromPath(child.getPath());
+        ConfigSnapshot snapshot = current;
+        ConfigSnapshot.Entry previous = snapshot.get(name);
+        if (previous != null && previous.getMzxid() >= child.getStat().getMzxid()) {
+            return null;
+        }
+        ConfigSnapshot.Entry entry = toEntry(child);
+        Map<String, ConfigSnapshot.Entry> entries = new HashMap<>(snapshot.getEntries());
+        entries.put(name, entry);
+        current = new ConfigSnapshot(snapshot.getVersion() + 1, entries);
+        return entry;
+    }
+
+    /**
+     * 删除一个节点
+     */
+    public synchronized void remove(String path) {
+        String name = ZKPaths.getNodeFromPath(path);
+        ConfigSnapshot snapshot = current;
+        if (snapshot.get(name) == null) {
+            return;
+        }
+        Map<String, ConfigSnapshot.Entry> entries = new HashMap<>(snapshot.getEntries());
+        entries.remove(name);
+        current = new ConfigSnapshot(snapshot.getVersion() + 1, entries);
+    }
+
+    private ConfigSnapshot.Entry toEntry(ChildData child) {
+        String name = ZKPaths.getNodeFromPath(child.getPath());
+        byte[] data = child.getData();
+        RedisConfig redisConfig = null;
+        if (REDIS_NAME.equals(name) && data != null) {
+            try {
+                redisConfig = codec.decode(data);
+            } catch (Exception e) {
+                log.warn("decode {} failure: {}", child.getPath(), e.getMessage());
+            }
+        }
+        return new ConfigSnapshot.Entry(name, child.getStat().getMzxid(), child.getStat().getVersion(), data, redisConfig);
+    }
+
+}
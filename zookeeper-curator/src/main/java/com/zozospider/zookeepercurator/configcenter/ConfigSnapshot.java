@@ -0,0 +1,137 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * CONFIG_PATH 下所有配置的不可变快照
+ * <p>
+ * 每次配置变化时由 ConfigRepository 生成新的快照并整体替换，已发布的快照不再修改，
+ * 读取方拿到一个快照后看到的是同一时刻的一致视图。get() 只做一次 HashMap 查找，不加锁、不分配对象。
+ * <p>
+ * 注: Entry.getData() / getRedisConfig() 直接返回内部对象，调用方不能修改。
+ */
+public final class ConfigSnapshot {
+
+    /**
+     * 一个配置节点
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final long mzxid;
+        private final int version;
+        private final byte[] data;
+        private final RedisConfig redisConfig;
+
+        Entry(String name, long mzxid, int version, byte[] data, RedisConfig redisConfig) {
+            this.name = name;
+            this.mzxid = mzxid;
+            this.version = version;
+            this.data = data;
+            this.redisConfig = redisConfig;
+        }
+
+        /**
+         * 节点名（不含 CONFIG_PATH）
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getMzxid() {
+            return mzxid;
+        }
+
+        /**
+         * 节点数据版本号
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * 解码后的 RedisConfig（只有 redis config 节点有，其他节点为 null）
+         */
+        public RedisConfig getRedisConfig() {
+            return redisConfig;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "name='" + name + '\'' +
+                    ", mzxid=" + mzxid +
+                    ", version=" + version +
+                    ", redisConfig=" + redisConfig +
+                    '}';
+        }
+    }
+
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(0, Collections.<String, Entry>emptyMap());
+
+    private final long version;
+    private final Map<String, Entry> entries;
+    private final Map<String, Entry> readOnlyEntries;
+    /**
+     * 最常读取的 redis config 在构造时取出，读取时不需要查找
+     */
+    private final RedisConfig redisConfig;
+
+    /**
+     * @param entries 不再修改的 Map
+     */
+    ConfigSnapshot(long version, Map<String, Entry> entries) {
+        this.version = version;
+        this.entries = entries;
+        this.readOnlyEntries = Collections.unmodifiableMap(entries);
+        Entry redis = entries.get(ConfigRepository.REDIS_NAME);
+        this.redisConfig = redis == null ? null : redis.redisConfig;
+    }
+
+    /**
+     * 快照版本号，每次替换加一
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param name 节点名（不含 CONFIG_PATH），如 "redis-config"
+     * @return 不存在时为 null
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * redis config 节点解码后的配置，不存在时为 null
+     */
+    public RedisConfig getRedisConfig() {
+        return redisConfig;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 所有配置（只读）
+     */
+    public Map<String, Entry> getEntries() {
+        return readOnlyEntries;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigSnapshot{" +
+                "version=" + version +
+                ", entries=" + entries.values() +
+                '}';
+    }
+
+}
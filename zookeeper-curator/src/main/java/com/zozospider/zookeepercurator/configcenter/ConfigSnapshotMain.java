@@ -0,0 +1,219 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.alibaba.fastjson.JSON;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 对比读取当前配置的几种方式在并发更新下的读取开销
+ * <p>
+ * readers 个线程循环读取 redis config（读取 id 防止被优化掉），同时一个线程以 updatesPerSecond 的频率更新配置:
+ * <ul>
+ * <li>snapshot: ConfigRepository.current().getRedisConfig()</li>
+ * <li>synchronized: 在 synchronized 中读取 HashMap</li>
+ * <li>read-write lock: 在 ReentrantReadWriteLock 的读锁中读取 HashMap</li>
+ * <li>parse on read: 每次读取时从节点数据解码（没有快照时业务方只能这样读到最新配置）</li>
+ * </ul>
+ * 每种方式先预热一轮再计时，统计每秒读取次数、平均每次读取耗时，以及每次读取分配的字节数（HotSpot 的线程分配计数）。
+ * <p>
+ * 参数: [读线程数] [每秒更新次数] [每轮秒数]
+ */
+public class ConfigSnapshotMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ConfigSnapshotMain.class);
+
+    private static final String PATH = Client1.CONFIG_PATH + Client1.REDIS_PATH;
+    private static final AtomicLong MZXID = new AtomicLong();
+
+    /**
+     * 一种读取 / 更新方式
+     */
+    private interface Store {
+
+        void update(ChildData data);
+
+        RedisConfig read();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int updatesPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        log.info("{} readers, {} updates per second, {} available processors", readers, updatesPerSecond,
+                Runtime.getRuntime().availableProcessors());
+
+        final ConfigRepository repository = new ConfigRepository();
+        Store snapshot = new Store() {
+            @Override
+            public void update(ChildData data) {
+                repository.put(data);
+            }
+
+            @Override
+            public RedisConfig read() {
+                return repository.current().getRedisConfig();
+            }
+        };
+
+        final Map<String, RedisConfig> synchronizedMap = new HashMap<>();
+        Store synchronizedStore = new Store() {
+            @Override
+            public void update(ChildData data) {
+                RedisConfig config = JSON.parseObject(new String(data.getData()), RedisConfig.class);
+                synchronized (synchronizedMap) {
+                    synchronizedMap.put(data.getPath(), config);
+                }
+            }
+
+            @Override
+            public RedisConfig read() {
+                synchronized (synchronizedMap) {
+                    return synchronizedMap.get(PATH);
+                }
+            }
+        };
+
+        final Map<String, RedisConfig> lockedMap = new HashMap<>();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        Store readWriteLock = new Store() {
+            @Override
+            public void update(ChildData data) {
+                RedisConfig config = JSON.parseObject(new String(data.getData()), RedisConfig.class);
+                lock.writeLock().lock();
+                try {
+                    lockedMap.put(data.getPath(), config);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            @Override
+            public RedisConfig read() {
+                lock.readLock().lock();
+                try {
+                    return lockedMap.get(PATH);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+
+        Store parseOnRead = new Store() {
+            private volatile byte[] latest;
+
+            @Override
+            public void update(ChildData data) {
+                latest = data.getData();
+            }
+
+            @Override
+            public RedisConfig read() {
+                return JSON.parseObject(new String(latest), RedisConfig.class);
+            }
+        };
+
+        String[] names = {"snapshot", "synchronized", "read-write lock", "parse on read"};
+        Store[] stores = {snapshot, synchronizedStore, readWriteLock, parseOnRead};
+        for (int i = 0; i < stores.length; i++) {
+            // 预热
+            run(names[i], stores[i], readers, updatesPerSecond, 1, false);
+            run(names[i], stores[i], readers, updatesPerSecond, seconds, true);
+        }
+        log.info("snapshot version after all runs: {}", repository.current().getVersion());
+    }
+
+    private static void run(String name, final Store store, int readers, final int updatesPerSecond, int seconds,
+                            boolean report) throws Exception {
+
+        store.update(data(MZXID.incrementAndGet()));
+
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong allocated = new AtomicLong();
+        final AtomicLong sink = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(readers);
+
+        for (int i = 0; i < readers; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                    long tid = Thread.currentThread().getId();
+                    long allocatedBefore = threadMXBean.getThreadAllocatedBytes(tid);
+                    long count = 0;
+                    long sum = 0;
+                    while (true) {
+                        // 每 1024 次检查一次时间
+                        for (int j = 0; j < 1024; j++) {
+                            sum += store.read().getId();
+                        }
+                        count += 1024;
+                        if (System.nanoTime() >= end) {
+                            break;
+                        }
+                    }
+                    allocated.addAndGet(threadMXBean.getThreadAllocatedBytes(tid) - allocatedBefore);
+                    reads.addAndGet(count);
+                    sink.addAndGet(sum);
+                    done.countDown();
+                }
+            }, "reader-" + i).start();
+        }
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long interval = TimeUnit.SECONDS.toNanos(1) / updatesPerSecond;
+                long next = System.nanoTime();
+                while (System.nanoTime() < end) {
+                    store.update(data(MZXID.incrementAndGet()));
+                    next += interval;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "writer");
+        writer.start();
+        done.await();
+        writer.join();
+
+        if (report) {
+            long count = reads.get();
+            // 读线程数可能多于 CPU 数，按总 CPU 时间折算每次读取的耗时
+            double cpus = Math.min(readers, Runtime.getRuntime().availableProcessors());
+            log.info("{}: {} reads/s, {} ns/read, {} bytes allocated/read (sink {})", name, count / seconds,
+                    String.format("%.1f", seconds * cpus * 1e9 / count), String.format("%.2f", (double) allocated.get() / count),
+                    sink.get() % 10);
+        }
+    }
+
+    private static ChildData data(long mzxid) {
+        RedisConfig config = new RedisConfig();
+        config.setId((int) (mzxid % 100));
+        config.setType("update");
+        config.setUrl("ftp://192.168.10.123/config/redis.xml");
+        config.setRemark("update " + mzxid);
+        Stat stat = new Stat();
+        stat.setMzxid(mzxid);
+        return new ChildData(PATH, stat, JSON.toJSONString(config).getBytes());
+    }
+
+}
@@ -18,8 +18,13 @@ public class RedisConfig {
     private String type;
     /**
      * 如果是 add 或update，则提供下载地址
+     * ftp:// 为 ftp 服务器上的文件；zk:// 为 ZooKeeper 中分块存储的大配置的清单路径（见 ChunkedConfigStore）
      */
     private String url;
+    /**
+     * 配置文件内容的 SHA-256（小写十六进制），可选；提供时客户端按内容寻址缓存下载的文件（见 ArtifactCache）
+     */
+    private String hash;
     /**
      * 备注
      */
@@ -49,6 +54,14 @@ public class RedisConfig {
         this.url = url;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
     public String getRemark() {
         return remark;
     }
@@ -62,6 +75,7 @@ public class RedisConfig {
         return "RedisConfig{" +
                 "type='" + type + '\'' +
                 ", url='" + url + '\'' +
+                ", hash='" + hash + '\'' +
                 ", remark='" + remark + '\'' +
                 '}';
     }
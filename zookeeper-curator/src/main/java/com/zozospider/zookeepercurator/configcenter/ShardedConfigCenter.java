@@ -0,0 +1,375 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.zozospider.zookeepercurator.cache.ParallelPathChildrenCache;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 多配置项的配置中心: 配置项按名称哈希分到 basePath 下的分片目录，客户端只监听订阅的配置项所在的分片
+ * <p>
+ * 节点结构:
+ * <pre>
+ * basePath          数据为分片数（十进制文本），第一个 start() 的客户端创建，之后所有客户端以节点中的值为准
+ * basePath/shard-N  分片目录，N = 名称的 String.hashCode() 高低 16 位异或后对分片数取模
+ * basePath/shard-N/name
+ * </pre>
+ * 所有配置项放在一个目录下（如 Client1 的 CONFIG_PATH）时，每个客户端的 PathChildrenCache 都要列出全部子节点、
+ * 对每个子节点设置数据 Watcher，任意配置变化都会通知所有客户端。
+ * 分片后每个分片由一个 ParallelPathChildrenCache 监听，只在第一次订阅其中的配置项时启动（BUILD_INITIAL_CACHE），
+ * getChildren 只返回该分片的子节点，其他分片的变化不会通知到该客户端；
+ * 同一分片中未订阅的配置项仍会被监听和缓存（但不解码、不通知），订阅的配置项越集中，分片越多，监听的范围越小。
+ * <p>
+ * 每个订阅的配置项只保留 mzxid 最大的数据，解码失败时保留原来的值。
+ * Listener 在分片缓存的事件线程上调用，同一分片的事件按顺序通知，不应在其中执行耗时操作。
+ */
+public class ShardedConfigCenter implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(ShardedConfigCenter.class);
+
+    public static final int DEFAULT_BUCKETS = 64;
+
+    private static final String SHARD_PREFIX = "shard-";
+
+    /**
+     * 配置项变化（新增、修改时 value 为新值，删除时为 null）
+     */
+    public interface Listener<T> {
+
+        void changed(ConfigKey<T> key, T value);
+    }
+
+    private final CuratorFramework client;
+    private final String basePath;
+    private int buckets;
+    private boolean started;
+    private boolean closed;
+
+    private final Map<String, Subscription<?>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<Integer, Shard> shards = new HashMap<>();
+
+    public ShardedConfigCenter(CuratorFramework client, String basePath) {
+        this(client, basePath, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * @param buckets 创建 basePath 时使用的分片数（basePath 已存在时以节点中的值为准）
+     */
+    public ShardedConfigCenter(CuratorFramework client, String basePath, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("buckets must be positive: " + buckets);
+        }
+        this.client = client;
+        this.basePath = ZKPaths.makePath(basePath, null);
+        this.buckets = buckets;
+    }
+
+    /**
+     * 创建或读取 basePath，确定分片数
+     */
+    public synchronized void start() throws Exception {
+        if (started) {
+            throw new IllegalStateException("already started");
+        }
+        try {
+            client.create().creatingParentsIfNeeded().forPath(basePath, String.valueOf(buckets).getBytes(StandardCharsets.UTF_8));
+        } catch (KeeperException.NodeExistsException e) {
+            // 已由其他客户端创建
+        }
+        String stored = new String(client.getData().forPath(basePath), StandardCharsets.UTF_8).trim();
+        int storedBuckets;
+        try {
+            storedBuckets = Integer.parseInt(stored);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(basePath + " does not hold a bucket count: " + stored);
+        }
+        if (storedBuckets <= 0) {
+            throw new IllegalStateException(basePath + " holds an invalid bucket count: " + storedBuckets);
+        }
+        if (storedBuckets != buckets) {
+            log.info("{} uses {} buckets, ignore configured {}", basePath, storedBuckets, buckets);
+            buckets = storedBuckets;
+        }
+        started = true;
+    }
+
+    /**
+     * 新增或修改配置项
+     */
+    public <T> void put(ConfigKey<T> key, T value) throws Exception {
+        String path = path(key);
+        byte[] data = key.getCodec().encode(value);
+        try {
+            client.setData().forPath(path, data);
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                client.create().creatingParentsIfNeeded().forPath(path, data);
+            } catch (KeeperException.NodeExistsException e1) {
+                // 与其他客户端同时创建
+                client.setData().forPath(path, data);
+            }
+        }
+    }
+
+    /**
+     * 删除配置项
+     *
+     * @return 配置项不存在时为 false
+     */
+    public boolean remove(ConfigKey<?> key) throws Exception {
+        try {
+            client.delete().forPath(path(key));
+            return true;
+        } catch (KeeperException.NoNodeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 订阅配置项: 第一次订阅某个分片中的配置项时启动该分片的缓存（阻塞直到初次加载完成，不持有配置中心的锁）
+     * <p>
+     * 初次加载失败时抛出异常并关闭该分片的缓存，之后订阅该分片中的配置项时重新启动；订阅关系仍然保留。
+     *
+     * @param listener 之后的变化的监听器，可以为 null
+     * @return 当前值，配置项不存在时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T subscribe(ConfigKey<T> key, Listener<T> listener) throws Exception {
+        String path = path(key);
+        Subscription<T> subscription;
+        Shard shard;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("closed");
+            }
+            subscription = (Subscription<T>) subscriptions.get(key.getName());
+            if (subscription == null) {
+                subscription = new Subscription<>(key);
+                subscriptions.put(key.getName(), subscription);
+            }
+            if (listener != null) {
+                subscription.listeners.add(listener);
+            }
+            shard = shard(bucket(key.getName()));
+        }
+        try {
+            shard.start();
+        } catch (Exception e) {
+            synchronized (this) {
+                if (shards.get(shard.bucket) == shard) {
+                    shards.remove(shard.bucket);
+                }
+            }
+            CloseableUtils.closeQuietly(shard.cache);
+            throw e;
+        }
+        // 初次加载不发出事件，之后的变化由分片的监听器处理（按 mzxid 忽略旧数据）
+        ChildData data = shard.cache.getCurrentData(path);
+        if (data != null) {
+            subscription.update(data, false);
+        }
+        return subscription.get();
+    }
+
+    /**
+     * 订阅的配置项的当前值（本地缓存，不访问服务端）
+     *
+     * @return 配置项不存在时为 null
+     * @throws IllegalStateException 没有订阅该配置项
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ConfigKey<T> key) {
+        Subscription<T> subscription = (Subscription<T>) subscriptions.get(key.getName());
+        if (subscription == null) {
+            throw new IllegalStateException("not subscribed: " + key.getName());
+        }
+        return subscription.get();
+    }
+
+    /**
+     * 配置项所在的节点路径
+     */
+    public String path(ConfigKey<?> key) {
+        return ZKPaths.makePath(shardPath(bucket(key.getName())), key.getName());
+    }
+
+    public synchronized int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * 已监听的分片数
+     */
+    public synchronized int getWatchedShards() {
+        return shards.size();
+    }
+
+    @Override
+    public void close() {
+        List<Shard> closing;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closing = new ArrayList<>(shards.values());
+            shards.clear();
+        }
+        for (Shard shard : closing) {
+            CloseableUtils.closeQuietly(shard.cache);
+        }
+    }
+
+    private synchronized int bucket(String name) {
+        if (!started) {
+            throw new IllegalStateException("not started");
+        }
+        int h = name.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % buckets;
+    }
+
+    private String shardPath(int bucket) {
+        return ZKPaths.makePath(basePath, SHARD_PREFIX + bucket);
+    }
+
+    /**
+     * 分片，不存在时创建（调用方持有锁，缓存由调用方在锁外启动）
+     */
+    private Shard shard(int bucket) {
+        Shard shard = shards.get(bucket);
+        if (shard != null) {
+            return shard;
+        }
+        ParallelPathChildrenCache cache = new ParallelPathChildrenCache(client, shardPath(bucket), true);
+        cache.getListenable().addListener(new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+                if (event.getData() == null) {
+                    // 连接状态事件
+                    return;
+                }
+                Subscription<?> subscription = subscriptions.get(ZKPaths.getNodeFromPath(event.getData().getPath()));
+                if (subscription == null) {
+                    // 同一分片中未订阅的配置项
+                    return;
+                }
+                if (PathChildrenCacheEvent.Type.CHILD_ADDED.equals(event.getType())
+                        || PathChildrenCacheEvent.Type.CHILD_UPDATED.equals(event.getType())) {
+                    subscription.update(event.getData(), true);
+                } else if (PathChildrenCacheEvent.Type.CHILD_REMOVED.equals(event.getType())) {
+                    subscription.removed();
+                }
+            }
+        });
+        shard = new Shard(bucket, cache);
+        shards.put(bucket, shard);
+        return shard;
+    }
+
+    /**
+     * 一个分片的缓存，第一次订阅其中的配置项时启动
+     */
+    private class Shard {
+
+        private final int bucket;
+        private final ParallelPathChildrenCache cache;
+        private boolean started;
+        private Exception failure;
+
+        Shard(int bucket, ParallelPathChildrenCache cache) {
+            this.bucket = bucket;
+            this.cache = cache;
+        }
+
+        /**
+         * 启动缓存并阻塞直到初次加载完成，同一分片的其他订阅者等待第一个订阅者的结果
+         */
+        synchronized void start() throws Exception {
+            if (failure != null) {
+                throw failure;
+            }
+            if (started) {
+                return;
+            }
+            try {
+                cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            } catch (Exception e) {
+                failure = e;
+                throw e;
+            }
+            started = true;
+            log.info("watch shard {} of {}", shardPath(bucket), getBuckets());
+        }
+    }
+
+    /**
+     * 一个订阅的配置项: 解码后的值及其 mzxid
+     */
+    private static class Subscription<T> {
+
+        private final ConfigKey<T> key;
+        private final List<Listener<T>> listeners = new CopyOnWriteArrayList<>();
+        private long mzxid = -1;
+        private T value;
+
+        Subscription(ConfigKey<T> key) {
+            this.key = key;
+        }
+
+        synchronized T get() {
+            return value;
+        }
+
+        synchronized void update(ChildData data, boolean notify) {
+            long dataMzxid = data.getStat() == null ? 0 : data.getStat().getMzxid();
+            if (dataMzxid <= mzxid) {
+                return;
+            }
+            mzxid = dataMzxid;
+            try {
+                value = key.getCodec().decode(data.getData());
+            } catch (IllegalArgumentException e) {
+                log.warn("decode " + data.getPath() + " failure, keep the previous value: " + e.getMessage());
+                return;
+            }
+            if (notify) {
+                notifyListeners();
+            }
+        }
+
+        synchronized void removed() {
+            if (value == null) {
+                return;
+            }
+            value = null;
+            notifyListeners();
+        }
+
+        private void notifyListeners() {
+            for (Listener<T> listener : listeners) {
+                try {
+                    listener.changed(key, value);
+                } catch (Exception e) {
+                    log.error("config listener failure: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+}
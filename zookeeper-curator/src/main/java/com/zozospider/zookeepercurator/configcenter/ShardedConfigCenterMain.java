@@ -0,0 +1,182 @@
+package com.zozospider.zookeepercurator.configcenter;
+
+import com.zozospider.zookeepercurator.metrics.OpMetricsTracerDriver;
+import com.zozospider.zookeeperjavaclient.zk.metrics.LatencyHistogram;
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.client.FourLetterWordMain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在本地 TestingServer 上对比所有配置项放在一个目录（分片数为 1，相当于 Client1 的 CONFIG_PATH）与分片存放时，
+ * 只订阅少量配置项的客户端的初次加载和监听开销
+ * <p>
+ * 每种布局先由发布方写入 keys 个配置项，订阅方（新的客户端）订阅其中均匀分布的 subscribed 个，
+ * 统计订阅耗时、监听的分片数和列出的子节点数、服务端的 Watcher 数（四字命令 wchs）；
+ * 之后发布方随机修改 updates 次任意配置项，统计订阅方因 Watcher 触发而发出的 getData 数、收到的通知数和订阅的配置项从修改到通知的延迟。
+ * <p>
+ * 参数: [配置项数] [订阅数] [修改次数] [值字节数] [分片数列表，逗号分隔]
+ */
+public class ShardedConfigCenterMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ShardedConfigCenterMain.class);
+
+    private static final Pattern TOTAL_WATCHES = Pattern.compile("Total watches:(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int subscribed = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int updates = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int valueSize = args.length > 3 ? Integer.parseInt(args[3]) : 128;
+        String bucketList = args.length > 4 ? args[4] : "1,64,256";
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            CuratorFramework publisher = newClient(server.getConnectString());
+            try {
+                for (String buckets : bucketList.split(",")) {
+                    run(server, publisher, keys, subscribed, updates, valueSize, Integer.parseInt(buckets.trim()));
+                }
+            } finally {
+                CloseableUtils.closeQuietly(publisher);
+            }
+        }
+    }
+
+    private static void run(TestingServer server, CuratorFramework publisher, int keys, int subscribed, int updates,
+                            int valueSize, int buckets) throws Exception {
+
+        String basePath = "/config-center-" + buckets;
+        ShardedConfigCenter publishCenter = new ShardedConfigCenter(publisher, basePath, buckets);
+        publishCenter.start();
+        List<ConfigKey<String>> all = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            ConfigKey<String> key = ConfigKey.stringKey("key-" + i);
+            all.add(key);
+            publishCenter.put(key, value(0, valueSize));
+        }
+
+        CuratorFramework client = newClient(server.getConnectString());
+        OpMetrics metrics = new OpMetrics();
+        client.getZookeeperClient().setTracerDriver(new OpMetricsTracerDriver(metrics));
+        ShardedConfigCenter center = new ShardedConfigCenter(client, basePath);
+        try {
+            center.start();
+            final LatencyHistogram latencyMicros = new LatencyHistogram();
+            final AtomicLong notified = new AtomicLong();
+            ShardedConfigCenter.Listener<String> listener = new ShardedConfigCenter.Listener<String>() {
+                @Override
+                public void changed(ConfigKey<String> key, String value) {
+                    long sent = Long.parseLong(value.substring(0, value.indexOf(' ')));
+                    latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+                    notified.incrementAndGet();
+                }
+            };
+            boolean[] isSubscribed = new boolean[keys];
+            long begin = System.nanoTime();
+            for (int i = 0; i < subscribed; i++) {
+                int index = (int) ((long) i * keys / subscribed);
+                isSubscribed[index] = true;
+                center.subscribe(all.get(index), listener);
+            }
+            long subscribeMs = (System.nanoTime() - begin) / 1000000;
+            int listed = 0;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                String shard = basePath + "/shard-" + bucket;
+                if (publisher.checkExists().forPath(shard) != null && watched(center, all, shard)) {
+                    listed += publisher.getChildren().forPath(shard).size();
+                }
+            }
+            long initialGetData = metrics.getHistogram(OpMetrics.Op.GET_DATA).getCount();
+            log.info("{} buckets: subscribed {} of {} keys in {} ms, {} shards watched, {} children listed, {} getData, server watches {}",
+                    buckets, subscribed, keys, subscribeMs, center.getWatchedShards(), listed, initialGetData, watches(server));
+
+            Random random = new Random(1);
+            int expected = 0;
+            for (int seq = 1; seq <= updates; seq++) {
+                int index = random.nextInt(keys);
+                if (isSubscribed[index]) {
+                    expected++;
+                }
+                publishCenter.put(all.get(index), value(System.nanoTime(), valueSize));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (notified.get() < expected && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // 等待其余 Watcher 触发的读取完成
+            Thread.sleep(500);
+            long getData = metrics.getHistogram(OpMetrics.Op.GET_DATA).getCount() - initialGetData;
+            log.info("{} buckets: {} updates, {} getData triggered by watches, {} of {} expected notifications, latency p50 {} us, p99 {} us, max {} us",
+                    buckets, updates, getData, notified.get(), expected, latencyMicros.getQuantile(0.5),
+                    latencyMicros.getQuantile(0.99), latencyMicros.getMax());
+        } finally {
+            CloseableUtils.closeQuietly(center);
+            CloseableUtils.closeQuietly(client);
+        }
+    }
+
+    /**
+     * 分片中是否有订阅的配置项
+     */
+    private static boolean watched(ShardedConfigCenter center, List<ConfigKey<String>> all, String shard) {
+        for (ConfigKey<String> key : all) {
+            if (center.path(key).startsWith(shard + "/")) {
+                try {
+                    center.get(key);
+                    return true;
+                } catch (IllegalStateException e) {
+                    // 未订阅
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 服务端的 Watcher 总数（四字命令 wchs）
+     */
+    private static String watches(TestingServer server) {
+        try {
+            String result = FourLetterWordMain.send4LetterWord("127.0.0.1", server.getPort(), "wchs");
+            Matcher matcher = TOTAL_WATCHES.matcher(result);
+            return matcher.find() ? matcher.group(1) : result.trim();
+        } catch (Exception e) {
+            return "unknown (" + e.getMessage() + ")";
+        }
+    }
+
+    private static String value(long sent, int size) {
+        char[] padding = new char[size];
+        Arrays.fill(padding, 'x');
+        return sent + " " + new String(padding);
+    }
+
+    private static CuratorFramework newClient(String connectString) throws InterruptedException {
+        CuratorFramework client = CuratorFrameworkFactory.builder()
+                .connectString(connectString)
+                .retryPolicy(new RetryNTimes(3, 1000))
+                .namespace("namespace")
+                .build();
+        client.start();
+        client.blockUntilConnected();
+        return client;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.zozospider.zookeepercurator.configcenter.codec;
+
+import com.zozospider.zookeepercurator.configcenter.RedisConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按数据的首字节自动选择解码方式，便于发布方逐步切换格式
+ * <p>
+ * 首字节为 BinaryConfigCodec.MAGIC 时按二进制解码，否则用 JsonBytesConfigCodec 解码，
+ * 其无法解析时（如非常规的 JSON 写法）再交给 fastjson。编码使用构造时指定的 codec。
+ */
+public class AutoConfigCodec implements ConfigCodec {
+
+    private final static Logger log = LoggerFactory.getLogger(AutoConfigCodec.class);
+
+    private final ConfigCodec encoder;
+    private final BinaryConfigCodec binary = new BinaryConfigCodec();
+    private final JsonBytesConfigCodec json = new JsonBytesConfigCodec();
+    private final FastjsonConfigCodec fastjson = new FastjsonConfigCodec();
+
+    /**
+     * 编码为 JSON（其他客户端可以照常解析）
+     */
+    public AutoConfigCodec() {
+        this(new JsonBytesConfigCodec());
+    }
+
+    /**
+     * @param encoder 编码使用的 codec
+     */
+    public AutoConfigCodec(ConfigCodec encoder) {
+        this.encoder = encoder;
+    }
+
+    @Override
+    public String getName() {
+        return "auto(" + encoder.getName() + ")";
+    }
+
+    @Override
+    public byte[] encode(RedisConfig config) {
+        return encoder.encode(config);
+    }
+
+    @Override
+    public RedisConfig decode(byte[] data) {
+        if (data.length > 0 && data[0] == BinaryConfigCodec.MAGIC) {
+            return binary.decode(data);
+        }
+        try {
+            return json.decode(data);
+        } catch (IllegalArgumentException e) {
+            log.debug("decode with {} failure ({}), fall back to {}", json.getName(), e.getMessage(), fastjson.getName());
+            return fastjson.decode(data);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.zozospider.zookeepercurator.configcenter.codec;
+
+import com.zozospider.zookeepercurator.configcenter.RedisConfig;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑的二进制编解码
+ * <p>
+ * 格式: MAGIC (1 字节), FORMAT_VERSION (1 字节), id (zigzag varint), type (1 字节: 0 null / 1 add / 2 update / 3 delete / 4 其他，其他时后跟字符串),
+ * url (字符串), remark (字符串)，FORMAT_VERSION 为 2 时之后还有 hash (字符串)。字符串为 varint 长度加一（0 表示 null）后跟 UTF-8 字节。
+ * 没有 hash 时仍编码为版本 1，只支持版本 1 的客户端可以照常解码。
+ * MAGIC 不是 JSON 的合法首字节，AutoConfigCodec 据此区分二进制和 JSON。
+ * <p>
+ * type 解码为字符串常量，不分配对象；url、remark 直接从 byte[] 解码。
+ */
+public class BinaryConfigCodec implements ConfigCodec {
+
+    static final byte MAGIC = (byte) 0xC5;
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte FORMAT_VERSION_HASH = 2;
+
+    private static final String[] TYPES = {null, "add", "update", "delete"};
+    private static final int OTHER_TYPE = 4;
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] encode(RedisConfig config) {
+        byte[] url = utf8(config.getUrl());
+        byte[] remark = utf8(config.getRemark());
+        byte[] hash = utf8(config.getHash());
+        int typeCode = typeCode(config.getType());
+        byte[] type = typeCode == OTHER_TYPE ? utf8(config.getType()) : null;
+        int size = 2 + 5 + 1 + (type == null ? 0 : 5 + type.length)
+                + 5 + (url == null ? 0 : url.length) + 5 + (remark == null ? 0 : remark.length)
+                + (hash == null ? 0 : 5 + hash.length);
+        byte[] buffer = new byte[size];
+        int pos = 0;
+        buffer[pos++] = MAGIC;
+        buffer[pos++] = hash == null ? FORMAT_VERSION : FORMAT_VERSION_HASH;
+        int id = config.getId();
+        pos = writeVarint(buffer, pos, (id << 1) ^ (id >> 31));
+        buffer[pos++] = (byte) typeCode;
+        if (type != null) {
+            pos = writeString(buffer, pos, type);
+        }
+        pos = writeString(buffer, pos, url);
+        pos = writeString(buffer, pos, remark);
+        if (hash != null) {
+            pos = writeString(buffer, pos, hash);
+        }
+        byte[] result = new byte[pos];
+        System.arraycopy(buffer, 0, result, 0, pos);
+        return result;
+    }
+
+    @Override
+    public RedisConfig decode(byte[] data) {
+        if (data.length < 2 || data[0] != MAGIC) {
+            throw new IllegalArgumentException("not a binary config");
+        }
+        if (data[1] != FORMAT_VERSION && data[1] != FORMAT_VERSION_HASH) {
+            throw new IllegalArgumentException("unknown format version: " + data[1]);
+        }
+        Reader reader = new Reader(data, 2);
+        RedisConfig config = new RedisConfig();
+        int zigzag = reader.varint();
+        config.setId((zigzag >>> 1) ^ -(zigzag & 1));
+        int typeCode = reader.next();
+        if (typeCode == OTHER_TYPE) {
+            config.setType(reader.string());
+        } else if (typeCode >= 0 && typeCode < TYPES.length) {
+            config.setType(TYPES[typeCode]);
+        } else {
+            throw new IllegalArgumentException("unknown type code: " + typeCode);
+        }
+        config.setUrl(reader.string());
+        config.setRemark(reader.string());
+        if (data[1] == FORMAT_VERSION_HASH) {
+            config.setHash(reader.string());
+        }
+        return config;
+    }
+
+    private static int typeCode(String type) {
+        if (type == null) {
+            return 0;
+        }
+        for (int i = 1; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        return OTHER_TYPE;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int writeString(byte[] buffer, int pos, byte[] value) {
+        if (value == null) {
+            return writeVarint(buffer, pos, 0);
+        }
+        pos = writeVarint(buffer, pos, value.length + 1);
+        System.arraycopy(value, 0, buffer, pos, value.length);
+        return pos + value.length;
+    }
+
+    private static int writeVarint(byte[] buffer, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static class Reader {
+
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        int next() {
+            if (pos >= data.length) {
+                throw new IllegalArgumentException("unexpected end of data");
+            }
+            return data[pos++] & 0xFF;
+        }
+
+        int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = next();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint at " + pos);
+        }
+
+        String string() {
+            int length = varint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > data.length - pos) {
+                throw new IllegalArgumentException("unexpected end of data");
+            }
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.zozospider.zookeepercurator.configcenter.codec;
+
+import com.zozospider.zookeepercurator.configcenter.RedisConfig;
+
+/**
+ * 配置节点数据的编解码
+ * <p>
+ * 实现应当无状态、线程安全，可在多个线程上共用一个实例。
+ */
+public interface ConfigCodec {
+
+    /**
+     * 名称（用于日志和对比测试）
+     */
+    String getName();
+
+    byte[] encode(RedisConfig config);
+
+    /**
+     * @throws IllegalArgumentException 数据格式错误
+     */
+    RedisConfig decode(byte[] data);
+
+}
@@ -0,0 +1,126 @@
+package com.zozospider.zookeepercurator.configcenter.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.zozospider.zookeepercurator.configcenter.RedisConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比 fastjson、JsonBytesConfigCodec、BinaryConfigCodec 编解码 RedisConfig 的耗时、分配的字节数和编码后的大小
+ * <p>
+ * small 为 RedisConfig 注释中的示例数据，large 的 remark 约 remarkKb KB（含中文、引号和换行），并带有 hash。
+ * 先检查各 codec 解码结果一致、json-bytes 的编码结果与 fastjson 相同，再逐项预热、计时（单线程）。
+ * <p>
+ * 参数: [每项计时秒数] [large 的 remark KB 数]
+ */
+public class ConfigCodecMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ConfigCodecMain.class);
+
+    private static final String SMALL = "{\"id\":\"1\",\"type\":\"add\",\"url\":\"ftp://192.168.10.123/config/redis.xml\",\"remark\":\"add\"}";
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int remarkKb = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        RedisConfig small = JSON.parseObject(SMALL, RedisConfig.class);
+        RedisConfig large = JSON.parseObject(SMALL, RedisConfig.class);
+        StringBuilder remark = new StringBuilder();
+        while (remark.length() < remarkKb * 1024) {
+            remark.append("maxmemory 2gb; 备注 \"slave\" of 192.168.10.").append(remark.length() % 255).append('\n');
+        }
+        large.setRemark(remark.toString());
+        large.setHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+
+        ConfigCodec[] codecs = {new FastjsonConfigCodec(), new JsonBytesConfigCodec(), new BinaryConfigCodec()};
+        check(codecs, small, SMALL.getBytes(StandardCharsets.UTF_8));
+        check(codecs, large, null);
+
+        for (String name : new String[]{"small", "large"}) {
+            RedisConfig config = "small".equals(name) ? small : large;
+            for (final ConfigCodec codec : codecs) {
+                final byte[] data = "small".equals(name) && !(codec instanceof BinaryConfigCodec)
+                        ? SMALL.getBytes(StandardCharsets.UTF_8) : codec.encode(config);
+                final RedisConfig value = config;
+                Runnable decode = new Runnable() {
+                    @Override
+                    public void run() {
+                        sink = codec.decode(data);
+                    }
+                };
+                Runnable encode = new Runnable() {
+                    @Override
+                    public void run() {
+                        sink = codec.encode(value);
+                    }
+                };
+                measure(decode, 1);
+                measure(encode, 1);
+                double[] decodeResult = measure(decode, seconds);
+                double[] encodeResult = measure(encode, seconds);
+                log.info("{} {}: {} bytes, decode {} ns/op {} B/op, encode {} ns/op {} B/op", name, codec.getName(), data.length,
+                        format(decodeResult[0]), format(decodeResult[1]), format(encodeResult[0]), format(encodeResult[1]));
+            }
+        }
+    }
+
+    /**
+     * 检查各 codec 解码结果一致、json-bytes 编码结果与 fastjson 相同
+     *
+     * @param json 原始 JSON（为 null 时用 fastjson 编码的结果）
+     */
+    private static void check(ConfigCodec[] codecs, RedisConfig expected, byte[] json) {
+        byte[] fastjson = codecs[0].encode(expected);
+        byte[] jsonBytes = codecs[1].encode(expected);
+        if (!Arrays.equals(fastjson, jsonBytes)) {
+            throw new IllegalStateException("json-bytes encoding differs from fastjson");
+        }
+        for (ConfigCodec codec : codecs) {
+            byte[] data = codec instanceof BinaryConfigCodec ? codec.encode(expected) : json != null ? json : fastjson;
+            RedisConfig decoded = codec.decode(data);
+            if (decoded.getId() != expected.getId() || !equals(decoded.getType(), expected.getType())
+                    || !equals(decoded.getUrl(), expected.getUrl()) || !equals(decoded.getHash(), expected.getHash())
+                    || !equals(decoded.getRemark(), expected.getRemark())) {
+                throw new IllegalStateException(codec.getName() + " decoded " + decoded + ", expected " + expected);
+            }
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * @return {每次耗时纳秒, 每次分配字节数}
+     */
+    private static double[] measure(Runnable op, int seconds) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(tid);
+        long begin = System.nanoTime();
+        long count = 0;
+        do {
+            for (int i = 0; i < 256; i++) {
+                op.run();
+            }
+            count += 256;
+        } while (System.nanoTime() < end);
+        long elapsed = System.nanoTime() - begin;
+        long allocated = threadMXBean.getThreadAllocatedBytes(tid) - allocatedBefore;
+        return new double[]{(double) elapsed / count, (double) allocated / count};
+    }
+
+    private static String format(double value) {
+        return String.format("%.0f", value);
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.zozospider.zookeepercurator.configcenter.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.zozospider.zookeepercurator.configcenter.RedisConfig;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * fastjson 编解码（与原来 Client1 的方式相同: 先转为 String 再通过反射解析，字符集固定为 UTF-8，不依赖平台默认字符集）
+ */
+public class FastjsonConfigCodec implements ConfigCodec {
+
+    @Override
+    public String getName() {
+        return "fastjson";
+    }
+
+    @Override
+    public byte[] encode(RedisConfig config) {
+        return JSON.toJSONString(config).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public RedisConfig decode(byte[] data) {
+        try {
+            return JSON.parseObject(new String(data, StandardCharsets.UTF_8), RedisConfig.class);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+}
@@ -0,0 +1,487 @@
+package com.zozospider.zookeepercurator.configcenter.codec;
+
+import com.zozospider.zookeepercurator.configcenter.RedisConfig;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 直接在 byte[] 上读写的 JSON 编解码
+ * <p>
+ * 只处理 RedisConfig 这一种扁平对象: 按字段名字节比较识别 id / type / url / hash / remark，不先转为 String，不使用反射；
+ * 其他字段（包括嵌套的对象和数组）被跳过。字符串没有转义时直接从 byte[] 按 UTF-8 解码，type 为 add / update / delete 时使用常量。
+ * 与 fastjson 一样，id 也可以写成字符串（如 "id":"1"），null 值保持默认值。
+ * <p>
+ * 编码结果与 fastjson 的 JSON.toJSONString 相同（字段按名称排序，null 字段省略），其他客户端可以照常解析。
+ */
+public class JsonBytesConfigCodec implements ConfigCodec {
+
+    private static final byte[] ID = "id".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TYPE = "type".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] URL = "url".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HASH = "hash".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REMARK = "remark".getBytes(StandardCharsets.UTF_8);
+
+    private static final String[] TYPES = {"add", "update", "delete"};
+    private static final byte[][] TYPE_BYTES = {
+            "add".getBytes(StandardCharsets.UTF_8), "update".getBytes(StandardCharsets.UTF_8), "delete".getBytes(StandardCharsets.UTF_8)};
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public String getName() {
+        return "json-bytes";
+    }
+
+    // ---------------------------------------------------------------- 编码
+
+    @Override
+    public byte[] encode(RedisConfig config) {
+        Writer writer = new Writer(64 + length(config.getUrl()) + length(config.getHash()) + length(config.getRemark()));
+        writer.write('{');
+        if (config.getHash() != null) {
+            writer.ascii("\"hash\":");
+            writer.string(config.getHash());
+            writer.write(',');
+        }
+        writer.ascii("\"id\":");
+        writer.ascii(String.valueOf(config.getId()));
+        if (config.getRemark() != null) {
+            writer.ascii(",\"remark\":");
+            writer.string(config.getRemark());
+        }
+        if (config.getType() != null) {
+            writer.ascii(",\"type\":");
+            writer.string(config.getType());
+        }
+        if (config.getUrl() != null) {
+            writer.ascii(",\"url\":");
+            writer.string(config.getUrl());
+        }
+        writer.write('}');
+        return writer.toByteArray();
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length() * 3 / 2;
+    }
+
+    private static class Writer {
+
+        private byte[] buffer;
+        private int size;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(int b) {
+            ensure(1);
+            buffer[size++] = (byte) b;
+        }
+
+        void ascii(String value) {
+            ensure(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                buffer[size++] = (byte) value.charAt(i);
+            }
+        }
+
+        void string(String value) {
+            // 每个字符最多 3 个字节（代理对 2 个字符 4 个字节）；转义最多 6 个字节，转义后再为剩余字符预留空间
+            ensure(value.length() * 3 + 2);
+            buffer[size++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c == '"' || c == '\\' || c < 0x20) {
+                        escape(c);
+                        ensure((value.length() - i) * 3 + 1);
+                    } else {
+                        buffer[size++] = (byte) c;
+                    }
+                } else if (c < 0x800) {
+                    buffer[size++] = (byte) (0xC0 | (c >> 6));
+                    buffer[size++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // 不成对的代理字符，与 String.getBytes(UTF_8) 一样写为 '?'
+                    buffer[size++] = '?';
+                } else {
+                    buffer[size++] = (byte) (0xE0 | (c >> 12));
+                    buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            buffer[size++] = '"';
+        }
+
+        private void escape(char c) {
+            write('\\');
+            switch (c) {
+                case '"':
+                    write('"');
+                    break;
+                case '\\':
+                    write('\\');
+                    break;
+                case '\n':
+                    write('n');
+                    break;
+                case '\r':
+                    write('r');
+                    break;
+                case '\t':
+                    write('t');
+                    break;
+                case '\b':
+                    write('b');
+                    break;
+                case '\f':
+                    write('f');
+                    break;
+                default:
+                    write('u');
+                    write('0');
+                    write('0');
+                    write(HEX[c >> 4]);
+                    write(HEX[c & 0xF]);
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, size + extra)];
+                System.arraycopy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (size == buffer.length) {
+                return buffer;
+            }
+            byte[] result = new byte[size];
+            System.arraycopy(buffer, 0, result, 0, size);
+            return result;
+        }
+    }
+
+    // ---------------------------------------------------------------- 解码
+
+    @Override
+    public RedisConfig decode(byte[] data) {
+        Reader reader = new Reader(data);
+        RedisConfig config = new RedisConfig();
+        reader.skipWhitespace();
+        if (reader.peek() == 'n' && reader.literal("null")) {
+            return null;
+        }
+        reader.expect('{');
+        reader.skipWhitespace();
+        if (reader.peek() == '}') {
+            return config;
+        }
+        while (true) {
+            reader.skipWhitespace();
+            reader.expect('"');
+            int keyStart = reader.pos;
+            int keyEnd = reader.skipString();
+            reader.skipWhitespace();
+            reader.expect(':');
+            reader.skipWhitespace();
+            if (reader.match(keyStart, keyEnd, ID)) {
+                reader.readId(config);
+            } else if (reader.match(keyStart, keyEnd, TYPE)) {
+                config.setType(reader.readType());
+            } else if (reader.match(keyStart, keyEnd, URL)) {
+                config.setUrl(reader.readString());
+            } else if (reader.match(keyStart, keyEnd, HASH)) {
+                config.setHash(reader.readString());
+            } else if (reader.match(keyStart, keyEnd, REMARK)) {
+                config.setRemark(reader.readString());
+            } else {
+                reader.skipValue();
+            }
+            reader.skipWhitespace();
+            int c = reader.next();
+            if (c == '}') {
+                return config;
+            }
+            if (c != ',') {
+                throw reader.error("expected ',' or '}'");
+            }
+        }
+    }
+
+    private static class Reader {
+
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos);
+        }
+
+        int peek() {
+            if (pos >= data.length) {
+                throw error("unexpected end of json");
+            }
+            return data[pos];
+        }
+
+        int next() {
+            int c = peek();
+            pos++;
+            return c;
+        }
+
+        void expect(char c) {
+            if (next() != c) {
+                pos--;
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < data.length) {
+                byte c = data[pos];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        /**
+         * 读取字面量（null / true / false），匹配时前进
+         */
+        boolean literal(String value) {
+            if (pos + value.length() > data.length) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (data[pos + i] != value.charAt(i)) {
+                    return false;
+                }
+            }
+            pos += value.length();
+            return true;
+        }
+
+        boolean match(int start, int end, byte[] name) {
+            if (end - start != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (data[start + i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 跳过字符串剩余部分（开头的引号已读取）
+         *
+         * @return 结束引号的位置
+         */
+        int skipString() {
+            while (true) {
+                int c = next();
+                if (c == '"') {
+                    return pos - 1;
+                }
+                if (c == '\\') {
+                    next();
+                }
+            }
+        }
+
+        void readId(RedisConfig config) {
+            int c = peek();
+            if (c == 'n' && literal("null")) {
+                return;
+            }
+            boolean quoted = c == '"';
+            if (quoted) {
+                pos++;
+            }
+            boolean negative = false;
+            if (peek() == '-') {
+                negative = true;
+                pos++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (pos < data.length && data[pos] >= '0' && data[pos] <= '9') {
+                value = value * 10 + (data[pos++] - '0');
+                if (value > Integer.MAX_VALUE + 1L) {
+                    throw error("id out of range");
+                }
+                digits++;
+            }
+            if (digits == 0) {
+                throw error("expected number");
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                throw error("id out of range");
+            }
+            if (quoted) {
+                expect('"');
+            }
+            config.setId((int) value);
+        }
+
+        String readType() {
+            if (peek() == 'n' && literal("null")) {
+                return null;
+            }
+            expect('"');
+            int start = pos;
+            int end = skipString();
+            for (int i = 0; i < TYPES.length; i++) {
+                if (match(start, end, TYPE_BYTES[i])) {
+                    return TYPES[i];
+                }
+            }
+            return decode(start, end);
+        }
+
+        String readString() {
+            if (peek() == 'n' && literal("null")) {
+                return null;
+            }
+            expect('"');
+            int start = pos;
+            int end = skipString();
+            return decode(start, end);
+        }
+
+        /**
+         * 解码 [start, end) 之间的字符串内容，没有转义时直接按 UTF-8 解码，有转义时一次遍历解码到 char[]
+         */
+        private String decode(int start, int end) {
+            int escape = -1;
+            for (int i = start; i < end; i++) {
+                if (data[i] == '\\') {
+                    escape = i;
+                    break;
+                }
+            }
+            if (escape < 0) {
+                return new String(data, start, end - start, StandardCharsets.UTF_8);
+            }
+            // 字符数不超过字节数
+            char[] chars = new char[end - start];
+            int n = 0;
+            int i = start;
+            while (i < end) {
+                int b = data[i];
+                if (b == '\\') {
+                    int c = data[i + 1];
+                    i += 2;
+                    switch (c) {
+                        case '"':
+                        case '\\':
+                        case '/':
+                            chars[n++] = (char) c;
+                            break;
+                        case 'n':
+                            chars[n++] = '\n';
+                            break;
+                        case 'r':
+                            chars[n++] = '\r';
+                            break;
+                        case 't':
+                            chars[n++] = '\t';
+                            break;
+                        case 'b':
+                            chars[n++] = '\b';
+                            break;
+                        case 'f':
+                            chars[n++] = '\f';
+                            break;
+                        case 'u':
+                            if (i + 4 > end) {
+                                throw error("malformed unicode escape");
+                            }
+                            chars[n++] = (char) ((hex(data[i]) << 12) | (hex(data[i + 1]) << 8) | (hex(data[i + 2]) << 4) | hex(data[i + 3]));
+                            i += 4;
+                            break;
+                        default:
+                            throw error("malformed escape");
+                    }
+                } else if (b >= 0) {
+                    chars[n++] = (char) b;
+                    i++;
+                } else if ((b & 0xE0) == 0xC0 && i + 1 < end) {
+                    chars[n++] = (char) (((b & 0x1F) << 6) | (data[i + 1] & 0x3F));
+                    i += 2;
+                } else if ((b & 0xF0) == 0xE0 && i + 2 < end) {
+                    chars[n++] = (char) (((b & 0x0F) << 12) | ((data[i + 1] & 0x3F) << 6) | (data[i + 2] & 0x3F));
+                    i += 3;
+                } else if ((b & 0xF8) == 0xF0 && i + 3 < end) {
+                    int codePoint = ((b & 0x07) << 18) | ((data[i + 1] & 0x3F) << 12) | ((data[i + 2] & 0x3F) << 6) | (data[i + 3] & 0x3F);
+                    chars[n++] = Character.highSurrogate(codePoint);
+                    chars[n++] = Character.lowSurrogate(codePoint);
+                    i += 4;
+                } else {
+                    throw error("malformed utf-8");
+                }
+            }
+            return new String(chars, 0, n);
+        }
+
+        private int hex(byte b) {
+            int value = Character.digit(b, 16);
+            if (value < 0) {
+                throw error("malformed unicode escape");
+            }
+            return value;
+        }
+
+        void skipValue() {
+            int c = peek();
+            if (c == '"') {
+                pos++;
+                skipString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    c = next();
+                    if (c == '"') {
+                        skipString();
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                } while (depth > 0);
+            } else {
+                // 数字或字面量
+                int start = pos;
+                while (pos < data.length) {
+                    c = data[pos];
+                    if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                        break;
+                    }
+                    pos++;
+                }
+                if (pos == start) {
+                    throw error("expected value");
+                }
+            }
+        }
+    }
+
+}
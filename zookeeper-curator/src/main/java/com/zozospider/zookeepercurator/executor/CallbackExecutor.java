@@ -0,0 +1,231 @@
+package com.zozospider.zookeepercurator.executor;
+
+import com.zozospider.zookeeperjavaclient.zk.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界的后台回调执行器，供 inBackground(callback, executor) 共用
+ * <p>
+ * 同时未完成（排队 + 执行中）的回调数不超过 maxPending，超过时回调直接在提交线程（Curator 的 EventThread 或后台线程）上执行，
+ * 既不会无限堆积，也不会丢弃回调（与不指定 executor 时的行为相同，同时起到背压作用）。
+ * <p>
+ * 默认使用固定数量的平台线程；useVirtualThreads 为 true 且运行在支持虚拟线程的 JDK（21+）上时，
+ * 每个回调在一个新的虚拟线程上执行（通过反射调用 Executors.newVirtualThreadPerTaskExecutor()，不支持时退回平台线程）。
+ * <p>
+ * 统计当前及最大排队数、在提交线程上执行的次数，以及回调的排队等待时间和执行时间（微秒）。
+ */
+public class CallbackExecutor implements Executor, Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(CallbackExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final boolean virtualThreads;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram waitMicros = new LatencyHistogram();
+    private final LatencyHistogram executeMicros = new LatencyHistogram();
+
+    /**
+     * @param name              线程名前缀
+     * @param threads           平台线程数（使用虚拟线程时忽略）
+     * @param maxPending        同时未完成的回调数上限
+     * @param useVirtualThreads 是否优先使用虚拟线程
+     */
+    public CallbackExecutor(final String name, int threads, int maxPending, boolean useVirtualThreads) {
+        if (threads <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("threads: " + threads + ", maxPending: " + maxPending);
+        }
+        ExecutorService virtual = useVirtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.virtualThreads = true;
+        } else {
+            if (useVirtualThreads) {
+                log.info("virtual threads are not available on java {}, use {} platform threads", System.getProperty("java.version"), threads);
+            }
+            this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger index = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name + "-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.virtualThreads = false;
+        }
+        this.pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * 当前 JDK 是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+
+        if (!pending.tryAcquire()) {
+            // 已达上限（或已关闭），在提交线程上执行
+            callerRuns.incrementAndGet();
+            run(command, System.nanoTime());
+            return;
+        }
+        final long submitted = System.nanoTime();
+        int depth = queued.incrementAndGet();
+        updateMaxQueued(depth);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queued.decrementAndGet();
+                    try {
+                        CallbackExecutor.this.run(command, submitted);
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+            queued.decrementAndGet();
+            pending.release();
+            callerRuns.incrementAndGet();
+            run(command, submitted);
+        }
+    }
+
+    private void run(Runnable command, long submitted) {
+        long begin = System.nanoTime();
+        waitMicros.record(TimeUnit.NANOSECONDS.toMicros(begin - submitted));
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            log.error("callback failure: " + e.getMessage(), e);
+        } finally {
+            executeMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+            completed.incrementAndGet();
+        }
+    }
+
+    private void updateMaxQueued(int depth) {
+        int max;
+        while (depth > (max = maxQueued.get())) {
+            if (maxQueued.compareAndSet(max, depth)) {
+                return;
+            }
+        }
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * 当前排队等待执行的回调数
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueued.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * 因达到上限而在提交线程上执行的回调数
+     */
+    public long getCallerRuns() {
+        return callerRuns.get();
+    }
+
+    /**
+     * 抛出异常的回调数
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * 回调的排队等待时间（微秒）
+     */
+    public LatencyHistogram getWaitMicros() {
+        return waitMicros;
+    }
+
+    /**
+     * 回调的执行时间（微秒）
+     */
+    public LatencyHistogram getExecuteMicros() {
+        return executeMicros;
+    }
+
+    /**
+     * 停止接收新回调（之后提交的回调在提交线程上执行），已排队的回调继续执行
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * 关闭（同 close()）并等待已排队的回调执行完成
+     *
+     * @return 超时前全部执行完成时为 true
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "CallbackExecutor{" +
+                "virtualThreads=" + virtualThreads +
+                ", queueDepth=" + queued.get() +
+                ", maxQueueDepth=" + maxQueued.get() +
+                ", completed=" + completed.get() +
+                ", callerRuns=" + callerRuns.get() +
+                ", failures=" + failures.get() +
+                ", waitP99Micros=" + waitMicros.getQuantile(0.99) +
+                ", executeP50Micros=" + executeMicros.getQuantile(0.5) +
+                ", executeP99Micros=" + executeMicros.getQuantile(0.99) +
+                ", executeMaxMicros=" + executeMicros.getMax() +
+                '}';
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.zozospider.zookeepercurator.executor;
+
+import com.zozospider.zookeepercurator.CuratorClient;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.test.TestingServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在本地 TestingServer 上通过 CuratorClient 发起大量后台操作，检查使用共用的 CallbackExecutor 时线程数保持不变
+ * <p>
+ * 先以每次调用新建 Executors.newFixedThreadPool(2) 的方式发起少量操作作为对比（线程数随调用次数增长），
+ * 再通过 CuratorClient.getCallbackExecutor() 发起全部操作，期间每 50ms 采样一次线程数。
+ * <p>
+ * 参数: [后台操作数] [每次新建线程池方式的操作数]
+ * 设置 -Dcurator.callback.virtualThreads=true 在支持的 JDK 上使用虚拟线程。
+ */
+public class CallbackExecutorMain {
+
+    private final static Logger log = LoggerFactory.getLogger(CallbackExecutorMain.class);
+
+    private static final String PATH = "/stress";
+
+    public static void main(String[] args) throws Exception {
+
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int leakOps = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            CuratorClient curatorClient = new CuratorClient();
+            curatorClient.connect(server.getConnectString());
+            CuratorFramework client = curatorClient.client;
+            try {
+                client.create().creatingParentsIfNeeded().forPath(PATH, "data".getBytes());
+                ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+                // 对比: 每次调用新建线程池
+                int threadsBefore = threadMXBean.getThreadCount();
+                List<ExecutorService> pools = new ArrayList<>();
+                final CountDownLatch leakLatch = new CountDownLatch(leakOps);
+                for (int i = 0; i < leakOps; i++) {
+                    ExecutorService pool = Executors.newFixedThreadPool(2);
+                    pools.add(pool);
+                    client.checkExists().inBackground(new BackgroundCallback() {
+                        @Override
+                        public void processResult(CuratorFramework client, CuratorEvent event) {
+                            leakLatch.countDown();
+                        }
+                    }, pool).forPath(PATH);
+                }
+                leakLatch.await();
+                log.info("new pool per call: {} ops, threads {} -> {}", leakOps, threadsBefore, threadMXBean.getThreadCount());
+                for (ExecutorService pool : pools) {
+                    pool.shutdown();
+                }
+                Thread.sleep(1000);
+
+                // 共用的有界执行器
+                CallbackExecutor executor = curatorClient.getCallbackExecutor();
+                threadsBefore = threadMXBean.getThreadCount();
+                final AtomicInteger maxThreads = new AtomicInteger(threadsBefore);
+                final AtomicBoolean sampling = new AtomicBoolean(true);
+                Thread sampler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+                        while (sampling.get()) {
+                            maxThreads.set(Math.max(maxThreads.get(), threadMXBean.getThreadCount()));
+                            try {
+                                Thread.sleep(50);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    }
+                });
+                sampler.setDaemon(true);
+                sampler.start();
+
+                final CountDownLatch latch = new CountDownLatch(ops);
+                final AtomicInteger errors = new AtomicInteger();
+                long begin = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    client.checkExists().inBackground(new BackgroundCallback() {
+                        @Override
+                        public void processResult(CuratorFramework client, CuratorEvent event) {
+                            if (event.getResultCode() != 0) {
+                                errors.incrementAndGet();
+                            }
+                            latch.countDown();
+                        }
+                    }, executor).forPath(PATH);
+                }
+                if (!latch.await(5, TimeUnit.MINUTES)) {
+                    log.error("callbacks not completed: {}", latch.getCount());
+                }
+                long elapsedMs = (System.nanoTime() - begin) / 1000000;
+                sampling.set(false);
+                sampler.join();
+
+                log.info("shared executor (virtual threads: {}): {} ops in {} ms, {} ops/sec, errors: {}, threads {} -> {} (max during run {})",
+                        executor.isVirtualThreads(), ops, elapsedMs, elapsedMs == 0 ? 0 : ops * 1000L / elapsedMs, errors.get(),
+                        threadsBefore, threadMXBean.getThreadCount(), maxThreads.get());
+                log.info("{}", executor);
+            } finally {
+                curatorClient.closeClient();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,366 @@
+package com.zozospider.zookeepercurator.executor;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按路径分通道的监听器事件分发器
+ * <p>
+ * Curator 的各种 cache 在同一个事件线程上依次调用监听器，一个耗时的监听器会推迟所有路径的事件。
+ * 这里把事件按路径的 hash 分到 N 个单线程通道：同一路径的事件始终在同一通道上按顺序处理，不同路径的事件并行处理。
+ * <p>
+ * 没有路径的事件（INITIALIZED、连接状态变化）通过 dispatchAll() 在所有通道之间形成屏障：
+ * 等每个通道都处理完在它之前提交的事件后才调用（在最后到达的通道上调用），调用完成前其他通道停在屏障处，
+ * 不会处理在它之后提交的事件。
+ * <p>
+ * 通道的队列不设上限（有序分发不能丢弃事件，阻塞提交线程又会重新拖慢所有路径），通过各通道的排队数和最大处理时间监控。
+ * 可通过 register() 注册到 JMX。
+ */
+public class LaneDispatcher implements LaneDispatcherMXBean, Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(LaneDispatcher.class);
+
+    public static final String JMX_DOMAIN = "com.zozospider.zookeepercurator";
+
+    private final Lane[] lanes;
+    private final AtomicLong failures = new AtomicLong();
+    /**
+     * 提交事件时持有：一个屏障在所有通道上的提交不能与其他屏障交错（否则各通道上两个屏障的先后不同，互相等待），
+     * 普通事件也不会在一个屏障的提交过程中插入，所有通道看到相同的先后顺序
+     */
+    private final Object submitLock = new Object();
+
+    private volatile ObjectName objectName;
+
+    /**
+     * 单线程通道
+     */
+    private class Lane {
+
+        private final ExecutorService executor;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger maxQueued = new AtomicInteger();
+        private final AtomicLong handled = new AtomicLong();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        private Lane(final String threadName) {
+            this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        /**
+         * @return 已关闭时为 false
+         */
+        private boolean submit(final Runnable command) {
+            int depth = queued.incrementAndGet();
+            int max;
+            while (depth > (max = maxQueued.get()) && !maxQueued.compareAndSet(max, depth)) {
+                // retry
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        queued.decrementAndGet();
+                        long begin = System.nanoTime();
+                        try {
+                            command.run();
+                        } catch (RuntimeException e) {
+                            failures.incrementAndGet();
+                            log.error("listener failure: " + e.getMessage(), e);
+                        } finally {
+                            long latency = System.nanoTime() - begin;
+                            long current;
+                            while (latency > (current = maxLatencyNanos.get())
+                                    && !maxLatencyNanos.compareAndSet(current, latency)) {
+                                // retry
+                            }
+                            handled.incrementAndGet();
+                        }
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                // 已关闭，丢弃
+                queued.decrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param name  线程名前缀
+     * @param lanes 通道数
+     */
+    public LaneDispatcher(String name, int lanes) {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("lanes: " + lanes);
+        }
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(name + "-lane-" + i);
+        }
+    }
+
+    /**
+     * 路径对应的通道序号
+     */
+    public int laneOf(String path) {
+        if (path == null) {
+            return 0;
+        }
+        int h = path.hashCode();
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % lanes.length;
+    }
+
+    /**
+     * 在路径对应的通道上执行
+     */
+    public void dispatch(String path, Runnable command) {
+        Lane lane = lanes[laneOf(path)];
+        synchronized (submitLock) {
+            lane.submit(command);
+        }
+    }
+
+    /**
+     * 等所有通道处理完之前提交的事件后执行，执行完成前所有通道都不处理之后提交的事件（屏障）
+     */
+    public void dispatchAll(final Runnable command) {
+        final AtomicInteger remaining = new AtomicInteger(lanes.length);
+        final CountDownLatch done = new CountDownLatch(1);
+        Runnable barrier = new Runnable() {
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    try {
+                        command.run();
+                    } finally {
+                        done.countDown();
+                    }
+                } else {
+                    Uninterruptibles.awaitUninterruptibly(done);
+                }
+            }
+        };
+        synchronized (submitLock) {
+            for (Lane lane : lanes) {
+                if (!lane.submit(barrier)) {
+                    // 已关闭：不会所有通道都到达，丢弃该事件并放行已到达的通道
+                    done.countDown();
+                    return;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // 监听器包装
+
+    /**
+     * 包装 PathChildrenCacheListener: 子节点事件按子节点路径分发
+     */
+    public PathChildrenCacheListener wrapChildren(final PathChildrenCacheListener listener) {
+        return new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(final CuratorFramework client, final PathChildrenCacheEvent event) {
+                Runnable command = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            listener.childEvent(client, event);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("event: " + event, e);
+                        }
+                    }
+                };
+                if (event.getData() == null) {
+                    dispatchAll(command);
+                } else {
+                    dispatch(event.getData().getPath(), command);
+                }
+            }
+        };
+    }
+
+    /**
+     * 包装 TreeCacheListener: 节点事件按节点路径分发
+     */
+    public TreeCacheListener wrapTree(final TreeCacheListener listener) {
+        return new TreeCacheListener() {
+            @Override
+            public void childEvent(final CuratorFramework client, final TreeCacheEvent event) {
+                Runnable command = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            listener.childEvent(client, event);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("event: " + event, e);
+                        }
+                    }
+                };
+                if (event.getData() == null) {
+                    dispatchAll(command);
+                } else {
+                    dispatch(event.getData().getPath(), command);
+                }
+            }
+        };
+    }
+
+    /**
+     * 包装 NodeCacheListener: NodeCache 只监听一个节点，按该节点路径分发（多个 NodeCache 之间并行）
+     */
+    public NodeCacheListener wrapNode(final String path, final NodeCacheListener listener) {
+        return new NodeCacheListener() {
+            @Override
+            public void nodeChanged() {
+                dispatch(path, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            listener.nodeChanged();
+                        } catch (Exception e) {
+                            throw new IllegalStateException("path: " + path, e);
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    // ------------------------------------------------------------------
+    // 统计
+
+    @Override
+    public int getLanes() {
+        return lanes.length;
+    }
+
+    @Override
+    public int[] getQueueDepths() {
+        int[] result = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            result[i] = lanes[i].queued.get();
+        }
+        return result;
+    }
+
+    @Override
+    public int[] getMaxQueueDepths() {
+        int[] result = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            result[i] = lanes[i].maxQueued.get();
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getHandled() {
+        long[] result = new long[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            result[i] = lanes[i].handled.get();
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getMaxHandlerLatencyMicros() {
+        long[] result = new long[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            result[i] = TimeUnit.NANOSECONDS.toMicros(lanes[i].maxLatencyNanos.get());
+        }
+        return result;
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public void resetMaxima() {
+        for (Lane lane : lanes) {
+            lane.maxQueued.set(lane.queued.get());
+            lane.maxLatencyNanos.set(0);
+        }
+    }
+
+    /**
+     * 注册到 JMX，ObjectName 为 com.zozospider.zookeepercurator:type=LaneDispatcher,name={name}
+     */
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=LaneDispatcher,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            log.warn("register LaneDispatcher " + name + " failure: " + e.getMessage(), e);
+        }
+    }
+
+    public void unregister() {
+        ObjectName current = objectName;
+        if (current == null) {
+            return;
+        }
+        objectName = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(current)) {
+                server.unregisterMBean(current);
+            }
+        } catch (JMException e) {
+            log.warn("unregister LaneDispatcher " + current + " failure: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 停止接收新事件，已排队的事件继续处理
+     */
+    @Override
+    public void close() {
+        unregister();
+        for (Lane lane : lanes) {
+            lane.executor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LaneDispatcher{" +
+                "lanes=" + lanes.length +
+                ", queueDepths=" + Arrays.toString(getQueueDepths()) +
+                ", maxQueueDepths=" + Arrays.toString(getMaxQueueDepths()) +
+                ", handled=" + Arrays.toString(getHandled()) +
+                ", maxHandlerLatencyMicros=" + Arrays.toString(getMaxHandlerLatencyMicros()) +
+                ", failures=" + failures.get() +
+                '}';
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.zozospider.zookeepercurator.executor;
+
+/**
+ * LaneDispatcher 的 JMX 接口（数组按通道序号排列）
+ */
+public interface LaneDispatcherMXBean {
+
+    int getLanes();
+
+    /**
+     * 各通道当前排队的事件数
+     */
+    int[] getQueueDepths();
+
+    /**
+     * 各通道排队事件数的最大值
+     */
+    int[] getMaxQueueDepths();
+
+    /**
+     * 各通道已处理的事件数
+     */
+    long[] getHandled();
+
+    /**
+     * 各通道单个事件处理时间的最大值（微秒）
+     */
+    long[] getMaxHandlerLatencyMicros();
+
+    /**
+     * 处理时抛出异常的事件数
+     */
+    long getFailures();
+
+    /**
+     * 清零各通道的最大排队数和最大处理时间
+     */
+    void resetMaxima();
+
+}
@@ -0,0 +1,196 @@
+package com.zozospider.zookeepercurator.executor;
+
+import com.zozospider.zookeeperjavaclient.zk.metrics.LatencyHistogram;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在本地 TestingServer 上对比 PathChildrenCache 监听器直接调用与通过 LaneDispatcher 分通道调用时的事件延迟
+ * <p>
+ * 每轮修改所有子节点的数据（数据中带有序号和修改时间），其中一个子节点的监听器每个事件耗时 slowMs，
+ * 统计其他子节点从修改到监听器被调用的延迟（分通道时，与慢子节点在同一通道上的子节点单独统计），
+ * 并检查同一子节点的事件是否按序号递增的顺序处理。
+ * 最后由两个线程同时调用 dispatchAll()（多个 cache 在各自的线程上发出连接状态事件时就是这样），检查所有屏障都能执行完。
+ * <p>
+ * 参数: [子节点数] [轮数] [每轮间隔毫秒数] [慢监听器每个事件耗时毫秒数] [通道数]
+ */
+public class LaneDispatcherMain {
+
+    private final static Logger log = LoggerFactory.getLogger(LaneDispatcherMain.class);
+
+    private static final String PATH = "/lanes";
+    private static final String SLOW_PATH = PATH + "/c0";
+
+    public static void main(String[] args) throws Exception {
+
+        int children = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int intervalMs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int slowMs = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int lanes = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryNTimes(3, 1000));
+            client.start();
+            try {
+                client.create().forPath(PATH);
+                for (int i = 0; i < children; i++) {
+                    client.create().forPath(PATH + "/c" + i, data(0));
+                }
+                run(client, null, children, rounds, intervalMs, slowMs);
+                LaneDispatcher dispatcher = new LaneDispatcher("LaneDispatcherMain", lanes);
+                try {
+                    run(client, dispatcher, children, rounds, intervalMs, slowMs);
+                    log.info("{}", dispatcher);
+                } finally {
+                    dispatcher.close();
+                }
+                concurrentBarriers(lanes, rounds);
+            } finally {
+                CloseableUtils.closeQuietly(client);
+            }
+        }
+    }
+
+    private static void run(CuratorFramework client, final LaneDispatcher dispatcher, int children, int rounds, int intervalMs,
+                            final int slowMs) throws Exception {
+
+        final LatencyHistogram fastLatency = new LatencyHistogram();
+        final LatencyHistogram sameLaneLatency = new LatencyHistogram();
+        final Map<String, Long> lastSeq = new ConcurrentHashMap<>();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final AtomicInteger events = new AtomicInteger();
+
+        PathChildrenCacheListener listener = new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+                if (event.getType() != PathChildrenCacheEvent.Type.CHILD_UPDATED) {
+                    return;
+                }
+                String path = event.getData().getPath();
+                String[] fields = new String(event.getData().getData()).split(":");
+                long seq = Long.parseLong(fields[0]);
+                Long previous = lastSeq.put(path, seq);
+                if (previous != null && previous >= seq) {
+                    outOfOrder.incrementAndGet();
+                }
+                events.incrementAndGet();
+                if (SLOW_PATH.equals(path)) {
+                    Thread.sleep(slowMs);
+                } else {
+                    long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - Long.parseLong(fields[1]));
+                    if (dispatcher != null && dispatcher.laneOf(path) == dispatcher.laneOf(SLOW_PATH)) {
+                        sameLaneLatency.record(latency);
+                    } else {
+                        fastLatency.record(latency);
+                    }
+                }
+            }
+        };
+
+        PathChildrenCache cache = new PathChildrenCache(client, PATH, true);
+        cache.getListenable().addListener(dispatcher == null ? listener : dispatcher.wrapChildren(listener));
+        cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        try {
+            long begin = System.nanoTime();
+            for (int round = 1; round <= rounds; round++) {
+                for (int i = 0; i < children; i++) {
+                    client.setData().forPath(PATH + "/c" + i, data(round));
+                }
+                Thread.sleep(intervalMs);
+            }
+            // 等待所有子节点的最后一轮事件处理完
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (System.nanoTime() < deadline && !allAt(lastSeq, children, rounds)) {
+                Thread.sleep(10);
+            }
+            log.info("{}: {} events in {} ms, other paths latency p50 {} ms, p99 {} ms, max {} ms, out of order: {}",
+                    dispatcher == null ? "single event thread" : dispatcher.getLanes() + " lanes",
+                    events.get(), (System.nanoTime() - begin) / 1000000, fastLatency.getQuantile(0.5) / 1000,
+                    fastLatency.getQuantile(0.99) / 1000, fastLatency.getMax() / 1000, outOfOrder.get());
+            if (sameLaneLatency.getCount() > 0) {
+                log.info("{} lanes: paths sharing the slow path's lane latency p50 {} ms, p99 {} ms, max {} ms",
+                        dispatcher.getLanes(), sameLaneLatency.getQuantile(0.5) / 1000,
+                        sameLaneLatency.getQuantile(0.99) / 1000, sameLaneLatency.getMax() / 1000);
+            }
+        } finally {
+            CloseableUtils.closeQuietly(cache);
+        }
+    }
+
+    /**
+     * 两个线程每轮同时调用一次 dispatchAll()，统计限定时间内执行完的屏障数
+     */
+    private static void concurrentBarriers(int lanes, final int rounds) throws Exception {
+        final LaneDispatcher dispatcher = new LaneDispatcher("LaneDispatcherMain-barrier", lanes);
+        final CountDownLatch done = new CountDownLatch(2 * rounds);
+        final CyclicBarrier together = new CyclicBarrier(2);
+        final Runnable command = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+        try {
+            long begin = System.nanoTime();
+            Thread[] threads = new Thread[2];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int round = 0; round < rounds; round++) {
+                                together.await();
+                                dispatcher.dispatchAll(command);
+                            }
+                        } catch (Exception e) {
+                            log.error("dispatchAll failure: " + e.getMessage(), e);
+                        }
+                    }
+                }, "LaneDispatcherMain-barrier-" + t);
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            boolean completed = done.await(10, TimeUnit.SECONDS);
+            log.info("concurrent dispatchAll from 2 threads on {} lanes: {} of {} barriers ran in {} ms{}",
+                    lanes, 2 * rounds - done.getCount(), 2 * rounds, (System.nanoTime() - begin) / 1000000,
+                    completed ? "" : ", lanes stuck");
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    private static boolean allAt(Map<String, Long> lastSeq, int children, long seq) {
+        for (int i = 0; i < children; i++) {
+            Long value = lastSeq.get(PATH + "/c" + i);
+            if (value == null || value < seq) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] data(int seq) {
+        return (seq + ":" + System.nanoTime()).getBytes();
+    }
+
+}
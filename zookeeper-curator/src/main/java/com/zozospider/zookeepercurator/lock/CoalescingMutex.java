@@ -0,0 +1,319 @@
+package com.zozospider.zookeepercurator.lock;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 两级可重入锁: 同一进程内的线程先在本地公平锁上排队，只有本地队首参与 ZooKeeper 上的 InterProcessMutex 竞争
+ * <p>
+ * 每个线程各自使用 InterProcessMutex 时，同一进程内竞争同一路径的每个线程都要创建一个临时顺序节点并设置 Watcher，
+ * 锁每次易主都要删除、创建节点并通知下一个等待者。CoalescingMutex 由同一进程的线程共用:
+ * 持有 ZooKeeper 锁的线程释放时如果本地还有线程在等待，直接把锁交给本地的下一个线程（不删除节点），
+ * 连续交接 maxHandoffs 次后（或本地没有等待者、连接断开时）才释放 ZooKeeper 锁，让其他进程有机会获取。
+ * <p>
+ * 获取 ZooKeeper 锁之后连接中断过（SUSPENDED / LOST）时不再交接：会话可能已过期、节点已被删除，重新连接后 isConnected() 又为 true，
+ * 只检查连接状态会把已经失去的锁继续交给本地线程。此时释放原来的锁，下一个持有者重新获取（与 InterProcessMutex 下次获取时重新创建节点相同）。
+ * <p>
+ * InterProcessMutex 属于获取它的线程，交接后由另一个线程释放会失败，因此 ZooKeeper 锁的获取和释放都在一个专用线程上执行。
+ * 注: 与 InterProcessMutex 一样，持有期间会话过期时节点被删除，其他进程可能同时获取锁；连续交接会延长一次持有的时间。
+ */
+public class CoalescingMutex implements InterProcessLock, Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(CoalescingMutex.class);
+
+    public static final int DEFAULT_MAX_HANDOFFS = 16;
+
+    private final CuratorFramework client;
+    private final InterProcessMutex mutex;
+    private final int maxHandoffs;
+    // 本地公平锁，持有者即当前的锁拥有者
+    private final ReentrantLock local = new ReentrantLock(true);
+    // ZooKeeper 锁的获取和释放都在这个线程上执行
+    private final ExecutorService owner;
+
+    // 以下字段只在持有本地锁时访问
+    private boolean globalHeld;
+    private int handoffs;
+    // 获取 ZooKeeper 锁前的 connectionLosses，不同时不再交接
+    private long heldEpoch;
+
+    // SUSPENDED / LOST 的次数
+    private final AtomicLong connectionLosses = new AtomicLong();
+    private final ConnectionStateListener connectionStateListener = new ConnectionStateListener() {
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            if (newState == ConnectionState.SUSPENDED || newState == ConnectionState.LOST) {
+                connectionLosses.incrementAndGet();
+            }
+        }
+    };
+
+    private final AtomicLong globalAcquires = new AtomicLong();
+    private final AtomicLong localHandoffs = new AtomicLong();
+
+    public CoalescingMutex(CuratorFramework client, String lockPath) {
+        this(client, lockPath, DEFAULT_MAX_HANDOFFS);
+    }
+
+    /**
+     * @param maxHandoffs 获取 ZooKeeper 锁后最多在本地交接的次数（0 表示每次都释放，只合并排队）
+     */
+    public CoalescingMutex(CuratorFramework client, final String lockPath, int maxHandoffs) {
+        if (maxHandoffs < 0) {
+            throw new IllegalArgumentException("maxHandoffs must not be negative: " + maxHandoffs);
+        }
+        this.client = client;
+        this.mutex = new InterProcessMutex(client, lockPath);
+        this.maxHandoffs = maxHandoffs;
+        this.owner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CoalescingMutex-" + lockPath);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        client.getConnectionStateListenable().addListener(connectionStateListener);
+    }
+
+    @Override
+    public void acquire() throws Exception {
+        try {
+            local.lockInterruptibly();
+        } catch (InterruptedException e) {
+            releaseIfAbandoned();
+            throw e;
+        }
+        boolean acquired;
+        try {
+            acquired = acquireGlobal(-1);
+        } catch (Exception e) {
+            local.unlock();
+            throw e;
+        }
+        if (!acquired) {
+            local.unlock();
+            throw new IllegalStateException("lost the connection while acquiring the lock");
+        }
+    }
+
+    @Override
+    public boolean acquire(long time, TimeUnit unit) throws Exception {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        boolean locked;
+        try {
+            locked = local.tryLock(time, unit);
+        } catch (InterruptedException e) {
+            releaseIfAbandoned();
+            throw e;
+        }
+        if (!locked) {
+            releaseIfAbandoned();
+            return false;
+        }
+        boolean acquired;
+        try {
+            acquired = acquireGlobal(Math.max(deadline - System.nanoTime(), 0));
+        } catch (Exception e) {
+            local.unlock();
+            throw e;
+        }
+        if (!acquired) {
+            local.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void release() throws Exception {
+        if (!local.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("you do not own the lock");
+        }
+        boolean kept = false;
+        try {
+            if (local.getHoldCount() == 1 && globalHeld) {
+                // 本地有等待者、未达到交接上限、获取后连接没有中断过且连接正常时保留 ZooKeeper 锁
+                kept = handoffs < maxHandoffs && local.hasQueuedThreads()
+                        && heldEpoch == connectionLosses.get() && client.getZookeeperClient().isConnected();
+                if (!kept) {
+                    globalHeld = false;
+                    releaseGlobal();
+                }
+            }
+        } finally {
+            local.unlock();
+        }
+        // 等待者可能在决定交接之后、解锁之前放弃等待（此时它拿不到本地锁，无法释放 ZooKeeper 锁）
+        if (kept && !local.isLocked() && local.getQueueLength() == 0) {
+            releaseIfAbandoned();
+        }
+    }
+
+    @Override
+    public boolean isAcquiredInThisProcess() {
+        return local.isLocked();
+    }
+
+    /**
+     * 获取 ZooKeeper 锁的次数
+     */
+    public long getGlobalAcquires() {
+        return globalAcquires.get();
+    }
+
+    /**
+     * 本地交接（没有访问 ZooKeeper）的次数
+     */
+    public long getLocalHandoffs() {
+        return localHandoffs.get();
+    }
+
+    /**
+     * 关闭专用线程（应当在没有线程持有或等待锁时调用）
+     */
+    @Override
+    public void close() {
+        client.getConnectionStateListenable().removeListener(connectionStateListener);
+        owner.shutdown();
+    }
+
+    /**
+     * 等待本地锁超时或被中断时，以及交接后解锁时发现没有等待者时调用: 持有者释放时可能因为有线程在排队而保留了 ZooKeeper 锁，
+     * 如果此时本地锁空闲且没有其他等待者，释放 ZooKeeper 锁，避免其他进程一直等待
+     */
+    private void releaseIfAbandoned() {
+        // 本地锁被其他线程持有时由其释放时决定
+        if (!local.tryLock()) {
+            return;
+        }
+        try {
+            if (globalHeld && local.getQueueLength() == 0) {
+                globalHeld = false;
+                releaseGlobal();
+            }
+        } catch (Exception e) {
+            log.warn("release " + mutex + " after an abandoned wait failure: " + e.getMessage(), e);
+        } finally {
+            local.unlock();
+        }
+    }
+
+    /**
+     * 持有本地锁后确保持有 ZooKeeper 锁（重入或交接时已持有）
+     *
+     * @param timeoutNanos 小于 0 时一直等待
+     */
+    private boolean acquireGlobal(final long timeoutNanos) throws Exception {
+        if (local.getHoldCount() > 1) {
+            return true;
+        }
+        if (globalHeld) {
+            if (heldEpoch == connectionLosses.get()) {
+                handoffs++;
+                localHandoffs.incrementAndGet();
+                return true;
+            }
+            // 交接之后连接中断过，锁可能已随会话失去：释放原来的节点后重新获取
+            globalHeld = false;
+            try {
+                releaseGlobal();
+            } catch (Exception e) {
+                log.warn("release " + mutex + " after a connection loss failure: " + e.getMessage());
+            }
+        }
+        long epoch = connectionLosses.get();
+        Future<Boolean> future = owner.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                if (timeoutNanos < 0) {
+                    mutex.acquire();
+                    return true;
+                }
+                return mutex.acquire(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        });
+        boolean acquired;
+        try {
+            acquired = future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            // 取消前可能已经获取，在专用线程上释放，等待完成后再返回（此时已被中断，不响应中断）
+            Future<Void> cleanup = owner.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    if (mutex.isOwnedByCurrentThread()) {
+                        mutex.release();
+                    }
+                    return null;
+                }
+            });
+            try {
+                Uninterruptibles.getUninterruptibly(cleanup);
+            } catch (ExecutionException e1) {
+                log.warn("release " + mutex + " after an interrupted acquire failure: " + e1.getCause().getMessage());
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+        if (acquired) {
+            globalHeld = true;
+            heldEpoch = epoch;
+            handoffs = 0;
+            globalAcquires.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    private void releaseGlobal() throws Exception {
+        Future<Void> future = owner.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mutex.release();
+                return null;
+            }
+        });
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            log.warn("release " + mutex + " failure: " + e.getCause().getMessage());
+            throw unwrap(e);
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        throw (Error) cause;
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingMutex{" +
+                "maxHandoffs=" + maxHandoffs +
+                ", globalAcquires=" + globalAcquires +
+                ", localHandoffs=" + localHandoffs +
+                '}';
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.zozospider.zookeepercurator.lock;
+
+import com.zozospider.zookeepercurator.metrics.OpMetricsTracerDriver;
+import com.zozospider.zookeepercurator.utils.LatencyProxy;
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 对比每个线程各自使用 InterProcessMutex 与同一进程的线程共用 CoalescingMutex 时的吞吐量和节点变化
+ * <p>
+ * 模拟 processes 个进程（各自一个客户端），每个进程 threads 个线程在 seconds 秒内反复获取同一路径的锁，
+ * 持有锁 holdMicros 微秒后释放。临界区用一个 AtomicBoolean 检查是否有两个线程同时持有锁。
+ * 每个客户端通过 OpMetricsTracerDriver 统计 create / delete 等请求数（每次 ZooKeeper 锁易主要删除、创建一个临时顺序节点），
+ * 并统计每个进程完成的次数（交接上限越大，锁在一个进程内停留越久）。
+ * 客户端可以通过 LatencyProxy 连接服务端，模拟网络往返时间。
+ * <p>
+ * 参数: [进程数] [每个进程线程数] [每种方式运行秒数] [持有锁微秒数] [单向延迟毫秒数，0 为直连] [CoalescingMutex 交接上限列表，逗号分隔]
+ */
+public class CoalescingMutexMain {
+
+    private final static Logger log = LoggerFactory.getLogger(CoalescingMutexMain.class);
+
+    private static final String LOCK_PATH = "/lock/CoalescingMutex";
+
+    public static void main(String[] args) throws Exception {
+
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long holdMicros = args.length > 3 ? Long.parseLong(args[3]) : 100;
+        long delayMs = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        String handoffList = args.length > 5 ? args[5] : "0,4,16,64";
+
+        try (TestingServer server = new TestingServer()) {
+            LatencyProxy proxy = delayMs > 0 ? new LatencyProxy(server.getPort(), delayMs) : null;
+            try {
+                String connectString = proxy == null ? server.getConnectString() : proxy.getConnectString();
+                log.info("{} processes x {} threads, {} s per mode, hold {} us, one-way delay {} ms",
+                        processes, threads, seconds, holdMicros, delayMs);
+
+                run("InterProcessMutex per thread", connectString, processes, threads, seconds, holdMicros, -1, 0);
+                int round = 0;
+                for (String handoffs : handoffList.split(",")) {
+                    run("CoalescingMutex maxHandoffs=" + handoffs.trim(), connectString, processes, threads, seconds,
+                            holdMicros, Integer.parseInt(handoffs.trim()), ++round);
+                }
+            } finally {
+                CloseableUtils.closeQuietly(proxy);
+            }
+        }
+    }
+
+    /**
+     * @param maxHandoffs 小于 0 时每个线程各自使用 InterProcessMutex
+     */
+    private static void run(String name, String connectString, int processes, int threads, int seconds,
+                            final long holdMicros, int maxHandoffs, int round) throws Exception {
+
+        String lockPath = LOCK_PATH + "-" + round;
+        final AtomicBoolean inCriticalSection = new AtomicBoolean();
+        final AtomicLong violations = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicBoolean stop = new AtomicBoolean();
+
+        List<CuratorFramework> clients = new ArrayList<>();
+        List<OpMetrics> metrics = new ArrayList<>();
+        List<CoalescingMutex> mutexes = new ArrayList<>();
+        List<AtomicLong> processOps = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        try {
+            for (int p = 0; p < processes; p++) {
+                OpMetrics opMetrics = new OpMetrics();
+                CuratorFramework client = CuratorFrameworkFactory.newClient(connectString, new RetryNTimes(3, 1000));
+                client.getZookeeperClient().setTracerDriver(new OpMetricsTracerDriver(opMetrics));
+                client.start();
+                client.blockUntilConnected();
+                clients.add(client);
+                metrics.add(opMetrics);
+
+                CoalescingMutex shared = null;
+                if (maxHandoffs >= 0) {
+                    shared = new CoalescingMutex(client, lockPath, maxHandoffs);
+                    mutexes.add(shared);
+                }
+                final AtomicLong ops = new AtomicLong();
+                processOps.add(ops);
+                for (int t = 0; t < threads; t++) {
+                    final InterProcessLock lock = shared != null ? shared : new InterProcessMutex(client, lockPath);
+                    workers.add(new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            while (!stop.get()) {
+                                try {
+                                    if (!lock.acquire(10, TimeUnit.SECONDS)) {
+                                        failures.incrementAndGet();
+                                        continue;
+                                    }
+                                    try {
+                                        if (!inCriticalSection.compareAndSet(false, true)) {
+                                            violations.incrementAndGet();
+                                        }
+                                        if (holdMicros > 0) {
+                                            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(holdMicros));
+                                        }
+                                        inCriticalSection.set(false);
+                                        ops.incrementAndGet();
+                                    } finally {
+                                        lock.release();
+                                    }
+                                } catch (Exception e) {
+                                    failures.incrementAndGet();
+                                    log.error("lock failure: " + e.getMessage(), e);
+                                }
+                            }
+                        }
+                    }, "P" + p + "-T" + t));
+                }
+            }
+
+            long begin = System.nanoTime();
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            TimeUnit.SECONDS.sleep(seconds);
+            stop.set(true);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsedNanos = System.nanoTime() - begin;
+
+            long total = 0;
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (AtomicLong ops : processOps) {
+                total += ops.get();
+                min = Math.min(min, ops.get());
+                max = Math.max(max, ops.get());
+            }
+            long creates = 0;
+            long deletes = 0;
+            long requests = 0;
+            for (OpMetrics opMetrics : metrics) {
+                creates += opMetrics.getHistogram(OpMetrics.Op.CREATE).getCount();
+                deletes += opMetrics.getHistogram(OpMetrics.Op.DELETE).getCount();
+                for (OpMetrics.Op op : OpMetrics.Op.values()) {
+                    requests += opMetrics.getHistogram(op).getCount();
+                }
+            }
+            long globalAcquires = 0;
+            long handoffs = 0;
+            for (CoalescingMutex mutex : mutexes) {
+                globalAcquires += mutex.getGlobalAcquires();
+                handoffs += mutex.getLocalHandoffs();
+            }
+            log.info("{}: {} ops in {} ms, {} ops/s, per process min {} max {}, znodes created {} deleted {}, "
+                            + "ZooKeeper requests {} ({} per op), ZooKeeper acquires {}, local handoffs {}, violations {}, failures {}",
+                    name, total, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    String.format("%.0f", total * 1e9 / elapsedNanos), min, max, creates, deletes, requests,
+                    String.format("%.2f", total == 0 ? 0 : (double) requests / total),
+                    maxHandoffs < 0 ? total : globalAcquires, handoffs, violations.get(), failures.get());
+        } finally {
+            stop.set(true);
+            for (CoalescingMutex mutex : mutexes) {
+                mutex.close();
+            }
+            for (CuratorFramework client : clients) {
+                CloseableUtils.closeQuietly(client);
+            }
+        }
+    }
+
+}
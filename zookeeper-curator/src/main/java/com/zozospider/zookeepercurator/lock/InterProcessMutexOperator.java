@@ -1,6 +1,7 @@
 package com.zozospider.zookeepercurator.lock;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
 import org.apache.curator.framework.recipes.locks.InterProcessMutex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,13 +15,15 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * acquire(): 获取锁
  * release(): 释放锁
+ * <p>
+ * 也可以传入同一进程内多个线程共用的锁（如 CoalescingMutex），见 CoalescingMutexMain。
  */
 public class InterProcessMutexOperator {
 
     private final static Logger log = LoggerFactory.getLogger(InterProcessMutexOperator.class);
 
     // 锁
-    private InterProcessMutex lock;
+    private final InterProcessLock lock;
     // 共享资源对象
     private final LimitedResource resource;
     // 客户端名称
@@ -42,6 +45,19 @@ public class InterProcessMutexOperator {
         this.lock = new InterProcessMutex(client, lockPath);
     }
 
+    /**
+     * 新建一个使用指定锁的操作类
+     *
+     * @param resource 共享资源对象
+     * @param name     客户端名称
+     * @param lock     锁（可以由多个操作类共用，如 CoalescingMutex）
+     */
+    public InterProcessMutexOperator(LimitedResource resource, String name, InterProcessLock lock) {
+        this.resource = resource;
+        this.name = name;
+        this.lock = lock;
+    }
+
     private static final long TIME = 10l;
     private static final TimeUnit UNIT = TimeUnit.SECONDS;
 
@@ -0,0 +1,141 @@
+package com.zozospider.zookeepercurator.lock;
+
+import com.zozospider.zookeepercurator.registry.CuratorFrameworkRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.InstanceSpec;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模拟大量客户端（线程）调用可重入共享锁，对比每个任务新建客户端与使用 CuratorFrameworkRegistry 共享客户端时的
+ * 会话数、线程数、堆内存和耗时
+ * <p>
+ * 所有任务先连接并创建锁，全部就绪后统计会话数、线程数和堆内存，再同时开始加锁。
+ * <p>
+ * 参数: [客户端数] [每个客户端加锁次数]
+ */
+public class InterProcessMutexSharedMain {
+
+    private final static Logger log = LoggerFactory.getLogger(InterProcessMutexSharedMain.class);
+
+    // 需要加锁的路径
+    private static final String LOCK_PATH = "/lock/InterProcessMutexShared";
+
+    public static void main(String[] args) throws Exception {
+
+        int clientQty = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int doTimes = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        // 模拟服务端（服务端默认每个 IP 最多 60 个连接，每个任务新建客户端时需要放开限制）
+        InstanceSpec spec = new InstanceSpec(null, -1, -1, -1, true, -1, -1, clientQty * 2);
+        try (TestingServer server = new TestingServer(spec, true)) {
+            run("per-task clients", server.getConnectString(), clientQty, doTimes, false);
+            run("shared client", server.getConnectString(), clientQty, doTimes, true);
+        }
+    }
+
+    private static void run(String name, final String connectString, int clientQty, final int doTimes, final boolean shared) throws Exception {
+
+        gc();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        int threadsBefore = threadMXBean.getThreadCount();
+        long heapBefore = memoryMXBean.getHeapMemoryUsage().getUsed();
+
+        final Set<Long> sessionIds = ConcurrentHashMap.newKeySet();
+        final CountDownLatch ready = new CountDownLatch(clientQty);
+        final CountDownLatch go = new CountDownLatch(1);
+        final AtomicBoolean inLock = new AtomicBoolean();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicInteger locked = new AtomicInteger();
+
+        ExecutorService service = Executors.newFixedThreadPool(clientQty);
+        for (int i = 0; i < clientQty; i++) {
+            service.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+
+                    CuratorFramework client;
+                    Closeable closeable;
+                    if (shared) {
+                        CuratorFrameworkRegistry.Lease lease = CuratorFrameworkRegistry.getDefault().acquire(connectString, null);
+                        client = lease.getClient();
+                        closeable = lease;
+                    } else {
+                        client = CuratorFrameworkFactory.newClient(connectString, new RetryNTimes(3, 5000));
+                        client.start();
+                        closeable = client;
+                    }
+                    try {
+                        client.blockUntilConnected();
+                        sessionIds.add(client.getZookeeperClient().getZooKeeper().getSessionId());
+                        InterProcessMutex lock = new InterProcessMutex(client, LOCK_PATH);
+                        ready.countDown();
+                        go.await();
+
+                        for (int j = 0; j < doTimes; j++) {
+                            if (!lock.acquire(60, TimeUnit.SECONDS)) {
+                                throw new IllegalStateException("lock acquire unsuccessfully");
+                            }
+                            try {
+                                // 同一时刻只能有一个持有者
+                                if (!inLock.compareAndSet(false, true)) {
+                                    violations.incrementAndGet();
+                                }
+                                locked.incrementAndGet();
+                                inLock.set(false);
+                            } finally {
+                                lock.release();
+                            }
+                        }
+                    } catch (Exception e) {
+                        log.error("task failure: " + e.getMessage(), e);
+                        ready.countDown();
+                        throw e;
+                    } finally {
+                        CloseableUtils.closeQuietly(closeable);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        ready.await();
+        gc();
+        int threads = threadMXBean.getThreadCount() - threadsBefore;
+        long heap = memoryMXBean.getHeapMemoryUsage().getUsed() - heapBefore;
+        long begin = System.nanoTime();
+        go.countDown();
+
+        service.shutdown();
+        service.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsedMs = (System.nanoTime() - begin) / 1000000;
+
+        log.info("{}: {} clients, sessions: {}, extra threads: {} (incl. {} task threads), extra heap: {} KB, "
+                        + "{} locks in {} ms, {} locks/sec, violations: {}",
+                name, clientQty, sessionIds.size(), threads, clientQty, heap / 1024,
+                locked.get(), elapsedMs, elapsedMs == 0 ? 0 : locked.get() * 1000L / elapsedMs, violations.get());
+    }
+
+    private static void gc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+    }
+
+}
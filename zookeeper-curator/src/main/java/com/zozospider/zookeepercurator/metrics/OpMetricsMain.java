@@ -0,0 +1,70 @@
+package com.zozospider.zookeepercurator.metrics;
+
+import com.zozospider.zookeepercurator.CuratorClient;
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.test.TestingServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 在本地 TestingServer 上通过 CuratorClient 执行各类操作，输出 OpMetrics 的文本表格及 JMX 中注册的 MBean
+ * <p>
+ * 参数: [每类操作的次数]
+ */
+public class OpMetricsMain {
+
+    private final static Logger log = LoggerFactory.getLogger(OpMetricsMain.class);
+
+    public static void main(String[] args) throws Exception {
+
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            CuratorClient curatorClient = new CuratorClient();
+            curatorClient.connect(server.getConnectString());
+            CuratorFramework client = curatorClient.client;
+            try {
+                client.create().creatingParentsIfNeeded().forPath("/metrics");
+                for (int i = 0; i < ops; i++) {
+                    String path = "/metrics/n" + i;
+                    client.create().forPath(path, "data".getBytes());
+                    client.checkExists().forPath(path);
+                    client.getData().forPath(path);
+                    client.setData().forPath(path, "data2".getBytes());
+                }
+                client.getChildren().forPath("/metrics");
+                for (int i = 0; i < ops; i++) {
+                    client.delete().forPath("/metrics/n" + i);
+                }
+                // 失败的操作按错误码计数（Curator 只在后台调用时追踪失败的操作）
+                final CountDownLatch latch = new CountDownLatch(1);
+                client.getData().inBackground(new BackgroundCallback() {
+                    @Override
+                    public void processResult(CuratorFramework client, CuratorEvent event) {
+                        log.info("getData missing node, resultCode: {}", event.getResultCode());
+                        latch.countDown();
+                    }
+                }).forPath("/metrics/missing");
+                latch.await();
+
+                log.info("curator client latency:{}{}", System.lineSeparator(), curatorClient.getMetrics().dump());
+                Set<ObjectName> names = ManagementFactory.getPlatformMBeanServer()
+                        .queryNames(new ObjectName(OpMetricsTracerDriver.JMX_DOMAIN + ":type=OpMetrics,*"), null);
+                log.info("registered MBeans: {}", names);
+            } finally {
+                curatorClient.closeClient();
+            }
+        }
+    }
+
+}
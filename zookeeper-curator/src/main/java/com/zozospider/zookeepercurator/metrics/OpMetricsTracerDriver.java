@@ -0,0 +1,71 @@
+package com.zozospider.zookeepercurator.metrics;
+
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
+import org.apache.curator.drivers.AdvancedTracerDriver;
+import org.apache.curator.drivers.EventTrace;
+import org.apache.curator.drivers.OperationTrace;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将 Curator 的操作追踪（OperationTrace）记录到 OpMetrics
+ * <p>
+ * 通过 client.getZookeeperClient().setTracerDriver() 设置，前台和后台（inBackground）调用都会被记录。
+ * 追踪名称形如 GetDataBuilderImpl-Foreground，按前缀对应到操作类型，其余追踪（如连接、recipe 内部事件）忽略。
+ * <p>
+ * 注: Curator 的追踪耗时只精确到毫秒，直方图中的值为毫秒换算的微秒；
+ * 前台调用失败（抛出异常）时 Curator 不提交追踪，错误码计数只包含后台调用的失败；
+ * Curator 4.0.1 的事务只通过 TimeTrace 追踪，AdvancedTracerDriver 收不到，multi 的计数保持为 0（预留给新版本 Curator）。
+ */
+public class OpMetricsTracerDriver extends AdvancedTracerDriver {
+
+    /**
+     * CuratorClient 的 OpMetrics 注册到 JMX 时使用的域
+     */
+    public static final String JMX_DOMAIN = "com.zozospider.zookeepercurator";
+
+    private final OpMetrics metrics;
+
+    public OpMetricsTracerDriver(OpMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public OpMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void addTrace(OperationTrace trace) {
+        OpMetrics.Op op = toOp(trace.getName());
+        if (op != null) {
+            metrics.recordMicros(op, TimeUnit.MILLISECONDS.toMicros(trace.getLatencyMs()), trace.getReturnCode());
+        }
+    }
+
+    @Override
+    public void addEvent(EventTrace trace) {
+    }
+
+    private static OpMetrics.Op toOp(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (name.startsWith("CreateBuilderImpl")) {
+            return OpMetrics.Op.CREATE;
+        } else if (name.startsWith("DeleteBuilderImpl")) {
+            return OpMetrics.Op.DELETE;
+        } else if (name.startsWith("ExistsBuilderImpl")) {
+            return OpMetrics.Op.EXISTS;
+        } else if (name.startsWith("GetDataBuilderImpl")) {
+            return OpMetrics.Op.GET_DATA;
+        } else if (name.startsWith("GetChildrenBuilderImpl")) {
+            return OpMetrics.Op.GET_CHILDREN;
+        } else if (name.startsWith("SetDataBuilderImpl")) {
+            return OpMetrics.Op.SET_DATA;
+        } else if (name.startsWith("CuratorMultiTransactionImpl")) {
+            return OpMetrics.Op.MULTI;
+        }
+        return null;
+    }
+
+}
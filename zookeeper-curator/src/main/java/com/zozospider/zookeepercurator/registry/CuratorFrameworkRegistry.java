@@ -0,0 +1,230 @@
+package com.zozospider.zookeepercurator.registry;
+
+import com.zozospider.zookeepercurator.retry.AdaptiveRetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 共享 CuratorFramework 注册表（引用计数）
+ * <p>
+ * 按 connectString + namespace + digest 认证信息共享同一个已启动的 CuratorFramework，
+ * 同一进程中的多个组件 / 线程只占用一个 TCP 连接、一个会话和一组心跳及后台线程。
+ * acquire() 返回一个 Lease，持有期间客户端保持打开；最后一个 Lease 关闭时客户端随之关闭并从注册表中移除。
+ * <p>
+ * 注: 共享客户端上的会话、连接状态、临时节点及添加的监听器都是共享的，
+ * 使用方不要直接调用 client.close()，添加的 ConnectionStateListener 等应在关闭 Lease 前自行移除；
+ * 同一会话内的锁仍然互斥（InterProcessMutex 等按实例各自创建节点），但会话过期时所有使用方的锁和临时节点同时失效。
+ */
+public class CuratorFrameworkRegistry {
+
+    private final static Logger log = LoggerFactory.getLogger(CuratorFrameworkRegistry.class);
+
+    /**
+     * session 超时时间
+     */
+    private static final int SESSION_TIMEOUT = 5000;
+
+    /**
+     * 连接超时时间
+     */
+    private static final int CONNECTION_TIMEOUT = 5000;
+
+    private static final CuratorFrameworkRegistry DEFAULT = new CuratorFrameworkRegistry(new ClientFactory() {
+        @Override
+        public CuratorFramework newClient(String connectString, String namespace, String digestAuth) {
+            CuratorFrameworkFactory.Builder builder = CuratorFrameworkFactory.builder()
+                    .retryPolicy(new AdaptiveRetryPolicy(1000, 10000, 3, 2, 10))
+                    .connectString(connectString)
+                    .sessionTimeoutMs(SESSION_TIMEOUT)
+                    .connectionTimeoutMs(CONNECTION_TIMEOUT)
+                    .namespace(namespace);
+            if (digestAuth != null) {
+                builder.authorization("digest", digestAuth.getBytes());
+            }
+            return builder.build();
+        }
+    });
+
+    /**
+     * 创建（未启动的）客户端
+     */
+    public interface ClientFactory {
+
+        /**
+         * @param connectString list of servers to connect to
+         * @param namespace     命名空间，可为 null
+         * @param digestAuth    digest 登录模式下的用户名密码，格式: user:password，可为 null（匿名）
+         */
+        CuratorFramework newClient(String connectString, String namespace, String digestAuth);
+    }
+
+    private final ClientFactory factory;
+
+    // 由 this 保护
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    /**
+     * 进程内默认的注册表（与 CuratorClient 相同的超时及重试策略）
+     */
+    public static CuratorFrameworkRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public CuratorFrameworkRegistry(ClientFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * 获取共享客户端（匿名）
+     */
+    public Lease acquire(String connectString, String namespace) {
+        return acquire(connectString, namespace, null);
+    }
+
+    /**
+     * 获取共享客户端，不存在时创建并启动
+     *
+     * @param connectString list of servers to connect to
+     * @param namespace     命名空间，可为 null
+     * @param digestAuth    digest 登录模式下的用户名密码，格式: user:password，可为 null（匿名）
+     * @return 使用结束后必须关闭
+     */
+    public synchronized Lease acquire(String connectString, String namespace, String digestAuth) {
+
+        Key key = new Key(connectString, namespace, digestAuth);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            CuratorFramework client = factory.newClient(connectString, namespace, digestAuth);
+            client.start();
+            entry = new Entry(key, client);
+            entries.put(key, entry);
+            log.info("create shared client, connectString: {}, namespace: {}", connectString, namespace);
+        }
+        entry.refCount++;
+        return new Lease(entry);
+    }
+
+    /**
+     * 当前共享的客户端数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 当前所有共享客户端的 Lease 总数
+     */
+    public synchronized int getLeaseCount() {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            count += entry.refCount;
+        }
+        return count;
+    }
+
+    private void release(Entry entry) {
+
+        CuratorFramework toClose = null;
+        synchronized (this) {
+            entry.refCount--;
+            if (entry.refCount == 0) {
+                entries.remove(entry.key);
+                toClose = entry.client;
+            }
+        }
+        if (toClose != null) {
+            // 在锁外关闭，避免阻塞其他 acquire
+            log.info("close shared client, connectString: {}, namespace: {}", entry.key.connectString, entry.key.namespace);
+            CloseableUtils.closeQuietly(toClose);
+        }
+    }
+
+    /**
+     * 共享客户端的一次引用，close() 后不可再使用 getClient() 返回的客户端
+     */
+    public class Lease implements Closeable {
+
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public CuratorFramework getClient() {
+            return entry.client;
+        }
+
+        /**
+         * 释放引用（重复调用无效）
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(entry);
+        }
+    }
+
+    private static class Entry {
+
+        private final Key key;
+        private final CuratorFramework client;
+        private int refCount;
+
+        private Entry(Key key, CuratorFramework client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
+    private static class Key {
+
+        private final String connectString;
+        private final String namespace;
+        private final String digestAuth;
+
+        private Key(String connectString, String namespace, String digestAuth) {
+            if (connectString == null) {
+                throw new IllegalArgumentException("connectString cannot be null");
+            }
+            this.connectString = connectString;
+            this.namespace = namespace;
+            this.digestAuth = digestAuth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return connectString.equals(key.connectString)
+                    && (namespace == null ? key.namespace == null : namespace.equals(key.namespace))
+                    && (digestAuth == null ? key.digestAuth == null : digestAuth.equals(key.digestAuth));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = connectString.hashCode();
+            result = 31 * result + (namespace == null ? 0 : namespace.hashCode());
+            result = 31 * result + (digestAuth == null ? 0 : digestAuth.hashCode());
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.zozospider.zookeepercurator.retry;
+
+import org.apache.curator.RetryLoop;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 策略：去相关抖动（decorrelated jitter）+ 重试预算（令牌桶）
+ * <p>
+ * 每次重试的间隔为 [baseSleepTimeMs, 上次间隔 * 3] 内的随机值，且不超过 maxSleepMs，
+ * 多个客户端同时遇到集群故障时重试时间被打散，不会每隔固定时间一起重试。
+ * <p>
+ * 每个实例有一个令牌桶：每秒补充 retriesPerSecond 个令牌，最多积累 burst 个，每次重试消耗一个令牌，
+ * 令牌不足时不再重试（直接失败），从而限制一个客户端所有线程每秒的总重试次数。
+ * 因此每个客户端（CuratorFramework）应使用自己的实例。
+ * <p>
+ * 记录重试次数（attempted）、因预算不足被拒绝的次数（denied）和因达到 maxRetries 而放弃的次数（exhausted），
+ * 可通过 register() 注册到 JMX。
+ */
+public class AdaptiveRetryPolicy implements RetryPolicy, AdaptiveRetryPolicyMXBean {
+
+    private final static Logger log = LoggerFactory.getLogger(AdaptiveRetryPolicy.class);
+
+    public static final String JMX_DOMAIN = "com.zozospider.zookeepercurator";
+
+    private final int baseSleepTimeMs;
+    private final int maxSleepMs;
+    private final int maxRetries;
+    private final double retriesPerSecond;
+    private final double burst;
+
+    /**
+     * 每个重试循环的上一次间隔
+     * <p>
+     * 后台操作（inBackground）每个操作有自己的 RetrySleeper（即该操作本身），重试可能在不同线程上执行，按 sleeper 保存（弱引用）；
+     * 前台操作共用 RetryLoop 的默认 sleeper，但重试循环在调用线程上同步执行，按线程保存。
+     */
+    private final Map<RetrySleeper, long[]> lastSleepBySleeper = new WeakHashMap<>();
+    private final ThreadLocal<long[]> lastSleepByThread = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    // 令牌桶，由 this 保护
+    private double tokens;
+    private long refillNanos;
+
+    private final AtomicLong attempted = new AtomicLong();
+    private final AtomicLong denied = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private volatile ObjectName objectName;
+
+    /**
+     * @param baseSleepTimeMs  最小重试间隔
+     * @param maxSleepMs       最大重试间隔
+     * @param maxRetries       单次操作最大重试次数
+     * @param retriesPerSecond 每秒补充的重试令牌数（所有线程共享）
+     * @param burst            令牌桶容量（允许的突发重试次数）
+     */
+    public AdaptiveRetryPolicy(int baseSleepTimeMs, int maxSleepMs, int maxRetries, double retriesPerSecond, int burst) {
+        if (baseSleepTimeMs <= 0 || maxSleepMs < baseSleepTimeMs || maxRetries < 0 || retriesPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("baseSleepTimeMs: " + baseSleepTimeMs + ", maxSleepMs: " + maxSleepMs
+                    + ", maxRetries: " + maxRetries + ", retriesPerSecond: " + retriesPerSecond + ", burst: " + burst);
+        }
+        this.baseSleepTimeMs = baseSleepTimeMs;
+        this.maxSleepMs = maxSleepMs;
+        this.maxRetries = maxRetries;
+        this.retriesPerSecond = retriesPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refillNanos = System.nanoTime();
+    }
+
+    @Override
+    public boolean allowRetry(int retryCount, long elapsedTimeMs, RetrySleeper sleeper) {
+
+        long[] last = lastSleep(sleeper);
+        if (retryCount == 0) {
+            // 新的重试循环
+            last[0] = baseSleepTimeMs;
+        }
+        if (retryCount >= maxRetries) {
+            exhausted.incrementAndGet();
+            return false;
+        }
+        if (!tryAcquire()) {
+            denied.incrementAndGet();
+            log.debug("retry denied by budget, retryCount: {}, elapsedTimeMs: {}", retryCount, elapsedTimeMs);
+            return false;
+        }
+        attempted.incrementAndGet();
+
+        long upper = Math.min((long) maxSleepMs, last[0] * 3);
+        long sleepMs = upper <= baseSleepTimeMs ? baseSleepTimeMs : ThreadLocalRandom.current().nextLong(baseSleepTimeMs, upper + 1);
+        last[0] = sleepMs;
+        try {
+            sleeper.sleepFor(sleepMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Error while retrying", e);
+            return false;
+        }
+        return true;
+    }
+
+    private long[] lastSleep(RetrySleeper sleeper) {
+        if (sleeper == null || sleeper == RetryLoop.getDefaultRetrySleeper()) {
+            return lastSleepByThread.get();
+        }
+        synchronized (lastSleepBySleeper) {
+            long[] last = lastSleepBySleeper.get(sleeper);
+            if (last == null) {
+                last = new long[]{baseSleepTimeMs};
+                lastSleepBySleeper.put(sleeper, last);
+            }
+            return last;
+        }
+    }
+
+    private synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refillNanos) / 1e9 * retriesPerSecond);
+        refillNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    @Override
+    public long getAttempted() {
+        return attempted.get();
+    }
+
+    @Override
+    public long getDenied() {
+        return denied.get();
+    }
+
+    @Override
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    @Override
+    public synchronized double getAvailableTokens() {
+        return Math.min(burst, tokens + (System.nanoTime() - refillNanos) / 1e9 * retriesPerSecond);
+    }
+
+    /**
+     * 注册到 JMX，ObjectName 为 com.zozospider.zookeepercurator:type=AdaptiveRetryPolicy,name={name}
+     */
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=AdaptiveRetryPolicy,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            log.warn("register AdaptiveRetryPolicy " + name + " failure: " + e.getMessage(), e);
+        }
+    }
+
+    public void unregister() {
+        ObjectName current = objectName;
+        if (current == null) {
+            return;
+        }
+        objectName = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(current)) {
+                server.unregisterMBean(current);
+            }
+        } catch (JMException e) {
+            log.warn("unregister AdaptiveRetryPolicy " + current + " failure: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveRetryPolicy{" +
+                "attempted=" + attempted.get() +
+                ", denied=" + denied.get() +
+                ", exhausted=" + exhausted.get() +
+                '}';
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.zozospider.zookeepercurator.retry;
+
+/**
+ * AdaptiveRetryPolicy 的 JMX 接口
+ */
+public interface AdaptiveRetryPolicyMXBean {
+
+    /**
+     * 已执行的重试次数
+     */
+    long getAttempted();
+
+    /**
+     * 因重试预算不足被拒绝的次数
+     */
+    long getDenied();
+
+    /**
+     * 因达到最大重试次数而放弃的次数
+     */
+    long getExhausted();
+
+    /**
+     * 当前可用的重试令牌数
+     */
+    double getAvailableTokens();
+
+}
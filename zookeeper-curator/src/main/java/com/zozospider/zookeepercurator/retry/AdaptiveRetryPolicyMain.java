@@ -0,0 +1,178 @@
+package com.zozospider.zookeepercurator.retry;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.RetrySleeper;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 模拟多个客户端在 ZooKeeper 服务端重启期间的重试行为，对比 RetryNTimes(3, 5000) 与 AdaptiveRetryPolicy
+ * <p>
+ * 每个客户端有若干线程循环读取节点；运行一段时间后停止 TestingServer，中断 outageMs 后重新启动。
+ * 统计所有客户端的重试总数、任意 1 秒内的重试峰值、被预算拒绝的重试数、失败的操作数，以及服务端恢复后所有客户端都恢复读取所需的时间。
+ * <p>
+ * 参数: [客户端数] [每个客户端线程数] [服务端中断时间 ms]
+ */
+public class AdaptiveRetryPolicyMain {
+
+    private final static Logger log = LoggerFactory.getLogger(AdaptiveRetryPolicyMain.class);
+
+    private static final String PATH = "/retry";
+
+    /**
+     * 重试时间分布的统计粒度
+     */
+    private static final int BUCKET_MS = 100;
+    private static final int BUCKETS = 1200;
+
+    public static void main(String[] args) throws Exception {
+
+        int clientQty = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int threadsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long outageMs = args.length > 2 ? Long.parseLong(args[2]) : 8000;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            CuratorFramework admin = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryNTimes(3, 1000));
+            admin.start();
+            admin.create().forPath(PATH, "data".getBytes());
+            admin.close();
+
+            run("RetryNTimes(3, 5000)", server, clientQty, threadsPerClient, outageMs, false);
+            run("AdaptiveRetryPolicy", server, clientQty, threadsPerClient, outageMs, true);
+        }
+    }
+
+    private static void run(String name, TestingServer server, int clientQty, int threadsPerClient, long outageMs,
+                            boolean adaptive) throws Exception {
+
+        final long begin = System.nanoTime();
+        final AtomicLongArray retryBuckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong restartedAt = new AtomicLong(Long.MAX_VALUE);
+
+        List<CuratorFramework> clients = new ArrayList<>();
+        List<AdaptiveRetryPolicy> policies = new ArrayList<>();
+        final AtomicLongArray recoveredAt = new AtomicLongArray(clientQty);
+        ExecutorService service = Executors.newFixedThreadPool(clientQty * threadsPerClient);
+
+        for (int i = 0; i < clientQty; i++) {
+            final RetryPolicy delegate;
+            if (adaptive) {
+                AdaptiveRetryPolicy policy = new AdaptiveRetryPolicy(1000, 10000, 3, 2, 10);
+                policies.add(policy);
+                delegate = policy;
+            } else {
+                delegate = new RetryNTimes(3, 5000);
+            }
+            // 记录每次重试发生的时间
+            RetryPolicy counting = new RetryPolicy() {
+                @Override
+                public boolean allowRetry(int retryCount, long elapsedTimeMs, RetrySleeper sleeper) {
+                    boolean allowed = delegate.allowRetry(retryCount, elapsedTimeMs, sleeper);
+                    if (allowed) {
+                        retries.incrementAndGet();
+                        int bucket = (int) ((System.nanoTime() - begin) / 1000000 / BUCKET_MS);
+                        if (bucket < BUCKETS) {
+                            retryBuckets.incrementAndGet(bucket);
+                        }
+                    }
+                    return allowed;
+                }
+            };
+            // 会话超时大于中断时间，服务端恢复后原会话仍可用
+            final CuratorFramework client = CuratorFrameworkFactory.builder()
+                    .connectString(server.getConnectString())
+                    .sessionTimeoutMs((int) outageMs * 4)
+                    .connectionTimeoutMs(1000)
+                    .retryPolicy(counting)
+                    .build();
+            client.start();
+            client.blockUntilConnected();
+            clients.add(client);
+
+            final int index = i;
+            for (int j = 0; j < threadsPerClient; j++) {
+                service.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        while (running.get()) {
+                            try {
+                                client.getData().forPath(PATH);
+                                long now = System.nanoTime();
+                                if (now > restartedAt.get()) {
+                                    recoveredAt.compareAndSet(index, 0, now);
+                                }
+                                Thread.sleep(50);
+                            } catch (InterruptedException e) {
+                                return;
+                            } catch (Exception e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        Thread.sleep(2000);
+        log.info("{}: stop server", name);
+        server.stop();
+        Thread.sleep(outageMs);
+        server.restart();
+        restartedAt.set(System.nanoTime());
+        log.info("{}: server restarted", name);
+        Thread.sleep(15000);
+
+        running.set(false);
+        service.shutdown();
+        service.awaitTermination(1, TimeUnit.MINUTES);
+        for (CuratorFramework client : clients) {
+            CloseableUtils.closeQuietly(client);
+        }
+
+        long peak = 0;
+        int window = 1000 / BUCKET_MS;
+        for (int i = 0; i + window <= BUCKETS; i++) {
+            long sum = 0;
+            for (int k = i; k < i + window; k++) {
+                sum += retryBuckets.get(k);
+            }
+            peak = Math.max(peak, sum);
+        }
+        long recoveredMs = 0;
+        int notRecovered = 0;
+        for (int i = 0; i < clientQty; i++) {
+            if (recoveredAt.get(i) == 0) {
+                notRecovered++;
+            } else {
+                recoveredMs = Math.max(recoveredMs, (recoveredAt.get(i) - restartedAt.get()) / 1000000);
+            }
+        }
+        long denied = 0;
+        for (AdaptiveRetryPolicy policy : policies) {
+            denied += policy.getDenied();
+        }
+        log.info("{}: {} clients x {} threads, retries: {}, peak retries/sec: {}, denied: {}, failed ops: {}, "
+                        + "all clients recovered {} ms after restart, not recovered: {}",
+                name, clientQty, threadsPerClient, retries.get(), peak, denied, failures.get(), recoveredMs, notRecovered);
+    }
+
+}
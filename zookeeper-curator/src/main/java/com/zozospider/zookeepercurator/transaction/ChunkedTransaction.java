@@ -0,0 +1,360 @@
+package com.zozospider.zookeepercurator.transaction;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 分批事务
+ * <p>
+ * 先通过 create / setData / delete / check 添加任意数量的操作，commit() 时按估算的请求字节数（maxChunkBytes）和操作数（maxChunkOps）
+ * 依次打包成尽量少的 multi 请求，每个请求不超过服务端 jute.maxbuffer 的限制。
+ * 各批次通过后台 transaction 提交，同时最多有 maxInFlight 批未完成（流水线），每批完成时回调 ChunkListener。
+ * <p>
+ * 注: 每一批是原子的，但批次之间不是：某一批失败时，之前的批次已生效，已发出的后续批次仍会执行，尚未发出的批次不再提交（结果码为 -1）。
+ * 同一会话上的请求按发送顺序执行，因此父节点的 create 只要排在子节点之前即可（可以在不同批次中）。
+ */
+public class ChunkedTransaction {
+
+    private final static Logger log = LoggerFactory.getLogger(ChunkedTransaction.class);
+
+    /**
+     * 默认每批最多估算字节数（服务端 jute.maxbuffer 默认约 1MB）
+     */
+    public static final int DEFAULT_MAX_CHUNK_BYTES = 512 * 1024;
+
+    public static final int DEFAULT_MAX_CHUNK_OPS = 1000;
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+    /**
+     * 未提交的批次的结果码
+     */
+    public static final int NOT_SUBMITTED = -1;
+
+    /**
+     * 估算单个操作除路径和数据外的请求开销（操作头、版本、ACL 等）
+     */
+    private static final int OP_OVERHEAD_BYTES = 64;
+
+    private final CuratorFramework client;
+    private final int maxChunkBytes;
+    private final int maxChunkOps;
+    private final int maxInFlight;
+    private final int namespaceBytes;
+
+    private final List<CuratorOp> ops = new ArrayList<>();
+    private final List<Integer> opBytes = new ArrayList<>();
+    private boolean committed;
+
+    /**
+     * 一批操作的执行结果
+     */
+    public static class ChunkResult {
+
+        private final int index;
+        private final int firstOp;
+        private final int ops;
+        private final int bytes;
+        private int resultCode = NOT_SUBMITTED;
+        private List<CuratorTransactionResult> results = Collections.emptyList();
+        private long latencyMs;
+
+        private ChunkResult(int index, int firstOp, int ops, int bytes) {
+            this.index = index;
+            this.firstOp = firstOp;
+            this.ops = ops;
+            this.bytes = bytes;
+        }
+
+        /**
+         * 批次序号
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * 本批第一个操作在所有操作中的序号
+         */
+        public int getFirstOp() {
+            return firstOp;
+        }
+
+        public int getOps() {
+            return ops;
+        }
+
+        /**
+         * 估算的请求字节数
+         */
+        public int getBytes() {
+            return bytes;
+        }
+
+        /**
+         * 结果码（KeeperException.Code 的 intValue），未提交时为 NOT_SUBMITTED
+         */
+        public int getResultCode() {
+            return resultCode;
+        }
+
+        public boolean isSuccess() {
+            return resultCode == KeeperException.Code.OK.intValue();
+        }
+
+        /**
+         * 各操作的结果（失败时可能为空）
+         */
+        public List<CuratorTransactionResult> getResults() {
+            return results;
+        }
+
+        /**
+         * 从发出到完成的时间
+         */
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return "ChunkResult{" +
+                    "index=" + index +
+                    ", firstOp=" + firstOp +
+                    ", ops=" + ops +
+                    ", bytes=" + bytes +
+                    ", resultCode=" + resultCode +
+                    ", latencyMs=" + latencyMs +
+                    '}';
+        }
+    }
+
+    /**
+     * 批次完成回调（在 Curator 的 EventThread 上调用，不要在其中执行耗时操作）
+     */
+    public interface ChunkListener {
+
+        void chunkCompleted(ChunkResult result);
+    }
+
+    public ChunkedTransaction(CuratorFramework client) {
+        this(client, DEFAULT_MAX_CHUNK_BYTES, DEFAULT_MAX_CHUNK_OPS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param client        已启动的客户端
+     * @param maxChunkBytes 每批最多估算字节数（需小于服务端 jute.maxbuffer）
+     * @param maxChunkOps   每批最多操作数
+     * @param maxInFlight   同时未完成的批次数
+     */
+    public ChunkedTransaction(CuratorFramework client, int maxChunkBytes, int maxChunkOps, int maxInFlight) {
+        if (maxChunkBytes <= 0 || maxChunkOps <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxChunkBytes: " + maxChunkBytes + ", maxChunkOps: " + maxChunkOps
+                    + ", maxInFlight: " + maxInFlight);
+        }
+        this.client = client;
+        this.maxChunkBytes = maxChunkBytes;
+        this.maxChunkOps = maxChunkOps;
+        this.maxInFlight = maxInFlight;
+        String namespace = client.getNamespace();
+        this.namespaceBytes = namespace == null || namespace.isEmpty() ? 0 : namespace.length() + 1;
+    }
+
+    /**
+     * 创建持久节点
+     */
+    public ChunkedTransaction create(String path, byte[] data) throws Exception {
+        return create(path, data, CreateMode.PERSISTENT);
+    }
+
+    /**
+     * 创建节点
+     */
+    public ChunkedTransaction create(String path, byte[] data, CreateMode createMode) throws Exception {
+        return add(client.transactionOp().create().withMode(createMode).forPath(path, data), path, data);
+    }
+
+    /**
+     * 修改节点数据
+     *
+     * @param version 当前版本，-1 表示不校验版本
+     */
+    public ChunkedTransaction setData(String path, byte[] data, int version) throws Exception {
+        return add(client.transactionOp().setData().withVersion(version).forPath(path, data), path, data);
+    }
+
+    /**
+     * 删除节点
+     *
+     * @param version 当前版本，-1 表示不校验版本
+     */
+    public ChunkedTransaction delete(String path, int version) throws Exception {
+        return add(client.transactionOp().delete().withVersion(version).forPath(path), path, null);
+    }
+
+    /**
+     * 校验节点版本
+     */
+    public ChunkedTransaction check(String path, int version) throws Exception {
+        return add(client.transactionOp().check().withVersion(version).forPath(path), path, null);
+    }
+
+    private synchronized ChunkedTransaction add(CuratorOp op, String path, byte[] data) {
+        if (committed) {
+            throw new IllegalStateException("transaction already committed");
+        }
+        ops.add(op);
+        opBytes.add(OP_OVERHEAD_BYTES + namespaceBytes + path.getBytes(StandardCharsets.UTF_8).length
+                + (data == null ? 0 : data.length));
+        return this;
+    }
+
+    /**
+     * 已添加的操作数
+     */
+    public synchronized int size() {
+        return ops.size();
+    }
+
+    public CompletableFuture<List<ChunkResult>> commit() {
+        return commit(null);
+    }
+
+    /**
+     * 打包并提交所有操作
+     *
+     * @param listener 每批完成时回调，可为 null
+     * @return 所有批次完成（或因失败停止提交）后完成，结果为按序号排列的各批次结果
+     */
+    public CompletableFuture<List<ChunkResult>> commit(ChunkListener listener) {
+
+        List<ChunkResult> chunks;
+        synchronized (this) {
+            if (committed) {
+                throw new IllegalStateException("transaction already committed");
+            }
+            committed = true;
+            chunks = pack();
+        }
+        log.info("commit {} ops in {} chunks", ops.size(), chunks.size());
+        Commit commit = new Commit(chunks, listener);
+        commit.pump();
+        return commit.future;
+    }
+
+    /**
+     * 按顺序打包（单个超过 maxChunkBytes 的操作单独成批）
+     */
+    private List<ChunkResult> pack() {
+        List<ChunkResult> chunks = new ArrayList<>();
+        int first = 0;
+        int bytes = 0;
+        for (int i = 0; i < ops.size(); i++) {
+            int size = opBytes.get(i);
+            int count = i - first;
+            if (count > 0 && (count >= maxChunkOps || bytes + size > maxChunkBytes)) {
+                chunks.add(new ChunkResult(chunks.size(), first, count, bytes));
+                first = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        if (first < ops.size()) {
+            chunks.add(new ChunkResult(chunks.size(), first, ops.size() - first, bytes));
+        }
+        return chunks;
+    }
+
+    /**
+     * 一次提交的状态
+     */
+    private class Commit {
+
+        private final List<ChunkResult> chunks;
+        private final ChunkListener listener;
+        private final CompletableFuture<List<ChunkResult>> future = new CompletableFuture<>();
+
+        // 以下字段由 this 保护
+        private int next;
+        private int inFlight;
+        private boolean failed;
+
+        private Commit(List<ChunkResult> chunks, ChunkListener listener) {
+            this.chunks = chunks;
+            this.listener = listener;
+        }
+
+        private void pump() {
+            List<ChunkResult> toSend = new ArrayList<>();
+            synchronized (this) {
+                while (inFlight < maxInFlight && next < chunks.size() && !failed) {
+                    toSend.add(chunks.get(next++));
+                    inFlight++;
+                }
+                if (inFlight == 0 && (next == chunks.size() || failed)) {
+                    future.complete(chunks);
+                    return;
+                }
+            }
+            for (ChunkResult chunk : toSend) {
+                send(chunk);
+            }
+        }
+
+        private void send(final ChunkResult chunk) {
+            final long begin = System.nanoTime();
+            try {
+                client.transaction().inBackground(new BackgroundCallback() {
+                    @Override
+                    public void processResult(CuratorFramework client, CuratorEvent event) {
+                        completed(chunk, event.getResultCode(), event.getOpResults(), begin);
+                    }
+                }).forOperations(ops.subList(chunk.getFirstOp(), chunk.getFirstOp() + chunk.getOps()));
+            } catch (Exception e) {
+                log.error("submit chunk " + chunk.getIndex() + " failure: " + e.getMessage(), e);
+                completed(chunk, KeeperException.Code.SYSTEMERROR.intValue(), null, begin);
+            }
+        }
+
+        private void completed(ChunkResult chunk, int rc, List<CuratorTransactionResult> results, long begin) {
+            chunk.resultCode = rc;
+            chunk.latencyMs = (System.nanoTime() - begin) / 1000000;
+            if (results != null) {
+                chunk.results = results;
+            }
+            if (rc != KeeperException.Code.OK.intValue()) {
+                KeeperException.Code code = KeeperException.Code.get(rc);
+                log.error("chunk {} failure, rc codeValue: {}, rc codeName: {}, ops: {}", chunk.getIndex(), rc,
+                        code == null ? null : code.name(), chunk.getOps());
+            }
+            if (listener != null) {
+                try {
+                    listener.chunkCompleted(chunk);
+                } catch (RuntimeException e) {
+                    log.error("chunk listener failure: " + e.getMessage(), e);
+                }
+            }
+            synchronized (this) {
+                inFlight--;
+                if (rc != KeeperException.Code.OK.intValue()) {
+                    failed = true;
+                }
+            }
+            pump();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.zozospider.zookeepercurator.transaction;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.retry.RetryNTimes;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在本地 TestingServer 上批量创建节点，对比逐个同步创建、单个 multi 请求和 ChunkedTransaction 分批流水线提交
+ * <p>
+ * 参数: [节点数] [节点数据字节数]
+ */
+public class ChunkedTransactionMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ChunkedTransactionMain.class);
+
+    public static void main(String[] args) throws Exception {
+
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int dataSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        byte[] data = new byte[dataSize];
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            // 逐个同步创建
+            CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryNTimes(3, 1000));
+            client.start();
+            try {
+                client.create().forPath("/sync");
+                long begin = System.nanoTime();
+                for (int i = 0; i < nodes; i++) {
+                    client.create().forPath("/sync/n" + i, data);
+                }
+                report("one create per request", nodes, System.nanoTime() - begin);
+            } finally {
+                CloseableUtils.closeQuietly(client);
+            }
+
+            // 单个 multi 请求（超过 jute.maxbuffer 时服务端断开连接）
+            client = CuratorFrameworkFactory.builder()
+                    .connectString(server.getConnectString())
+                    .retryPolicy(new RetryOneTime(100))
+                    .connectionTimeoutMs(3000)
+                    .build();
+            client.start();
+            try {
+                client.create().forPath("/single");
+                List<CuratorOp> ops = new ArrayList<>();
+                for (int i = 0; i < nodes; i++) {
+                    ops.add(client.transactionOp().create().forPath("/single/n" + i, data));
+                }
+                long begin = System.nanoTime();
+                try {
+                    client.transaction().forOperations(ops);
+                    report("single multi", nodes, System.nanoTime() - begin);
+                } catch (Exception e) {
+                    log.info("single multi: {} ops failed after {} ms: {}", nodes, (System.nanoTime() - begin) / 1000000, e.toString());
+                }
+            } finally {
+                CloseableUtils.closeQuietly(client);
+            }
+
+            // 分批流水线提交
+            client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryNTimes(3, 1000));
+            client.start();
+            try {
+                ChunkedTransaction transaction = new ChunkedTransaction(client);
+                transaction.create("/chunked", new byte[0]);
+                for (int i = 0; i < nodes; i++) {
+                    transaction.create("/chunked/n" + i, data);
+                }
+                final AtomicInteger completed = new AtomicInteger();
+                long begin = System.nanoTime();
+                List<ChunkedTransaction.ChunkResult> results = transaction.commit(new ChunkedTransaction.ChunkListener() {
+                    @Override
+                    public void chunkCompleted(ChunkedTransaction.ChunkResult result) {
+                        completed.incrementAndGet();
+                        log.debug("chunk completed: {}", result);
+                    }
+                }).get();
+                long elapsed = System.nanoTime() - begin;
+                int failed = 0;
+                for (ChunkedTransaction.ChunkResult result : results) {
+                    if (!result.isSuccess()) {
+                        failed++;
+                    }
+                }
+                report("ChunkedTransaction", transaction.size(), elapsed);
+                log.info("ChunkedTransaction: {} chunks (first: {}), {} completed, {} failed, children: {}",
+                        results.size(), results.get(0), completed.get(), failed,
+                        client.checkExists().forPath("/chunked").getNumChildren());
+            } finally {
+                CloseableUtils.closeQuietly(client);
+            }
+        }
+    }
+
+    private static void report(String name, int ops, long elapsedNanos) {
+        log.info("{}: {} ops in {} ms, {} ops/sec", name, ops, elapsedNanos / 1000000,
+                (long) (ops * 1000000000.0 / elapsedNanos));
+    }
+
+}
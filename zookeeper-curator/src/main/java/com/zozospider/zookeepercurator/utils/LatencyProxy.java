@@ -0,0 +1,162 @@
+package com.zozospider.zookeepercurator.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 给本地 TestingServer 增加网络延迟的 TCP 代理（用于压测，模拟客户端与服务端之间的往返时间）
+ * <p>
+ * 两个方向上收到的数据都延迟 delayMs 后按原顺序转发，因此往返时间增加 2 * delayMs，请求仍可流水线发送。
+ * 每个连接使用 4 个线程（两个方向各一个读线程和一个写线程）。
+ */
+public class LatencyProxy implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(LatencyProxy.class);
+
+    private final InetSocketAddress target;
+    private final long delayNanos;
+    private final ServerSocket serverSocket;
+    private final CopyOnWriteArrayList<Socket> sockets = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * 一段待转发的数据
+     */
+    private static class Chunk {
+
+        private final long due;
+        private final byte[] data;
+
+        private Chunk(long due, byte[] data) {
+            this.due = due;
+            this.data = data;
+        }
+    }
+
+    /**
+     * @param targetPort 被代理的本地端口
+     * @param delayMs    单向延迟
+     */
+    public LatencyProxy(int targetPort, long delayMs) throws IOException {
+        this.target = new InetSocketAddress(InetAddress.getLoopbackAddress(), targetPort);
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMs);
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "LatencyProxy-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * 客户端应连接的地址
+     */
+    public String getConnectString() {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverSocket);
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket client = serverSocket.accept();
+                Socket server = new Socket();
+                server.connect(target);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+                pipe(client, server);
+                pipe(server, client);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("accept failure: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void pipe(final Socket from, final Socket to) {
+        final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[64 * 1024];
+                try {
+                    InputStream in = from.getInputStream();
+                    int n;
+                    while ((n = in.read(buffer)) >= 0) {
+                        queue.add(new Chunk(System.nanoTime() + delayNanos, Arrays.copyOf(buffer, n)));
+                    }
+                } catch (IOException e) {
+                    // 连接已关闭
+                }
+                queue.add(new Chunk(System.nanoTime() + delayNanos, null));
+            }
+        }, "LatencyProxy-read");
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = to.getOutputStream();
+                    while (true) {
+                        Chunk chunk = queue.take();
+                        long wait = chunk.due - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        if (chunk.data == null) {
+                            break;
+                        }
+                        out.write(chunk.data);
+                        out.flush();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // 连接已关闭
+                }
+                closeQuietly(from);
+                closeQuietly(to);
+                sockets.remove(from);
+                sockets.remove(to);
+            }
+        }, "LatencyProxy-write");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
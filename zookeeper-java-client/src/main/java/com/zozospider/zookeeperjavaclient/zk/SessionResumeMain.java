@@ -0,0 +1,110 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * 在本地 TestingServer 上模拟进程崩溃后快速重启，对比重新挂接原会话与建立新会话时，服务重新注册（临时节点可用）所需的时间
+ * <p>
+ * 每一轮先启动一个子进程，由子进程建立可恢复连接、注册临时节点后直接退出（不关闭会话，模拟崩溃），
+ * 然后当前进程作为"重启后的进程"重新连接并注册：
+ * resume: 使用会话信息文件重新挂接原会话，临时节点仍在，连接建立即可提供服务；
+ * fresh:  不使用会话信息文件，原临时节点要等旧会话超时后才被删除，期间重新注册失败（NodeExists）。
+ */
+public class SessionResumeMain {
+
+    private final static Logger log = LoggerFactory.getLogger(SessionResumeMain.class);
+
+    private static final String SERVICE_PATH = "/services";
+    private static final String INSTANCE_PATH = SERVICE_PATH + "/instance-1";
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length == 3 && "crash".equals(args[0])) {
+            crash(args[1], new File(args[2]));
+            return;
+        }
+
+        File sessionFile = File.createTempFile("zk-session", ".properties");
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            ZooKeeperClient admin = new ZooKeeperClient();
+            admin.connect(server.getConnectString());
+            admin.getZookeeper().create(SERVICE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+            // resume: 重新挂接原会话
+            runCrashedProcess(server.getConnectString(), sessionFile);
+            long begin = System.nanoTime();
+            ZooKeeperClient resumed = new ZooKeeperClient();
+            resumed.connectResumable(server.getConnectString(), sessionFile);
+            Stat stat = resumed.getZookeeper().exists(INSTANCE_PATH, false);
+            log.info("resume: connected and registered in {} ms, sessionId: 0x{}, ephemeralOwner: 0x{}",
+                    (System.nanoTime() - begin) / 1000000, Long.toHexString(resumed.getZookeeper().getSessionId()),
+                    stat == null ? null : Long.toHexString(stat.getEphemeralOwner()));
+            // 正常关闭：会话关闭，临时节点删除，会话信息文件删除
+            resumed.close();
+            log.info("resume: session file exists after close: {}", sessionFile.exists());
+
+            // fresh: 建立新会话，需要等旧会话超时后才能重新注册
+            runCrashedProcess(server.getConnectString(), sessionFile);
+            begin = System.nanoTime();
+            ZooKeeperClient fresh = new ZooKeeperClient();
+            fresh.connect(server.getConnectString());
+            long connectedMs = (System.nanoTime() - begin) / 1000000;
+            while (true) {
+                try {
+                    fresh.getZookeeper().create(INSTANCE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+                    break;
+                } catch (KeeperException.NodeExistsException e) {
+                    Thread.sleep(200);
+                }
+            }
+            log.info("fresh: connected in {} ms, registered in {} ms (waiting for the old session to expire)",
+                    connectedMs, (System.nanoTime() - begin) / 1000000);
+            fresh.close();
+            admin.close();
+        } finally {
+            sessionFile.delete();
+        }
+    }
+
+    /**
+     * 启动子进程：建立可恢复连接，注册临时节点后不关闭会话直接退出
+     */
+    private static void runCrashedProcess(String connectString, File sessionFile) throws Exception {
+
+        File logFile = File.createTempFile("zk-session-crash", ".log");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                SessionResumeMain.class.getName(), "crash", connectString, sessionFile.getAbsolutePath())
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        int exitCode = process.waitFor();
+        logFile.delete();
+        if (exitCode != 0) {
+            throw new IllegalStateException("crash process exit code: " + exitCode);
+        }
+    }
+
+    private static void crash(String connectString, File sessionFile) throws Exception {
+
+        ZooKeeperClient client = new ZooKeeperClient();
+        client.connectResumable(connectString, sessionFile);
+        ZooKeeper zookeeper = client.getZookeeper();
+        zookeeper.create(INSTANCE_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+        // 模拟进程崩溃（不关闭会话）
+        Runtime.getRuntime().halt(0);
+    }
+
+}
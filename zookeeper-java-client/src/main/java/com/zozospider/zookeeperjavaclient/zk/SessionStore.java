@@ -0,0 +1,166 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * 会话信息本地持久化
+ * <p>
+ * 将 session id、session password、最后看到的 zxid 及保存时间写入本地文件，进程重启后可据此在会话超时前重新挂接到原会话，
+ * 原会话创建的临时节点得以保留。
+ * 文件先写入临时文件再原子替换，进程在写入过程中退出也不会留下不完整的文件。
+ * 拿到 session password 就能挂接到该会话，文件系统支持 POSIX 权限时文件只有所有者可读写（rw-------）。
+ */
+public class SessionStore {
+
+    private final static Logger log = LoggerFactory.getLogger(SessionStore.class);
+
+    private final File file;
+
+    /**
+     * 持久化的会话信息
+     */
+    public static class Session {
+
+        private final long sessionId;
+        private final byte[] sessionPasswd;
+        private final int sessionTimeout;
+        private final long lastZxid;
+        private final long savedAt;
+
+        public Session(long sessionId, byte[] sessionPasswd, int sessionTimeout, long lastZxid, long savedAt) {
+            this.sessionId = sessionId;
+            this.sessionPasswd = sessionPasswd;
+            this.sessionTimeout = sessionTimeout;
+            this.lastZxid = lastZxid;
+            this.savedAt = savedAt;
+        }
+
+        public long getSessionId() {
+            return sessionId;
+        }
+
+        public byte[] getSessionPasswd() {
+            return sessionPasswd;
+        }
+
+        /**
+         * 与服务端协商后的会话超时时间
+         */
+        public int getSessionTimeout() {
+            return sessionTimeout;
+        }
+
+        public long getLastZxid() {
+            return lastZxid;
+        }
+
+        public long getSavedAt() {
+            return savedAt;
+        }
+
+        /**
+         * 距上次保存是否仍在会话超时时间内（超时后会话必然已被服务端清除，不必再尝试挂接）
+         */
+        public boolean isFresh(long now) {
+            return now - savedAt < sessionTimeout;
+        }
+
+        @Override
+        public String toString() {
+            return "Session{" +
+                    "sessionId=0x" + Long.toHexString(sessionId) +
+                    ", sessionTimeout=" + sessionTimeout +
+                    ", lastZxid=0x" + Long.toHexString(lastZxid) +
+                    ", savedAt=" + savedAt +
+                    '}';
+        }
+    }
+
+    public SessionStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 读取会话信息
+     *
+     * @return 文件不存在或内容无效时为 null
+     */
+    public Session load() {
+
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+            return new Session(
+                    Long.parseUnsignedLong(properties.getProperty("sessionId"), 16),
+                    Base64.getDecoder().decode(properties.getProperty("sessionPasswd")),
+                    Integer.parseInt(properties.getProperty("sessionTimeout")),
+                    Long.parseUnsignedLong(properties.getProperty("lastZxid"), 16),
+                    Long.parseLong(properties.getProperty("savedAt")));
+        } catch (IOException | RuntimeException e) {
+            log.warn("load session from {} failure: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 保存会话信息
+     *
+     * @throws IOException
+     */
+    public void save(Session session) throws IOException {
+
+        Properties properties = new Properties();
+        properties.setProperty("sessionId", Long.toHexString(session.getSessionId()));
+        properties.setProperty("sessionPasswd", Base64.getEncoder().encodeToString(session.getSessionPasswd()));
+        properties.setProperty("sessionTimeout", String.valueOf(session.getSessionTimeout()));
+        properties.setProperty("lastZxid", Long.toHexString(session.getLastZxid()));
+        properties.setProperty("savedAt", String.valueOf(session.getSavedAt()));
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create directory: " + dir);
+        }
+        // 临时文件创建时即只有所有者可读写，写入前不会被其他用户读取
+        Path tmp;
+        if (dir.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+        }
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "ZooKeeper session");
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 删除会话信息（会话已正常关闭或已过期）
+     */
+    public void delete() {
+        if (file.exists() && !file.delete()) {
+            log.warn("delete session file {} failure", file);
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 并行异步读取整棵子树
+ * <p>
+ * 使用异步 getData / getChildren 遍历子树，同时最多有 maxInFlight 个请求未完成。
+ * 每读到一个节点就将 (path, Stat, data) 交给 NodeVisitor 处理，不在内存中保存整棵树。
+ * 只有 Stat.numChildren 大于 0 的节点才会再调用 getChildren，叶子节点只需一次请求。
+ * 待读取的路径按深度优先顺序取出，使待读取队列保持较小。
+ * <p>
+ * 注: 遍历期间被删除的节点会被跳过；该读取不是快照一致的（不同节点可能读取自不同时刻）。
+ */
+public class SubtreeReader {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    private final ZooKeeper zookeeper;
+    private final int maxInFlight;
+
+    /**
+     * 节点处理
+     * <p>
+     * 在 ZooKeeper 的 EventThread 上依次调用（不会并发），处理过慢会拖慢整个遍历。
+     */
+    public interface NodeVisitor {
+
+        void visit(String path, Stat stat, byte[] data) throws Exception;
+    }
+
+    public SubtreeReader(ZooKeeper zookeeper) {
+        this(zookeeper, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param zookeeper   已建立连接的 ZooKeeper 对象
+     * @param maxInFlight 同时未完成的请求数上限
+     */
+    public SubtreeReader(ZooKeeper zookeeper, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.zookeeper = zookeeper;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 读取子树
+     *
+     * @param root    子树根节点路径
+     * @param visitor 节点处理
+     * @return 遍历结束后完成，结果为读取到的节点数；请求失败或 visitor 抛出异常时异常结束
+     */
+    public CompletableFuture<Long> read(String root, NodeVisitor visitor) {
+        Walk walk = new Walk(visitor);
+        walk.start(root);
+        return walk.future;
+    }
+
+    /**
+     * 一次遍历的状态
+     */
+    private class Walk implements AsyncCallback.DataCallback, AsyncCallback.ChildrenCallback {
+
+        private final NodeVisitor visitor;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        // 以下字段由 this 保护
+        private final ArrayDeque<String> pending = new ArrayDeque<>();
+        private int inFlight;
+        private long nodes;
+
+        private Walk(NodeVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        private void start(String root) {
+            synchronized (this) {
+                pending.add(root);
+            }
+            pump();
+        }
+
+        /**
+         * 在窗口允许的范围内发起请求（异步调用只是将请求放入发送队列，不会在当前线程回调）
+         */
+        private synchronized void pump() {
+            while (inFlight < maxInFlight && !pending.isEmpty() && !future.isDone()) {
+                String path = pending.pollLast();
+                inFlight++;
+                zookeeper.getData(path, false, this, null);
+            }
+            if (inFlight == 0 && pending.isEmpty()) {
+                future.complete(nodes);
+            }
+        }
+
+        /**
+         * 一个节点的请求全部完成，释放窗口
+         */
+        private void done() {
+            synchronized (this) {
+                inFlight--;
+            }
+            pump();
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+
+            if (rc == KeeperException.Code.NONODE.intValue()) {
+                // 遍历期间被删除
+                done();
+                return;
+            }
+            if (rc != KeeperException.Code.OK.intValue()) {
+                future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                return;
+            }
+            try {
+                visitor.visit(path, stat, data);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            synchronized (this) {
+                nodes++;
+            }
+            if (stat.getNumChildren() > 0) {
+                // 继续占用窗口，读取子节点列表
+                zookeeper.getChildren(path, false, this, null);
+            } else {
+                done();
+            }
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, List<String> children) {
+
+            if (rc == KeeperException.Code.OK.intValue()) {
+                String prefix = "/".equals(path) ? path : path + "/";
+                synchronized (this) {
+                    for (String child : children) {
+                        pending.add(prefix + child);
+                    }
+                }
+            } else if (rc != KeeperException.Code.NONODE.intValue()) {
+                future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                return;
+            }
+            done();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在本地 TestingServer 上对比同步递归读取与 SubtreeReader 并行异步读取整棵子树的速度（nodes/sec）和堆内存峰值
+ * <p>
+ * 参数: [第一层节点数] [第二层节点数] [第三层节点数] [节点数据字节数]
+ */
+public class SubtreeReaderMain {
+
+    private final static Logger log = LoggerFactory.getLogger(SubtreeReaderMain.class);
+
+    private static final String ROOT = "/tree";
+
+    public static void main(String[] args) throws Exception {
+
+        int level1 = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int level2 = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int level3 = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int dataSize = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            ZooKeeperClient zooKeeperClient = new ZooKeeperClient();
+            zooKeeperClient.connect(server.getConnectString());
+            ZooKeeper zookeeper = zooKeeperClient.getZookeeper();
+            try {
+                long total = populate(zookeeper, level1, level2, level3, new byte[dataSize]);
+                log.info("populate {} nodes", total);
+
+                // 同步递归读取
+                final AtomicLong bytes = new AtomicLong();
+                System.gc();
+                resetPeakHeap();
+                long begin = System.nanoTime();
+                long nodes = readSync(zookeeper, ROOT, bytes);
+                report("sync recursive", nodes, bytes.get(), System.nanoTime() - begin);
+
+                // 并行异步读取
+                bytes.set(0);
+                System.gc();
+                resetPeakHeap();
+                begin = System.nanoTime();
+                nodes = new SubtreeReader(zookeeper).read(ROOT, new SubtreeReader.NodeVisitor() {
+                    @Override
+                    public void visit(String path, Stat stat, byte[] data) {
+                        bytes.addAndGet(data == null ? 0 : data.length);
+                    }
+                }).get();
+                report("async SubtreeReader", nodes, bytes.get(), System.nanoTime() - begin);
+
+            } finally {
+                zooKeeperClient.close();
+            }
+        }
+    }
+
+    /**
+     * 按层次创建测试子树（使用 ZooKeeperAsyncClient 流水线创建）
+     */
+    private static long populate(ZooKeeper zookeeper, int level1, int level2, int level3, byte[] data) throws Exception {
+
+        ZooKeeperAsyncClient asyncClient = new ZooKeeperAsyncClient(zookeeper);
+        asyncClient.create(ROOT, data, CreateMode.PERSISTENT).get();
+        List<String> parents = new ArrayList<>();
+        parents.add(ROOT);
+        long total = 1;
+        for (int fanout : new int[]{level1, level2, level3}) {
+            List<String> children = new ArrayList<>();
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (String parent : parents) {
+                for (int i = 0; i < fanout; i++) {
+                    String child = parent + "/n" + i;
+                    children.add(child);
+                    futures.add(asyncClient.create(child, data, CreateMode.PERSISTENT));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            total += children.size();
+            parents = children;
+        }
+        return total;
+    }
+
+    /**
+     * 同步递归读取（与 ZooKeeperClient 中的同步 getData / getChildren 方式相同）
+     */
+    private static long readSync(ZooKeeper zookeeper, String path, AtomicLong bytes) throws KeeperException, InterruptedException {
+
+        Stat stat = new Stat();
+        byte[] data = zookeeper.getData(path, false, stat);
+        bytes.addAndGet(data == null ? 0 : data.length);
+        long nodes = 1;
+        for (String child : zookeeper.getChildren(path, false)) {
+            nodes += readSync(zookeeper, path + "/" + child, bytes);
+        }
+        return nodes;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void report(String name, long nodes, long bytes, long elapsedNanos) {
+        log.info("{}: {} nodes, {} data bytes in {} ms, {} nodes/sec, peak heap {} MB", name, nodes, bytes,
+                elapsedNanos / 1000000, (long) (nodes * 1000000000.0 / elapsedNanos), peakHeap() / 1024 / 1024);
+    }
+
+}
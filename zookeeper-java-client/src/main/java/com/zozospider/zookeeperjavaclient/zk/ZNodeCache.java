@@ -0,0 +1,311 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 Watcher 失效的读缓存（read-through）
+ * <p>
+ * getData / exists / getChildren 未命中时读取服务端，并以本对象作为 Watcher 注册一次性监听；
+ * 收到 NodeDataChanged / NodeDeleted / NodeCreated / NodeChildrenChanged 时删除对应的缓存项，下次读取时重新加载并重新注册监听。
+ * 连接断开（Disconnected）或会话过期（Expired）时清空全部缓存，因为这期间的变更通知可能丢失。
+ * <p>
+ * 缓存按 LRU 淘汰，容量按估算的字节数计算。
+ */
+public class ZNodeCache implements Watcher {
+
+    private final static Logger log = LoggerFactory.getLogger(ZNodeCache.class);
+
+    /**
+     * 估算每个缓存项除路径和数据外的固定开销（Entry、Stat、LinkedHashMap 节点等）
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private static final char DATA = 'd';
+    private static final char EXISTS = 'e';
+    private static final char CHILDREN = 'c';
+
+    /**
+     * exists 缓存中表示节点不存在
+     */
+    private static final Stat NO_NODE = new Stat();
+
+    private final ZooKeeper zookeeper;
+    private final long maxBytes;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 正在从服务端加载的缓存项。加载期间如果收到失效通知，则删除加载标记，加载结果不再写入缓存
+     */
+    private final Map<String, Object> loading = new HashMap<>();
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static class Entry {
+
+        private final Object value;
+        private final Stat stat;
+        private final int size;
+
+        private Entry(Object value, Stat stat, int size) {
+            this.value = value;
+            this.stat = stat;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @param zookeeper 已建立连接的 ZooKeeper 对象
+     * @param maxBytes  缓存容量（估算字节数）
+     */
+    public ZNodeCache(ZooKeeper zookeeper, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.zookeeper = zookeeper;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取节点数据
+     *
+     * @param path 节点路径
+     * @param stat 不为 null 时写入节点的 Stat
+     * @return 节点数据（副本）
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    public byte[] getData(String path, Stat stat) throws KeeperException, InterruptedException {
+
+        String key = DATA + path;
+        Entry entry = lookup(key);
+        if (entry == null) {
+            Object token = beginLoad(key);
+            try {
+                Stat loaded = new Stat();
+                byte[] data = zookeeper.getData(path, this, loaded);
+                int size = ENTRY_OVERHEAD_BYTES + key.length() * 2 + (data == null ? 0 : data.length);
+                entry = new Entry(data, loaded, size);
+            } finally {
+                endLoad(key, token, entry);
+            }
+        }
+        if (stat != null) {
+            ZooKeeperAsyncClient.copyStat(entry.stat, stat);
+        }
+        byte[] data = (byte[]) entry.value;
+        return data == null ? null : data.clone();
+    }
+
+    /**
+     * 节点是否存在
+     *
+     * @param path 节点路径
+     * @return 节点的 Stat，节点不存在时为 null
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    public Stat exists(String path) throws KeeperException, InterruptedException {
+
+        String key = EXISTS + path;
+        Entry entry = lookup(key);
+        if (entry == null) {
+            Object token = beginLoad(key);
+            try {
+                Stat loaded = zookeeper.exists(path, this);
+                entry = new Entry(null, loaded == null ? NO_NODE : loaded, ENTRY_OVERHEAD_BYTES + key.length() * 2);
+            } finally {
+                endLoad(key, token, entry);
+            }
+        }
+        if (entry.stat == NO_NODE) {
+            return null;
+        }
+        Stat stat = new Stat();
+        ZooKeeperAsyncClient.copyStat(entry.stat, stat);
+        return stat;
+    }
+
+    /**
+     * 获取子节点列表
+     *
+     * @param path 节点路径
+     * @return 子节点名称列表（只读）
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getChildren(String path) throws KeeperException, InterruptedException {
+
+        String key = CHILDREN + path;
+        Entry entry = lookup(key);
+        if (entry == null) {
+            Object token = beginLoad(key);
+            try {
+                List<String> children = zookeeper.getChildren(path, this);
+                int size = ENTRY_OVERHEAD_BYTES + key.length() * 2;
+                for (String child : children) {
+                    size += 40 + child.length() * 2;
+                }
+                entry = new Entry(Collections.unmodifiableList(children), null, size);
+            } finally {
+                endLoad(key, token, entry);
+            }
+        }
+        return (List<String>) entry.value;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (lock) {
+            entries.clear();
+            loading.clear();
+            bytes = 0;
+        }
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+
+        if (event.getType() == Event.EventType.None) {
+            if (event.getState() == Event.KeeperState.Disconnected || event.getState() == Event.KeeperState.Expired) {
+                log.info("ZNodeCache clear, state: {}", event.getState());
+                clear();
+            }
+            return;
+        }
+
+        String path = event.getPath();
+        switch (event.getType()) {
+            case NodeCreated:
+                invalidate(EXISTS + path);
+                break;
+            case NodeDataChanged:
+                invalidate(DATA + path);
+                invalidate(EXISTS + path);
+                break;
+            case NodeChildrenChanged:
+                invalidate(CHILDREN + path);
+                break;
+            case NodeDeleted:
+                invalidate(DATA + path);
+                invalidate(EXISTS + path);
+                invalidate(CHILDREN + path);
+                break;
+            default:
+                break;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getBytes() {
+        synchronized (lock) {
+            return bytes;
+        }
+    }
+
+    public int getSize() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 因容量不足被 LRU 淘汰的缓存项数
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * 因 Watcher 通知被删除的缓存项数
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    private Entry lookup(String key) {
+        Entry entry;
+        synchronized (lock) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    private Object beginLoad(String key) {
+        Object token = new Object();
+        synchronized (lock) {
+            loading.put(key, token);
+        }
+        return token;
+    }
+
+    /**
+     * 结束加载并写入缓存
+     *
+     * @param entry 加载结果，加载失败时为 null
+     */
+    private void endLoad(String key, Object token, Entry entry) {
+        synchronized (lock) {
+            // 加载期间收到了失效通知（或被更新的加载覆盖），不写入缓存
+            if (!loading.remove(key, token) || entry == null) {
+                return;
+            }
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                bytes -= old.size;
+            }
+            bytes += entry.size;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                bytes -= eldest.size;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void invalidate(String key) {
+        synchronized (lock) {
+            loading.remove(key);
+            Entry old = entries.remove(key);
+            if (old != null) {
+                bytes -= old.size;
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 在本地 TestingServer 上对比热点配置节点直接读取与经过 ZNodeCache 读取的耗时，并验证修改后缓存失效
+ * <p>
+ * 参数: [读取次数]
+ */
+public class ZNodeCacheMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ZNodeCacheMain.class);
+
+    private static final String PATH = "/config";
+
+    public static void main(String[] args) throws Exception {
+
+        int reads = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            ZooKeeperClient zooKeeperClient = new ZooKeeperClient();
+            zooKeeperClient.connect(server.getConnectString());
+            ZooKeeper zookeeper = zooKeeperClient.getZookeeper();
+            try {
+                zookeeper.create(PATH, "v1".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+                long begin = System.nanoTime();
+                for (int i = 0; i < reads; i++) {
+                    zookeeper.getData(PATH, false, null);
+                }
+                log.info("getData direct: {} reads in {} ms", reads, (System.nanoTime() - begin) / 1000000);
+
+                ZNodeCache cache = new ZNodeCache(zookeeper, 16 * 1024 * 1024);
+                begin = System.nanoTime();
+                for (int i = 0; i < reads; i++) {
+                    cache.getData(PATH, null);
+                }
+                log.info("getData cached: {} reads in {} ms", reads, (System.nanoTime() - begin) / 1000000);
+
+                // 修改节点数据，Watcher 通知到达后缓存失效，下次读取到新值
+                zookeeper.setData(PATH, "v2".getBytes(), -1);
+                while (cache.getInvalidations() == 0) {
+                    Thread.sleep(10);
+                }
+                log.info("getData after setData: {}", new String(cache.getData(PATH, null)));
+                log.info("cache hits: {}, misses: {}, evictions: {}, invalidations: {}, bytes: {}",
+                        cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getInvalidations(), cache.getBytes());
+
+            } finally {
+                zooKeeperClient.close();
+            }
+        }
+    }
+
+}
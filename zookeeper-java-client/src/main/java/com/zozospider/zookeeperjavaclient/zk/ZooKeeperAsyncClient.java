@@ -0,0 +1,307 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * ZooKeeper Java client（异步流水线）
+ * <p>
+ * 每个操作立即返回 CompletableFuture，由 ZooKeeper 回调完成，调用线程无需等待。
+ * 同一会话上未完成的请求数由 maxInFlight 窗口限制：窗口已满时，发起请求的线程阻塞直到有请求返回（背压）。
+ * <p>
+ * 注: 回调及 future 的后续操作（thenApply 等）运行在 ZooKeeper 的 EventThread 上，
+ * 不要在其中同步地发起新的请求，否则窗口已满时会阻塞 EventThread 导致死锁。
+ */
+public class ZooKeeperAsyncClient {
+
+    /**
+     * 默认同一会话上允许的未完成请求数
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    private final ZooKeeper zookeeper;
+    private final Semaphore window;
+    private final int maxInFlight;
+    private final OpMetrics metrics;
+
+    public ZooKeeperAsyncClient(ZooKeeper zookeeper) {
+        this(zookeeper, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param zookeeper   已建立连接的 ZooKeeper 对象
+     * @param maxInFlight 同一会话上允许的未完成请求数
+     */
+    public ZooKeeperAsyncClient(ZooKeeper zookeeper, int maxInFlight) {
+        this(zookeeper, maxInFlight, null);
+    }
+
+    /**
+     * @param zookeeper   已建立连接的 ZooKeeper 对象
+     * @param maxInFlight 同一会话上允许的未完成请求数
+     * @param metrics     记录每个请求从发出到回调的延迟及错误码，为 null 时不记录
+     */
+    public ZooKeeperAsyncClient(ZooKeeper zookeeper, int maxInFlight, OpMetrics metrics) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.zookeeper = zookeeper;
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        this.metrics = metrics;
+    }
+
+    public ZooKeeper getZookeeper() {
+        return zookeeper;
+    }
+
+    /**
+     * 当前未完成的请求数
+     */
+    public int getInFlight() {
+        return maxInFlight - window.availablePermits();
+    }
+
+    /**
+     * 创建节点
+     *
+     * @param path       节点路径
+     * @param data       节点数据
+     * @param createMode 节点类型
+     * @return 实际创建的节点路径（顺序节点会带上序号）
+     * @throws InterruptedException 等待窗口时被中断
+     */
+    public CompletableFuture<String> create(String path, byte[] data, CreateMode createMode) throws InterruptedException {
+
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        window.acquire();
+        final long begin = System.nanoTime();
+        try {
+            zookeeper.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, createMode, new AsyncCallback.StringCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, String name) {
+                    window.release();
+                    record(OpMetrics.Op.CREATE, begin, rc);
+                    if (rc == KeeperException.Code.OK.intValue()) {
+                        future.complete(name);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                    }
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            // 同步抛出（如路径不合法）时不会回调，在此归还窗口
+            rejected(future, OpMetrics.Op.CREATE, begin, e);
+        }
+        return future;
+    }
+
+    /**
+     * 删除节点
+     *
+     * @param path    节点路径
+     * @param version 当前版本，-1 表示不校验版本
+     * @throws InterruptedException 等待窗口时被中断
+     */
+    public CompletableFuture<Void> delete(String path, int version) throws InterruptedException {
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        window.acquire();
+        final long begin = System.nanoTime();
+        try {
+            zookeeper.delete(path, version, new AsyncCallback.VoidCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx) {
+                    window.release();
+                    record(OpMetrics.Op.DELETE, begin, rc);
+                    if (rc == KeeperException.Code.OK.intValue()) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                    }
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            // 同步抛出（如路径不合法）时不会回调，在此归还窗口
+            rejected(future, OpMetrics.Op.DELETE, begin, e);
+        }
+        return future;
+    }
+
+    /**
+     * 节点是否存在
+     *
+     * @param path  节点路径
+     * @param watch 是否在默认 Watcher 上注册监听
+     * @return 节点的 Stat，节点不存在时为 null
+     * @throws InterruptedException 等待窗口时被中断
+     */
+    public CompletableFuture<Stat> exists(String path, boolean watch) throws InterruptedException {
+
+        final CompletableFuture<Stat> future = new CompletableFuture<>();
+        window.acquire();
+        final long begin = System.nanoTime();
+        try {
+            zookeeper.exists(path, watch, new AsyncCallback.StatCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    window.release();
+                    record(OpMetrics.Op.EXISTS, begin, rc);
+                    if (rc == KeeperException.Code.OK.intValue()) {
+                        future.complete(stat);
+                    } else if (rc == KeeperException.Code.NONODE.intValue()) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                    }
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            // 同步抛出（如路径不合法）时不会回调，在此归还窗口
+            rejected(future, OpMetrics.Op.EXISTS, begin, e);
+        }
+        return future;
+    }
+
+    /**
+     * 获取节点数据
+     *
+     * @param path  节点路径
+     * @param watch 是否在默认 Watcher 上注册监听
+     * @param stat  不为 null 时，在 future 完成前写入节点的 Stat
+     * @throws InterruptedException 等待窗口时被中断
+     */
+    public CompletableFuture<byte[]> getData(String path, boolean watch, final Stat stat) throws InterruptedException {
+
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        window.acquire();
+        final long begin = System.nanoTime();
+        try {
+            zookeeper.getData(path, watch, new AsyncCallback.DataCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, byte[] data, Stat result) {
+                    window.release();
+                    record(OpMetrics.Op.GET_DATA, begin, rc);
+                    if (rc == KeeperException.Code.OK.intValue()) {
+                        if (stat != null) {
+                            copyStat(result, stat);
+                        }
+                        future.complete(data);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                    }
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            // 同步抛出（如路径不合法）时不会回调，在此归还窗口
+            rejected(future, OpMetrics.Op.GET_DATA, begin, e);
+        }
+        return future;
+    }
+
+    /**
+     * 获取子节点列表
+     *
+     * @param path  节点路径
+     * @param watch 是否在默认 Watcher 上注册监听
+     * @throws InterruptedException 等待窗口时被中断
+     */
+    public CompletableFuture<List<String>> getChildren(String path, boolean watch) throws InterruptedException {
+
+        final CompletableFuture<List<String>> future = new CompletableFuture<>();
+        window.acquire();
+        final long begin = System.nanoTime();
+        try {
+            zookeeper.getChildren(path, watch, new AsyncCallback.ChildrenCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, List<String> children) {
+                    window.release();
+                    record(OpMetrics.Op.GET_CHILDREN, begin, rc);
+                    if (rc == KeeperException.Code.OK.intValue()) {
+                        future.complete(children);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                    }
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            // 同步抛出（如路径不合法）时不会回调，在此归还窗口
+            rejected(future, OpMetrics.Op.GET_CHILDREN, begin, e);
+        }
+        return future;
+    }
+
+    /**
+     * 修改节点数据
+     *
+     * @param path    节点路径
+     * @param data    修改后节点数据
+     * @param version 当前版本，-1 表示不校验版本
+     * @return 修改后节点的 Stat
+     * @throws InterruptedException 等待窗口时被中断
+     */
+    public CompletableFuture<Stat> setData(String path, byte[] data, int version) throws InterruptedException {
+
+        final CompletableFuture<Stat> future = new CompletableFuture<>();
+        window.acquire();
+        final long begin = System.nanoTime();
+        try {
+            zookeeper.setData(path, data, version, new AsyncCallback.StatCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    window.release();
+                    record(OpMetrics.Op.SET_DATA, begin, rc);
+                    if (rc == KeeperException.Code.OK.intValue()) {
+                        future.complete(stat);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                    }
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            // 同步抛出（如路径不合法）时不会回调，在此归还窗口
+            rejected(future, OpMetrics.Op.SET_DATA, begin, e);
+        }
+        return future;
+    }
+
+    /**
+     * 请求未能发出: 归还窗口并以异常完成 future
+     */
+    private void rejected(CompletableFuture<?> future, OpMetrics.Op op, long begin, RuntimeException e) {
+        window.release();
+        if (metrics != null) {
+            metrics.record(op, begin, e);
+        }
+        future.completeExceptionally(e);
+    }
+
+    /**
+     * 复制 Stat 的所有字段
+     */
+    static void copyStat(Stat from, Stat to) {
+        to.setCzxid(from.getCzxid());
+        to.setMzxid(from.getMzxid());
+        to.setCtime(from.getCtime());
+        to.setMtime(from.getMtime());
+        to.setVersion(from.getVersion());
+        to.setCversion(from.getCversion());
+        to.setAversion(from.getAversion());
+        to.setEphemeralOwner(from.getEphemeralOwner());
+        to.setDataLength(from.getDataLength());
+        to.setNumChildren(from.getNumChildren());
+        to.setPzxid(from.getPzxid());
+    }
+
+    private void record(OpMetrics.Op op, long begin, int rc) {
+        if (metrics != null) {
+            metrics.record(op, begin, rc);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 在本地 TestingServer 上对比同步调用与 ZooKeeperAsyncClient 流水线调用的吞吐量
+ * <p>
+ * 参数: [请求数] [maxInFlight]
+ */
+public class ZooKeeperAsyncClientMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ZooKeeperAsyncClientMain.class);
+
+    public static void main(String[] args) throws Exception {
+
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int maxInFlight = args.length > 1 ? Integer.parseInt(args[1]) : ZooKeeperAsyncClient.DEFAULT_MAX_IN_FLIGHT;
+        byte[] data = "zkCli data".getBytes();
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            ZooKeeperClient zooKeeperClient = new ZooKeeperClient();
+            zooKeeperClient.connect(server.getConnectString());
+            ZooKeeper zookeeper = zooKeeperClient.getZookeeper();
+            try {
+                zookeeper.create("/sync", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                zookeeper.create("/async", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+                // 同步: 每个请求等待上一个请求返回
+                long begin = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    zookeeper.create("/sync/n" + i, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                }
+                report("create sync", ops, System.nanoTime() - begin);
+
+                begin = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    zookeeper.getData("/sync/n" + i, false, null);
+                }
+                report("getData sync", ops, System.nanoTime() - begin);
+
+                // 异步: 在同一会话上流水线发送，最多 maxInFlight 个未完成请求
+                OpMetrics asyncMetrics = new OpMetrics();
+                asyncMetrics.register("async");
+                ZooKeeperAsyncClient asyncClient = new ZooKeeperAsyncClient(zookeeper, maxInFlight, asyncMetrics);
+
+                begin = System.nanoTime();
+                List<CompletableFuture<String>> creates = new ArrayList<>(ops);
+                for (int i = 0; i < ops; i++) {
+                    creates.add(asyncClient.create("/async/n" + i, data, CreateMode.PERSISTENT));
+                }
+                CompletableFuture.allOf(creates.toArray(new CompletableFuture<?>[0])).join();
+                report("create async", ops, System.nanoTime() - begin);
+
+                begin = System.nanoTime();
+                List<CompletableFuture<byte[]>> reads = new ArrayList<>(ops);
+                for (int i = 0; i < ops; i++) {
+                    reads.add(asyncClient.getData("/async/n" + i, false, null));
+                }
+                CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).join();
+                report("getData async", ops, System.nanoTime() - begin);
+
+                // 异步请求的延迟包含在客户端发送队列中排队的时间，窗口越大延迟越高
+                log.info("async latency:{}{}", System.lineSeparator(), asyncMetrics.dump());
+                asyncMetrics.unregister();
+
+            } finally {
+                zooKeeperClient.close();
+            }
+        }
+    }
+
+    private static void report(String name, int ops, long elapsedNanos) {
+        log.info("{}: {} ops in {} ms, {} ops/sec", name, ops, elapsedNanos / 1000000,
+                (long) (ops * 1000000000.0 / elapsedNanos));
+    }
+
+}
@@ -1,13 +1,15 @@
 package com.zozospider.zookeeperjavaclient.zk;
 
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
 import org.apache.zookeeper.*;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.*;
 
 /**
  * ZooKeeper Java client
@@ -21,14 +23,86 @@ public class ZooKeeperClient {
      * 指定连接的超时时间
      */
     private static final int SESSION_TIMEOUT = 5000;
-    private CountDownLatch countDownLatch;
-    private ZooKeeper zookeeper;
+    /**
+     * 同步建立连接时，等待连接完成的最长时间
+     */
+    private static final long CONNECT_TIMEOUT = 15000;
+
+    /**
+     * 异步建立连接的超时检查、会话信息定期保存线程（所有 ZooKeeperClient 共用）
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ZooKeeperClient-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private volatile ZooKeeper zookeeper;
+    /**
+     * 可选的读缓存，通过 enableCache() 开启
+     */
+    private volatile ZNodeCache cache;
+    /**
+     * 可选的会话信息持久化，通过 connectResumable() 开启
+     */
+    private volatile SessionStore sessionStore;
+    private ScheduledFuture<?> sessionSaver;
+    /**
+     * 各操作的延迟直方图和错误码计数（不含读缓存命中），连接建立后注册到 JMX，close() / detach() 时注销
+     */
+    private final OpMetrics metrics = new OpMetrics();
+
+    /**
+     * 同步调用 ZooKeeper
+     */
+    private interface ZooKeeperCall<T> {
+        T call() throws KeeperException, InterruptedException;
+    }
+
+    /**
+     * 可以读取客户端最后看到的 zxid 的 ZooKeeper
+     */
+    private static class ZxidTrackingZooKeeper extends ZooKeeper {
+
+        private ZxidTrackingZooKeeper(String connectString, int sessionTimeout, Watcher watcher,
+                                      boolean canBeReadOnly) throws IOException {
+            super(connectString, sessionTimeout, watcher, canBeReadOnly);
+        }
+
+        private ZxidTrackingZooKeeper(String connectString, int sessionTimeout, Watcher watcher,
+                                      long sessionId, byte[] sessionPasswd) throws IOException {
+            super(connectString, sessionTimeout, watcher, sessionId, sessionPasswd);
+        }
+
+        private long getLastZxid() {
+            return cnxn.getLastZxid();
+        }
+
+        /**
+         * 停止客户端的发送和事件线程、关闭 socket，但不向服务端发送 closeSession
+         */
+        private void detach() {
+            cnxn.disconnect();
+        }
+    }
 
     /**
      * 实现对 ZooKeeper 事件监听
+     * <p>
+     * 每个 ZooKeeper 对象使用自己的 ConnWatcher，connected 在创建 ZooKeeper 对象之前就已存在，
+     * 所以即使 SyncConnected 事件在构造方法返回前到达也不会丢失。
      */
     public class ConnWatcher implements Watcher {
 
+        /**
+         * 连接建立（SyncConnected）时完成；会话过期或认证失败时异常结束
+         */
+        private final CompletableFuture<Void> connected = new CompletableFuture<>();
+
         public void process(WatchedEvent event) {
 
             log.info("ConnWatcher process watchedEvent: {}", event);
@@ -36,8 +110,29 @@ public class ZooKeeperClient {
             if (event.getState() == Event.KeeperState.SyncConnected) {
                 // 连接建立，回调 process 接口时，其 event.getState() 为 KeeperState.SyncConnected
                 log.info("ConnWatcher process watchedEvent state: SyncConnected");
-                // 放开闸门，wait 在 connect 方法上的线程将被唤醒
-                countDownLatch.countDown();
+                // 完成 connected，等待在 connect 方法上的线程将被唤醒
+                connected.complete(null);
+            } else if (event.getState() == Event.KeeperState.Expired) {
+                // 会话重连时，会话已过期
+                connected.completeExceptionally(new KeeperException.SessionExpiredException());
+            } else if (event.getState() == Event.KeeperState.AuthFailed) {
+                connected.completeExceptionally(new KeeperException.AuthFailedException());
+            }
+
+            if (event.getState() == Event.KeeperState.Expired) {
+                // 会话已过期，持久化的会话信息不再可用
+                SessionStore store = sessionStore;
+                if (store != null) {
+                    store.delete();
+                }
+            }
+
+            if (event.getState() == Event.KeeperState.Disconnected || event.getState() == Event.KeeperState.Expired) {
+                // 断开期间的变更通知可能丢失，清空读缓存
+                ZNodeCache current = cache;
+                if (current != null) {
+                    current.clear();
+                }
             }
 
             if (event.getType() == Event.EventType.NodeCreated) {
@@ -60,7 +155,7 @@ public class ZooKeeperClient {
      *                      ZooKeeper 对象初始化后，将从 server 列表中选择一个 server，并尝试与其建立连接。
      *                      如果连接建立失败，则会从列表的剩余项中选择一个 server，并再次尝试建立连接。
      *                      可在后面加上根目录，如 123.207.120.205:2181,193.112.38.200:2181,111.230.233.137:2181/zk-book，所有操作将在此目录下进行，类似 Curator 的命名空间。
-     * @throws Exception
+     * @throws Exception 超过 CONNECT_TIMEOUT 仍未连接成功时抛出 TimeoutException
      */
     public void connect(String connectString) throws Exception {
 
@@ -68,45 +163,374 @@ public class ZooKeeperClient {
          * sessionTimeout: 会话超时时间，ZooKeeper 客户端和服务端通过心跳检测会话有效性。如果在 sessionTimeout 时间内没有进行有效的心跳检测，会话就会失效。
          * canBeReadOnly: 默认为false，表示如果 ZooKeeper 节点和过半机器失去连接，那么将不再提供读写服务。如为 true，将继续提供读服务（不提供写服务）。
          */
-        // 创建连接
+        // 创建连接并等待连接完成
         log.info("connect ZooKeeper begin");
-        zookeeper = new ZooKeeper(connectString, SESSION_TIMEOUT, new ZooKeeperClient.ConnWatcher(),
-                false);
-        log.info("create ZooKeeper sessionId: 0x{}", Long.toHexString(zookeeper.getSessionId()));
+        await(connectAsync(connectString, CONNECT_TIMEOUT));
+        log.info("connect ZooKeeper sessionId: 0x{}", Long.toHexString(zookeeper.getSessionId()));
         log.info("connect ZooKeeper end");
+    }
 
-        // 等待连接完成
-        log.info("connect ZooKeeper countDownLatch begin");
-        countDownLatch = new CountDownLatch(1);
-        countDownLatch.await();
-        log.info("connect ZooKeeper sessionId: 0x{}", Long.toHexString(zookeeper.getSessionId()));
-        log.info("connect ZooKeeper countDownLatch end");
+    /**
+     * 与 ZooKeeper 服务端建立连接（异步）
+     * <p>
+     * 立即返回，调用方可以在连接建立期间并行完成其他初始化工作，需要使用连接时再等待返回的 future。
+     * 超过 timeoutMs 仍未连接成功时，future 以 TimeoutException 结束，并关闭该 ZooKeeper 对象（不再重试连接）。
+     *
+     * @param connectString 同 connect
+     * @param timeoutMs     等待连接完成的最长时间
+     * @return 连接建立后完成，结果为已连接的 ZooKeeper 对象
+     * @throws IOException
+     */
+    public CompletableFuture<ZooKeeper> connectAsync(String connectString, long timeoutMs) throws IOException {
+
+        ConnWatcher watcher = new ConnWatcher();
+        ZooKeeper handle = new ZxidTrackingZooKeeper(connectString, SESSION_TIMEOUT, watcher, false);
+        log.info("create ZooKeeper sessionId: 0x{}", Long.toHexString(handle.getSessionId()));
+        return watch(handle, watcher, timeoutMs);
     }
 
     /**
      * 会话重连（同步）
      *
      * @param connectString 同上
-     * @throws IOException
-     * @throws InterruptedException
+     * @throws Exception 超过 CONNECT_TIMEOUT 仍未连接成功时抛出 TimeoutException，会话已过期时抛出 SessionExpiredException
      */
-    public void connectSession(String connectString) throws IOException, InterruptedException {
+    public void connectSession(String connectString) throws Exception {
 
         // 开始会话重连
         log.warn("connectSession ZooKeeper begin 开始会话重连");
-        // sessionId:      已建立会话的 session id
-        // sessionPasswd:  已建立会话的 session password
-        zookeeper = new ZooKeeper(connectString, SESSION_TIMEOUT, new ZooKeeperClient.ConnWatcher(),
-                zookeeper.getSessionId(), zookeeper.getSessionPasswd());
+        await(connectSessionAsync(connectString, zookeeper.getSessionId(), zookeeper.getSessionPasswd(), CONNECT_TIMEOUT));
         log.info("connectSession ZooKeeper sessionId: 0x{}", Long.toHexString(zookeeper.getSessionId()));
         log.info("connectSession ZooKeeper end");
+    }
 
-        // 等待连接完成
-        log.info("connectSession ZooKeeper countDownLatch begin");
-        countDownLatch = new CountDownLatch(1);
-        countDownLatch.await();
-        log.info("connectSession ZooKeeper sessionId: " + "0x" + Long.toHexString(zookeeper.getSessionId()));
-        log.info("connectSession ZooKeeper countDownLatch end");
+    /**
+     * 会话重连（异步）
+     *
+     * @param connectString 同 connect
+     * @param sessionId     已建立会话的 session id
+     * @param sessionPasswd 已建立会话的 session password
+     * @param timeoutMs     等待连接完成的最长时间
+     * @return 连接建立后完成；会话已过期时以 SessionExpiredException 结束
+     * @throws IOException
+     */
+    public CompletableFuture<ZooKeeper> connectSessionAsync(String connectString, long sessionId, byte[] sessionPasswd,
+                                                            long timeoutMs) throws IOException {
+
+        ConnWatcher watcher = new ConnWatcher();
+        ZooKeeper handle = new ZxidTrackingZooKeeper(connectString, SESSION_TIMEOUT, watcher, sessionId, sessionPasswd);
+        log.info("connectSession ZooKeeper sessionId: 0x{}", Long.toHexString(handle.getSessionId()));
+        return watch(handle, watcher, timeoutMs);
+    }
+
+    /**
+     * 建立可恢复的连接（同步）
+     *
+     * @param connectString 同 connect
+     * @param sessionFile   会话信息文件
+     * @throws Exception 超过 CONNECT_TIMEOUT 仍未连接成功时抛出 TimeoutException
+     * @see #connectResumableAsync(String, File, long)
+     */
+    public void connectResumable(String connectString, File sessionFile) throws Exception {
+
+        log.info("connectResumable ZooKeeper begin");
+        await(connectResumableAsync(connectString, sessionFile, CONNECT_TIMEOUT));
+        log.info("connectResumable ZooKeeper sessionId: 0x{}", Long.toHexString(zookeeper.getSessionId()));
+        log.info("connectResumable ZooKeeper end");
+    }
+
+    /**
+     * 建立可恢复的连接（异步）
+     * <p>
+     * 如果 sessionFile 中保存的会话距上次保存仍在会话超时时间内，则使用其 session id 和 password 重新挂接原会话，
+     * 原会话的临时节点得以保留，进程快速重启时无需重新注册；会话已过期或文件无效时建立新会话。
+     * 重新挂接后先执行一次 sync，确保后续读取不会比上次进程看到的数据（lastZxid）更旧。
+     * <p>
+     * 连接建立后立即保存会话信息，之后每 1/3 会话超时时间刷新一次；close() 正常关闭会话时删除文件，
+     * detach() 断开连接但保留会话和文件（见 detach()）。
+     *
+     * @param connectString 同 connect
+     * @param sessionFile   会话信息文件
+     * @param timeoutMs     每次连接尝试等待完成的最长时间
+     * @return 连接建立后完成，结果为已连接的 ZooKeeper 对象
+     * @throws IOException
+     */
+    public CompletableFuture<ZooKeeper> connectResumableAsync(final String connectString, File sessionFile,
+                                                              final long timeoutMs) throws IOException {
+
+        final SessionStore store = new SessionStore(sessionFile);
+        sessionStore = store;
+        SessionStore.Session session = store.load();
+        if (session == null || !session.isFresh(System.currentTimeMillis())) {
+            log.info("connectResumable no fresh session in {}, create new session", sessionFile);
+            return connectAsync(connectString, timeoutMs).thenApply(this::startSavingSession);
+        }
+
+        log.info("connectResumable resume {}", session);
+        CompletableFuture<ZooKeeper> resumed = connectSessionAsync(connectString, session.getSessionId(),
+                session.getSessionPasswd(), timeoutMs)
+                .thenCompose(ZooKeeperClient::sync);
+
+        final CompletableFuture<ZooKeeper> future = new CompletableFuture<>();
+        resumed.whenComplete((handle, throwable) -> {
+            if (throwable == null) {
+                future.complete(startSavingSession(handle));
+                return;
+            }
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (!(cause instanceof KeeperException.SessionExpiredException)) {
+                future.completeExceptionally(cause);
+                return;
+            }
+            // 会话已过期，建立新会话
+            log.warn("connectResumable session expired, create new session");
+            store.delete();
+            try {
+                connectAsync(connectString, timeoutMs).thenApply(this::startSavingSession)
+                        .whenComplete((newHandle, e) -> {
+                            if (e == null) {
+                                future.complete(newHandle);
+                            } else {
+                                future.completeExceptionally(e);
+                            }
+                        });
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 关闭连接
+     * 如果开启了会话信息持久化，则同时删除会话信息文件（会话已关闭，无法再挂接）
+     * <p>
+     * 会话关闭后服务端立即删除其临时节点，用于进程永久下线；发布部署等计划内重启应调用 detach()
+     *
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (sessionSaver != null) {
+                sessionSaver.cancel(false);
+                sessionSaver = null;
+            }
+        }
+        if (zookeeper != null) {
+            zookeeper.close();
+        }
+        metrics.unregister();
+        SessionStore store = sessionStore;
+        if (store != null) {
+            store.delete();
+        }
+    }
+
+    /**
+     * 断开连接但不关闭会话（用于发布部署等计划内重启）
+     * <p>
+     * 停止会话信息的定期保存并最后保存一次，保留会话信息文件，不调用 zookeeper.close()（不发送 closeSession）：
+     * 服务端的会话及其临时节点保留到会话超时，新进程在超时前通过 connectResumable() 重新挂接原会话，临时节点不会被删除再重建。
+     * 新进程未能在会话超时时间内启动时，会话过期，临时节点被删除。
+     * <p>
+     * 计划内重启时调用 detach()，进程永久下线（需要立即删除临时节点）时调用 close()。
+     */
+    public void detach() {
+        ZooKeeper handle;
+        synchronized (this) {
+            if (sessionSaver != null) {
+                sessionSaver.cancel(false);
+                sessionSaver = null;
+            }
+            handle = zookeeper;
+            zookeeper = null;
+        }
+        metrics.unregister();
+        if (handle == null) {
+            return;
+        }
+        if (handle.getState().isConnected()) {
+            // 刷新保存时间和 lastZxid
+            saveSession(handle);
+        }
+        if (handle instanceof ZxidTrackingZooKeeper) {
+            ((ZxidTrackingZooKeeper) handle).detach();
+        }
+        log.info("detach ZooKeeper sessionId: 0x{}, session kept until timeout", Long.toHexString(handle.getSessionId()));
+    }
+
+    /**
+     * 保存一次会话信息，并定期刷新保存时间和 lastZxid
+     */
+    private ZooKeeper startSavingSession(final ZooKeeper handle) {
+
+        saveSession(handle);
+        long period = Math.max(1, handle.getSessionTimeout() / 3);
+        synchronized (this) {
+            if (sessionSaver != null) {
+                sessionSaver.cancel(false);
+            }
+            sessionSaver = SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (handle.getState().isConnected()) {
+                        saveSession(handle);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        return handle;
+    }
+
+    private void saveSession(ZooKeeper handle) {
+
+        SessionStore store = sessionStore;
+        if (store == null) {
+            return;
+        }
+        long lastZxid = handle instanceof ZxidTrackingZooKeeper ? ((ZxidTrackingZooKeeper) handle).getLastZxid() : 0;
+        try {
+            store.save(new SessionStore.Session(handle.getSessionId(), handle.getSessionPasswd(),
+                    handle.getSessionTimeout(), lastZxid, System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.error("save session to " + store.getFile() + " failure: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 异步 sync，完成后服务端数据不比 leader 旧
+     */
+    private static CompletableFuture<ZooKeeper> sync(final ZooKeeper handle) {
+
+        final CompletableFuture<ZooKeeper> future = new CompletableFuture<>();
+        handle.sync("/", new AsyncCallback.VoidCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx) {
+                if (rc == KeeperException.Code.OK.intValue()) {
+                    future.complete(handle);
+                } else {
+                    future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), path));
+                }
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * 在连接建立或超时后结束返回的 future，连接建立时才将新建的 ZooKeeper 对象设为当前对象
+     */
+    private CompletableFuture<ZooKeeper> watch(final ZooKeeper handle, ConnWatcher watcher, long timeoutMs) {
+
+        final CompletableFuture<ZooKeeper> future = new CompletableFuture<>();
+        watcher.connected.whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+                return;
+            }
+            // 与超时互斥，已超时（handle 已关闭）时不再设为当前对象
+            synchronized (future) {
+                if (!future.isDone()) {
+                    publish(handle);
+                    future.complete(handle);
+                }
+            }
+        });
+        final ScheduledFuture<?> timeout = SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                boolean timedOut;
+                synchronized (future) {
+                    timedOut = future.completeExceptionally(new TimeoutException("connect ZooKeeper timeout, sessionId: 0x"
+                            + Long.toHexString(handle.getSessionId())));
+                }
+                if (timedOut) {
+                    log.error("connect ZooKeeper timeout, close ZooKeeper");
+                    try {
+                        handle.close();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, throwable) -> timeout.cancel(false));
+        return future;
+    }
+
+    /**
+     * 将已连接的 ZooKeeper 对象设为当前对象，并将操作指标注册到 JMX（所有 connect* 方法连接成功后都经过这里）
+     */
+    private void publish(ZooKeeper handle) {
+
+        zookeeper = handle;
+        metrics.unregister();
+        metrics.register("ZooKeeperClient@" + Integer.toHexString(System.identityHashCode(this)));
+        // 读缓存中的 Watcher 注册在旧的 ZooKeeper 对象上，需重建
+        ZNodeCache current = cache;
+        if (current != null) {
+            cache = new ZNodeCache(handle, current.getMaxBytes());
+        }
+    }
+
+    /**
+     * 等待异步连接完成，将 ExecutionException 还原为原始异常
+     */
+    private static void await(CompletableFuture<ZooKeeper> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 开启读缓存（需在建立连接后调用）
+     * 开启后 getData / exists / getChildren 优先读取缓存，缓存通过 Watcher 通知失效
+     *
+     * @param maxBytes 缓存容量（估算字节数）
+     */
+    public void enableCache(long maxBytes) {
+        cache = new ZNodeCache(zookeeper, maxBytes);
+    }
+
+    /**
+     * 获取读缓存，未开启时为 null
+     */
+    public ZNodeCache getCache() {
+        return cache;
+    }
+
+    /**
+     * 获取操作指标
+     */
+    public OpMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 执行同步调用并记录延迟和错误码
+     */
+    private <T> T timed(OpMetrics.Op op, ZooKeeperCall<T> call) throws KeeperException, InterruptedException {
+        long begin = System.nanoTime();
+        try {
+            T result = call.call();
+            metrics.record(op, begin, (Exception) null);
+            return result;
+        } catch (KeeperException | InterruptedException e) {
+            metrics.record(op, begin, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 获取当前 ZooKeeper 对象，可用于构造 ZooKeeperAsyncClient
+     */
+    public ZooKeeper getZookeeper() {
+        return zookeeper;
     }
 
     /**
@@ -125,13 +549,15 @@ public class ZooKeeperClient {
         // CreateMode.PERSISTENT:        创建持久节点
         if (!async) {
             // 同步
-            String string = zookeeper.create(path, data.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            String string = timed(OpMetrics.Op.CREATE, () -> zookeeper.create(path, data.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
             log.info("create sync string: {}", string);
         } else {
             // 异步
+            final long begin = System.nanoTime();
             zookeeper.create(path, data.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT, new AsyncCallback.StringCallback() {
                 @Override
                 public void processResult(int rc, String path, Object ctx, String name) {
+                    metrics.record(OpMetrics.Op.CREATE, begin, rc);
                     // do something when callback
                     if (rc == KeeperException.Code.OK.intValue()) {
                         log.info("create async success");
@@ -162,13 +588,18 @@ public class ZooKeeperClient {
         log.info("delete begin");
         if (!async) {
             // 同步
-            zookeeper.delete(path, version);
+            timed(OpMetrics.Op.DELETE, () -> {
+                zookeeper.delete(path, version);
+                return null;
+            });
             log.info("delete success");
         } else {
             // 异步
+            final long begin = System.nanoTime();
             zookeeper.delete(path, version, new AsyncCallback.VoidCallback() {
                 @Override
                 public void processResult(int rc, String path, Object ctx) {
+                    metrics.record(OpMetrics.Op.DELETE, begin, rc);
                     // do something when callback
                     if (rc == KeeperException.Code.OK.intValue()) {
                         log.info("delete async success");
@@ -197,14 +628,16 @@ public class ZooKeeperClient {
 
         log.info("exists begin");
         if (!async) {
-            Stat stat = zookeeper.exists(path, true);
+            Stat stat = cache != null ? cache.exists(path) : timed(OpMetrics.Op.EXISTS, () -> zookeeper.exists(path, true));
             log.info("exists sync stat: {}", stat);
             boolean exists = !(stat == null);
             log.info("exists sync ? {} : {}", path, exists);
         } else {
+            final long begin = System.nanoTime();
             zookeeper.exists(path, true, new AsyncCallback.StatCallback() {
                 @Override
                 public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    metrics.record(OpMetrics.Op.EXISTS, begin, rc);
                     // do something when callback
                     if (rc == KeeperException.Code.OK.intValue()) {
                         log.info("exists async success");
@@ -237,7 +670,7 @@ public class ZooKeeperClient {
         log.info("getData begin");
         Stat stat = new Stat();
         log.info("getData begin stat: {}", stat);
-        byte[] data = zookeeper.getData(path, false, stat);
+        byte[] data = cache != null ? cache.getData(path, stat) : timed(OpMetrics.Op.GET_DATA, () -> zookeeper.getData(path, false, stat));
         String result = new String(data);
         log.info("getData result: {}", result);
         log.info("getData end stat: {}", stat);
@@ -258,12 +691,14 @@ public class ZooKeeperClient {
         log.info("getChildren begin");
         if (!async) {
             // 同步
-            List<String> children = zookeeper.getChildren(path, true);
+            List<String> children = cache != null ? cache.getChildren(path) : timed(OpMetrics.Op.GET_CHILDREN, () -> zookeeper.getChildren(path, true));
             log.info("getChildren sync children: {}", children);
         } else {
+            final long begin = System.nanoTime();
             zookeeper.getChildren(path, true, new AsyncCallback.ChildrenCallback() {
                 @Override
                 public void processResult(int rc, String path, Object ctx, List<String> children) {
+                    metrics.record(OpMetrics.Op.GET_CHILDREN, begin, rc);
                     // do something when callback
                     if (rc == KeeperException.Code.OK.intValue()) {
                         log.info("getChildren async success");
@@ -295,13 +730,15 @@ public class ZooKeeperClient {
         log.info("setData begin");
         if (!async) {
             // 同步
-            Stat stat = zookeeper.setData(path, newData.getBytes(), version);
+            Stat stat = timed(OpMetrics.Op.SET_DATA, () -> zookeeper.setData(path, newData.getBytes(), version));
             log.info("setData sync stat: {}", stat);
         } else {
             // 异步
+            final long begin = System.nanoTime();
             zookeeper.setData(path, newData.getBytes(), version, new AsyncCallback.StatCallback() {
                 @Override
                 public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    metrics.record(OpMetrics.Op.SET_DATA, begin, rc);
                     // do something when callback
                     if (rc == KeeperException.Code.OK.intValue()) {
                         log.info("setData async success");
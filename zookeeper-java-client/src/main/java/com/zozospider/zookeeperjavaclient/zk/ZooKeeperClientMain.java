@@ -11,6 +11,10 @@ public class ZooKeeperClientMain {
         // 建立连接（同步）
         zooKeeperClient.connect(CONNECT_STRING);
 
+        // 建立连接（异步，连接建立期间可并行完成其他初始化，超时后 future 以 TimeoutException 结束）
+//        CompletableFuture<ZooKeeper> connecting = zooKeeperClient.connectAsync(CONNECT_STRING, 15000);
+//        connecting.get();
+
         // 会话重连（同步）
 //        zooKeeperClient.connectSession(CONNECT_STRING);
 
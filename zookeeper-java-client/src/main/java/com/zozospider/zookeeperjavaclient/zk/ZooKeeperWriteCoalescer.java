@@ -0,0 +1,362 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import com.zozospider.zookeeperjavaclient.zk.metrics.OpMetrics;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 写操作合并器
+ * <p>
+ * 将 create / setData / delete 先放入缓冲区，当缓冲的操作数达到 maxOps、估算字节数达到 maxBytes，
+ * 或第一个操作已等待 lingerMs 时，将缓冲区内所有操作作为一个 ZooKeeper.multi() 请求提交，多个写操作只需要一次 quorum 往返。
+ * <p>
+ * 每个操作都有自己的 future。multi 是原子的，其中一个操作失败会导致整批回滚：
+ * 此时失败的操作以对应的 KeeperException 结束，其余被回滚的操作各自单独重新提交一次，互不影响。
+ * 连接丢失等整批失败的情况下，所有操作都以该错误结束（无法确定是否已执行，不重试）。
+ * <p>
+ * 同时只有一个 multi 未完成，之后的批次按顺序等待：被回滚的操作在下一批之前重新提交，
+ * 所有写操作按提交顺序到达服务端（同一会话的请求按发送顺序执行，单独重新提交的操作之间不需要等待）。
+ */
+public class ZooKeeperWriteCoalescer implements Closeable {
+
+    private final static Logger log = LoggerFactory.getLogger(ZooKeeperWriteCoalescer.class);
+
+    public static final int DEFAULT_MAX_OPS = 100;
+    public static final int DEFAULT_MAX_BYTES = 512 * 1024;
+    public static final long DEFAULT_LINGER_MS = 1;
+
+    /**
+     * 估算单个操作除路径和数据外的请求开销（操作头、版本、ACL 等）
+     */
+    private static final int OP_OVERHEAD_BYTES = 64;
+
+    private final ZooKeeper zookeeper;
+    private final int maxOps;
+    private final int maxBytes;
+    private final long lingerMs;
+    private final ScheduledExecutorService scheduler;
+    private final OpMetrics metrics;
+
+    private final Object lock = new Object();
+    private List<PendingOp> buffer = new ArrayList<>();
+    private int bufferBytes;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed;
+    /**
+     * 等待前一个 multi 完成的批次
+     */
+    private final Deque<List<PendingOp>> ready = new ArrayDeque<>();
+    private boolean multiInFlight;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedOps = new AtomicLong();
+    private final AtomicLong fallbackOps = new AtomicLong();
+
+    /**
+     * 缓冲区中的一个写操作
+     */
+    private static class PendingOp {
+
+        private final Op op;
+        private final CompletableFuture<OpResult> future = new CompletableFuture<>();
+
+        private PendingOp(Op op) {
+            this.op = op;
+        }
+    }
+
+    public ZooKeeperWriteCoalescer(ZooKeeper zookeeper) {
+        this(zookeeper, DEFAULT_MAX_OPS, DEFAULT_MAX_BYTES, DEFAULT_LINGER_MS);
+    }
+
+    /**
+     * @param zookeeper 已建立连接的 ZooKeeper 对象
+     * @param maxOps    每批最多操作数
+     * @param maxBytes  每批最多估算字节数（需小于服务端 jute.maxbuffer）
+     * @param lingerMs  第一个操作进入缓冲区后最多等待的时间
+     */
+    public ZooKeeperWriteCoalescer(ZooKeeper zookeeper, int maxOps, int maxBytes, long lingerMs) {
+        this(zookeeper, maxOps, maxBytes, lingerMs, null);
+    }
+
+    /**
+     * @param zookeeper 已建立连接的 ZooKeeper 对象
+     * @param maxOps    每批最多操作数
+     * @param maxBytes  每批最多估算字节数（需小于服务端 jute.maxbuffer）
+     * @param lingerMs  第一个操作进入缓冲区后最多等待的时间
+     * @param metrics   按 multi 记录每批的延迟及错误码，为 null 时不记录
+     */
+    public ZooKeeperWriteCoalescer(ZooKeeper zookeeper, int maxOps, int maxBytes, long lingerMs, OpMetrics metrics) {
+        if (maxOps <= 0 || maxBytes <= 0 || lingerMs < 0) {
+            throw new IllegalArgumentException("maxOps: " + maxOps + ", maxBytes: " + maxBytes + ", lingerMs: " + lingerMs);
+        }
+        this.zookeeper = zookeeper;
+        this.maxOps = maxOps;
+        this.maxBytes = maxBytes;
+        this.lingerMs = lingerMs;
+        this.metrics = metrics;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ZooKeeperWriteCoalescer-linger");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 创建持久节点
+     *
+     * @return 实际创建的节点路径
+     */
+    public CompletableFuture<String> create(String path, byte[] data, CreateMode createMode) {
+        return submit(Op.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, createMode), path, data)
+                .thenApply(result -> ((OpResult.CreateResult) result).getPath());
+    }
+
+    /**
+     * 修改节点数据
+     *
+     * @return 修改后节点的 Stat
+     */
+    public CompletableFuture<Stat> setData(String path, byte[] data, int version) {
+        return submit(Op.setData(path, data, version), path, data)
+                .thenApply(result -> ((OpResult.SetDataResult) result).getStat());
+    }
+
+    /**
+     * 删除节点
+     */
+    public CompletableFuture<Void> delete(String path, int version) {
+        return submit(Op.delete(path, version), path, null)
+                .thenApply(result -> (Void) null);
+    }
+
+    /**
+     * 立即将缓冲区内的所有操作作为一批提交（前一个 multi 未完成时排队）
+     */
+    public void flush() {
+        synchronized (lock) {
+            send(drain());
+        }
+    }
+
+    /**
+     * 提交剩余操作并停止 linger 线程
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+        log.info("close, batches: {}, batchedOps: {}, fallbackOps: {}", batches.get(), batchedOps.get(), fallbackOps.get());
+    }
+
+    /**
+     * multi 批次数（不含回滚后单独重新提交的操作）
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getBatchedOps() {
+        return batchedOps.get();
+    }
+
+    public long getFallbackOps() {
+        return fallbackOps.get();
+    }
+
+    private CompletableFuture<OpResult> submit(Op op, String path, byte[] data) {
+
+        int bytes = path.getBytes(StandardCharsets.UTF_8).length + (data == null ? 0 : data.length) + OP_OVERHEAD_BYTES;
+        PendingOp pendingOp = new PendingOp(op);
+
+        // 在锁内提交（multi 异步调用只是将请求放入发送队列，前一个 multi 未完成时进入 ready），保证批次按提交顺序发送
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("ZooKeeperWriteCoalescer is closed");
+            }
+            // 加入当前操作会超过字节上限时，先提交已有的操作
+            if (!buffer.isEmpty() && bufferBytes + bytes > maxBytes) {
+                send(drain());
+            }
+            buffer.add(pendingOp);
+            bufferBytes += bytes;
+            if (buffer.size() >= maxOps || bufferBytes >= maxBytes) {
+                send(drain());
+            } else if (lingerTask == null) {
+                lingerTask = scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return pendingOp.future;
+    }
+
+    /**
+     * 取出缓冲区内的操作（需持有 lock）
+     */
+    private List<PendingOp> drain() {
+        List<PendingOp> batch = buffer;
+        buffer = new ArrayList<>();
+        bufferBytes = 0;
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        return batch;
+    }
+
+    /**
+     * 提交一批操作（需持有 lock）：前一个 multi 未完成时排队
+     */
+    private void send(List<PendingOp> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ready.add(batch);
+        sendNext();
+    }
+
+    /**
+     * 没有未完成的 multi 时发出下一批（需持有 lock）
+     */
+    private void sendNext() {
+        while (!multiInFlight) {
+            final List<PendingOp> batch = ready.poll();
+            if (batch == null) {
+                return;
+            }
+            batches.incrementAndGet();
+            batchedOps.addAndGet(batch.size());
+            multiInFlight = multi(batch, new AsyncCallback.MultiCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, List<OpResult> opResults) {
+                    batchCompleted(batch, rc, opResults);
+                }
+            });
+        }
+    }
+
+    /**
+     * 一批操作的 multi 完成：回滚的操作单独重新提交后再发出下一批，各操作的 future 在锁外结束
+     */
+    private void batchCompleted(List<PendingOp> batch, int rc, List<OpResult> opResults) {
+
+        if (rc == KeeperException.Code.OK.intValue()) {
+            synchronized (lock) {
+                multiInFlight = false;
+                sendNext();
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(opResults.get(i));
+            }
+            return;
+        }
+
+        if (opResults == null || opResults.size() != batch.size()) {
+            // 整批失败（如 ConnectionLoss），无法确定操作是否已执行
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            log.error("multi failure, rc codeValue: {}, rc codeName: {}, ops: {}", code.intValue(), code.name(), batch.size());
+            synchronized (lock) {
+                multiInFlight = false;
+                sendNext();
+            }
+            for (PendingOp pendingOp : batch) {
+                pendingOp.future.completeExceptionally(KeeperException.create(code, pendingOp.op.getPath()));
+            }
+            return;
+        }
+
+        // 某个操作失败导致整批回滚：失败的操作直接结束，其余操作在下一批之前单独重新提交
+        List<PendingOp> failed = new ArrayList<>();
+        List<KeeperException> errors = new ArrayList<>();
+        synchronized (lock) {
+            for (int i = 0; i < batch.size(); i++) {
+                PendingOp pendingOp = batch.get(i);
+                int err = ((OpResult.ErrorResult) opResults.get(i)).getErr();
+                if (err != KeeperException.Code.OK.intValue()
+                        && err != KeeperException.Code.RUNTIMEINCONSISTENCY.intValue()) {
+                    failed.add(pendingOp);
+                    errors.add(KeeperException.create(KeeperException.Code.get(err), pendingOp.op.getPath()));
+                } else {
+                    fallbackOps.incrementAndGet();
+                    resend(pendingOp);
+                }
+            }
+            multiInFlight = false;
+            sendNext();
+        }
+        for (int i = 0; i < failed.size(); i++) {
+            failed.get(i).future.completeExceptionally(errors.get(i));
+        }
+    }
+
+    /**
+     * 单独重新提交一个被回滚的操作（需持有 lock，不等待前一个完成）
+     */
+    private void resend(final PendingOp pendingOp) {
+        multi(Collections.singletonList(pendingOp), new AsyncCallback.MultiCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx, List<OpResult> opResults) {
+                if (rc == KeeperException.Code.OK.intValue()) {
+                    pendingOp.future.complete(opResults.get(0));
+                } else {
+                    pendingOp.future.completeExceptionally(
+                            KeeperException.create(KeeperException.Code.get(rc), pendingOp.op.getPath()));
+                }
+            }
+        });
+    }
+
+    /**
+     * 以一个 multi 请求异步提交操作
+     *
+     * @return 是否已发出（参数校验失败等同步异常时所有操作以该异常结束）
+     */
+    private boolean multi(List<PendingOp> batch, final AsyncCallback.MultiCallback callback) {
+        List<Op> ops = new ArrayList<>(batch.size());
+        for (PendingOp pendingOp : batch) {
+            ops.add(pendingOp.op);
+        }
+        final long begin = System.nanoTime();
+        try {
+            zookeeper.multi(ops, new AsyncCallback.MultiCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, List<OpResult> opResults) {
+                    if (metrics != null) {
+                        metrics.record(OpMetrics.Op.MULTI, begin, rc);
+                    }
+                    callback.processResult(rc, path, ctx, opResults);
+                }
+            }, null);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("multi failure: " + e.getMessage(), e);
+            for (PendingOp pendingOp : batch) {
+                pendingOp.future.completeExceptionally(e);
+            }
+            return false;
+        }
+    }
+
+}
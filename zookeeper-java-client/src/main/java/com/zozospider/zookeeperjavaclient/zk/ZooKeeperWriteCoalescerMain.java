@@ -0,0 +1,133 @@
+package com.zozospider.zookeeperjavaclient.zk;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟多个写线程突发写入，对比每个操作一次 RPC 与 ZooKeeperWriteCoalescer 合并为 multi() 的吞吐量
+ * <p>
+ * 每个写线程都按同步方式使用（等待自己的操作完成后再发起下一个），合并发生在不同线程的操作之间。
+ * <p>
+ * 参数: [写线程数] [每个线程的写操作数] [lingerMs]
+ */
+public class ZooKeeperWriteCoalescerMain {
+
+    private final static Logger log = LoggerFactory.getLogger(ZooKeeperWriteCoalescerMain.class);
+
+    public static void main(String[] args) throws Exception {
+
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        final int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        final long lingerMs = args.length > 2 ? Long.parseLong(args[2]) : ZooKeeperWriteCoalescer.DEFAULT_LINGER_MS;
+        final byte[] data = "zkCli data".getBytes();
+
+        // 模拟服务端
+        try (TestingServer server = new TestingServer()) {
+
+            ZooKeeperClient zooKeeperClient = new ZooKeeperClient();
+            zooKeeperClient.connect(server.getConnectString());
+            final ZooKeeper zookeeper = zooKeeperClient.getZookeeper();
+            try {
+                zookeeper.create("/single", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                zookeeper.create("/coalesced", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+                // 每个操作一次 RPC
+                long elapsed = runWriters(threads, new Writer() {
+                    @Override
+                    public void write(int thread, int i) throws Exception {
+                        String path = "/single/t" + thread + "-" + i;
+                        zookeeper.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                        zookeeper.setData(path, data, 0);
+                    }
+                }, opsPerThread);
+                report("one-op-per-RPC", threads * opsPerThread * 2, elapsed);
+
+                // 合并为 multi()
+                final ZooKeeperWriteCoalescer coalescer = new ZooKeeperWriteCoalescer(zookeeper,
+                        ZooKeeperWriteCoalescer.DEFAULT_MAX_OPS, ZooKeeperWriteCoalescer.DEFAULT_MAX_BYTES, lingerMs);
+                elapsed = runWriters(threads, new Writer() {
+                    @Override
+                    public void write(int thread, int i) throws Exception {
+                        String path = "/coalesced/t" + thread + "-" + i;
+                        coalescer.create(path, data, CreateMode.PERSISTENT).get();
+                        coalescer.setData(path, data, 0).get();
+                    }
+                }, opsPerThread);
+                report("coalesced", threads * opsPerThread * 2, elapsed);
+                log.info("coalesced batches: {}, avg ops per batch: {}", coalescer.getBatches(),
+                        coalescer.getBatchedOps() / Math.max(1, coalescer.getBatches()));
+
+                // 批次内某个操作失败：失败的操作单独报错，同批其余操作回退为单独提交后成功
+                coalescer.flush();
+                CompletableFuture<String> ok1 = coalescer.create("/coalesced/ok1", data, CreateMode.PERSISTENT);
+                CompletableFuture<String> dup = coalescer.create("/coalesced/t0-0", data, CreateMode.PERSISTENT);
+                CompletableFuture<String> ok2 = coalescer.create("/coalesced/ok2", data, CreateMode.PERSISTENT);
+                coalescer.flush();
+                log.info("fallback ok1: {}, ok2: {}", ok1.get(), ok2.get());
+                try {
+                    dup.get();
+                } catch (ExecutionException e) {
+                    log.info("fallback dup: {}", ((KeeperException) e.getCause()).code());
+                }
+                log.info("fallback ops: {}", coalescer.getFallbackOps());
+                coalescer.close();
+
+            } finally {
+                zooKeeperClient.close();
+            }
+        }
+    }
+
+    private interface Writer {
+        void write(int thread, int i) throws Exception;
+    }
+
+    private static long runWriters(int threads, final Writer writer, final int opsPerThread) throws Exception {
+
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(service.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        writer.write(thread, i);
+                    }
+                    return null;
+                }
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        service.shutdown();
+        for (Future<Void> future : futures) {
+            future.get(10, TimeUnit.MINUTES);
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private static void report(String name, int ops, long elapsedNanos) {
+        log.info("{}: {} ops in {} ms, {} ops/sec", name, ops, elapsedNanos / 1000000,
+                (long) (ops * 1000000000.0 / elapsedNanos));
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.zozospider.zookeeperjavaclient.zk.metrics;
+
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ZooKeeper 操作指标：每种操作一个延迟直方图（p50 / p99 / p999），以及按错误码统计的失败次数
+ * <p>
+ * 记录过程不加锁，可在请求线程和 EventThread 上直接调用；可通过 register() 注册到 JMX，或通过 dump() 输出文本。
+ * <p>
+ * zookeeper-curator 模块也使用这个类（CuratorClient 通过 OpMetricsTracerDriver 记录，注册在该模块自己的 JMX 域下）。
+ */
+public class OpMetrics implements OpMetricsMXBean {
+
+    private final static Logger log = LoggerFactory.getLogger(OpMetrics.class);
+
+    public static final String JMX_DOMAIN = "com.zozospider.zookeeperjavaclient";
+
+    /**
+     * 操作类型
+     */
+    public enum Op {
+
+        CREATE("create"),
+        DELETE("delete"),
+        EXISTS("exists"),
+        GET_DATA("getData"),
+        GET_CHILDREN("getChildren"),
+        SET_DATA("setData"),
+        MULTI("multi");
+
+        private final String label;
+
+        Op(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Map<Op, LatencyHistogram> histograms = new EnumMap<>(Op.class);
+    private final Map<Op, ConcurrentMap<KeeperException.Code, LongAdder>> errors = new EnumMap<>(Op.class);
+
+    private volatile ObjectName objectName;
+
+    public OpMetrics() {
+        for (Op op : Op.values()) {
+            histograms.put(op, new LatencyHistogram());
+            errors.put(op, new ConcurrentHashMap<KeeperException.Code, LongAdder>());
+        }
+    }
+
+    /**
+     * 记录一次操作
+     *
+     * @param op         操作类型
+     * @param startNanos 操作开始时的 System.nanoTime()
+     * @param rc         返回码（KeeperException.Code 的 intValue）
+     */
+    public void record(Op op, long startNanos, int rc) {
+        histograms.get(op).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        if (rc != KeeperException.Code.OK.intValue()) {
+            error(op, KeeperException.Code.get(rc));
+        }
+    }
+
+    /**
+     * 记录一次操作（同步调用，失败时传入抛出的异常）
+     *
+     * @param op         操作类型
+     * @param startNanos 操作开始时的 System.nanoTime()
+     * @param e          操作抛出的异常，成功时为 null
+     */
+    public void record(Op op, long startNanos, Exception e) {
+        histograms.get(op).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        if (e instanceof KeeperException) {
+            error(op, ((KeeperException) e).code());
+        } else if (e != null) {
+            error(op, KeeperException.Code.SYSTEMERROR);
+        }
+    }
+
+    /**
+     * 记录一次已知耗时的操作
+     *
+     * @param op     操作类型
+     * @param micros 耗时（微秒）
+     * @param rc     返回码（KeeperException.Code 的 intValue）
+     */
+    public void recordMicros(Op op, long micros, int rc) {
+        histograms.get(op).record(micros);
+        if (rc != KeeperException.Code.OK.intValue()) {
+            error(op, KeeperException.Code.get(rc));
+        }
+    }
+
+    public LatencyHistogram getHistogram(Op op) {
+        return histograms.get(op);
+    }
+
+    /**
+     * 注册到 JMX，ObjectName 为 com.zozospider.zookeeperjavaclient:type=OpMetrics,name={name}
+     */
+    public void register(String name) {
+        register(JMX_DOMAIN, name);
+    }
+
+    /**
+     * 注册到 JMX，ObjectName 为 {domain}:type=OpMetrics,name={name}
+     */
+    public void register(String domain, String name) {
+        try {
+            ObjectName objectName = new ObjectName(domain + ":type=OpMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            log.warn("register OpMetrics " + name + " failure: " + e.getMessage(), e);
+        }
+    }
+
+    public void unregister() {
+        ObjectName current = objectName;
+        if (current == null) {
+            return;
+        }
+        objectName = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(current)) {
+                server.unregisterMBean(current);
+            }
+        } catch (JMException e) {
+            log.warn("unregister OpMetrics " + current + " failure: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Op op : Op.values()) {
+            result.put(op.getLabel(), histograms.get(op).getCount());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getP50Micros() {
+        return quantiles(0.5);
+    }
+
+    @Override
+    public Map<String, Long> getP99Micros() {
+        return quantiles(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getP999Micros() {
+        return quantiles(0.999);
+    }
+
+    @Override
+    public Map<String, Long> getMaxMicros() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Op op : Op.values()) {
+            result.put(op.getLabel(), histograms.get(op).getMax());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Op op : Op.values()) {
+            for (Map.Entry<KeeperException.Code, LongAdder> entry : errors.get(op).entrySet()) {
+                result.put(op.getLabel() + ":" + entry.getKey().name(), entry.getValue().sum());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-12s %10s %10s %10s %10s %10s %10s  %s%n",
+                "op", "count", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)", "errors"));
+        for (Op op : Op.values()) {
+            LatencyHistogram histogram = histograms.get(op);
+            StringBuilder errorText = new StringBuilder();
+            for (Map.Entry<KeeperException.Code, LongAdder> entry : errors.get(op).entrySet()) {
+                errorText.append(entry.getKey().name()).append('=').append(entry.getValue().sum()).append(' ');
+            }
+            builder.append(String.format("%-12s %10d %10d %10d %10d %10d %10d  %s%n",
+                    op.getLabel(), histogram.getCount(), histogram.getMean(), histogram.getQuantile(0.5),
+                    histogram.getQuantile(0.99), histogram.getQuantile(0.999), histogram.getMax(),
+                    errorText.toString().trim()));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Op op : Op.values()) {
+            histograms.get(op).reset();
+            errors.get(op).clear();
+        }
+    }
+
+    private void error(Op op, KeeperException.Code code) {
+        ConcurrentMap<KeeperException.Code, LongAdder> counters = errors.get(op);
+        LongAdder counter = counters.get(code);
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            counter = counters.putIfAbsent(code, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    private Map<String, Long> quantiles(double quantile) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Op op : Op.values()) {
+            result.put(op.getLabel(), histograms.get(op).getQuantile(quantile));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.zozospider.zookeeperjavaclient.zk.metrics;
+
+import java.util.Map;
+
+/**
+ * OpMetrics 的 JMX 接口，各 Map 的 key 为操作类型（如 getData），errors 的 key 为 "操作类型:错误码"
+ */
+public interface OpMetricsMXBean {
+
+    Map<String, Long> getCounts();
+
+    Map<String, Long> getP50Micros();
+
+    Map<String, Long> getP99Micros();
+
+    Map<String, Long> getP999Micros();
+
+    Map<String, Long> getMaxMicros();
+
+    Map<String, Long> getErrors();
+
+    /**
+     * 以文本表格输出全部指标
+     */
+    String dump();
+
+    void reset();
+
+}